@@ -0,0 +1,70 @@
+package io.github.hotleave.deepstream.benchmarks;
+
+import com.google.protobuf.CodedOutputStream;
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.connection.MessageEncoder;
+import io.github.hotleave.deepstream.client.event.EventHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound path from a received frame to the subscriber callback: {@link Connection#onMessage(byte[])} decoding plus
+ * {@link EventHandler#handle} routing, with callbacks run inline so the dispatch pool is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+    private static final int FRAMES = 1024;
+
+    @Param({"1", "1000", "100000"})
+    int subscriptions;
+
+    Connection connection;
+    byte[][] frames;
+    int next;
+    Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) throws Exception {
+        this.blackhole = blackhole;
+        var options = ConnectionOptions.builder().dispatchThreads(0).build();
+        connection = new Connection("ws://127.0.0.1:6020/deepstream", options);
+        var event = new EventHandler(connection);
+        connection.registerHandler(General.TOPIC.EVENT, event::handle);
+        // 未连接时订阅只登记在本地
+        for (int i = 0; i < subscriptions; i++) {
+            event.subscribe("benchmark/" + i, data -> this.blackhole.consume(data));
+        }
+
+        frames = new byte[FRAMES][];
+        for (int i = 0; i < FRAMES; i++) {
+            var msg = Event.EventMessage.newBuilder()
+                    .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+                    .setName("benchmark/" + (i * 7919 % subscriptions))
+                    .setData("{\"value\":" + i + "}")
+                    .build();
+            frames[i] = new byte[MessageEncoder.delimitedSize(General.TOPIC.EVENT, msg)];
+            MessageEncoder.writeDelimited(General.TOPIC.EVENT, msg, CodedOutputStream.newInstance(frames[i]));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+    }
+
+    @Benchmark
+    public void decodeAndDispatch() {
+        connection.onMessage(frames[next]);
+        next = (next + 1) & (FRAMES - 1);
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.hotleave.deepstream.benchmarks;
+
+import com.google.protobuf.CodedOutputStream;
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.connection.MessageEncoder;
+import io.github.hotleave.deepstream.client.event.EventChannel;
+import io.github.hotleave.deepstream.client.event.EventHandler;
+import io.github.hotleave.deepstream.client.transport.LoopbackTransport;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning an emit into bytes: the bare envelope encoding, the whole {@link Connection#sendMessage} path
+ * including batching and the hand-off to the transport, and emits building a message each time or going through a
+ * prepared {@link EventChannel}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+    @Param({"16", "256", "4096"})
+    int dataSize;
+
+    Event.EventMessage message;
+    String data;
+    ByteBuffer buffer;
+    ClientRuntime runtime;
+    Connection connection;
+    EventHandler event;
+    EventChannel channel;
+
+    @Setup
+    public void setup() throws Exception {
+        message = Event.EventMessage.newBuilder()
+                .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+                .setName("benchmark/event")
+                .setData("x".repeat(dataSize))
+                .build();
+        data = "x".repeat(dataSize);
+        buffer = ByteBuffer.allocate(64 * 1024);
+
+        var options = ConnectionOptions.builder()
+                .dispatchThreads(0)
+                .inFlightHighWatermarkMessages(Integer.MAX_VALUE)
+                .inFlightHighWatermarkBytes(Long.MAX_VALUE)
+                .build();
+        runtime = new ClientRuntime(options, new LoopbackTransport(uri -> new LoopbackServer(false)));
+        connection = new Connection("ws://loopback/deepstream", options, runtime);
+        connection.connect();
+        event = new EventHandler(connection);
+        channel = event.channel("benchmark/event");
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+        runtime.close();
+    }
+
+    @Benchmark
+    public ByteBuffer encodeDelimited() throws IOException {
+        buffer.clear();
+        var output = CodedOutputStream.newInstance(buffer);
+        MessageEncoder.writeDelimited(General.TOPIC.EVENT, message, output);
+        output.flush();
+        return buffer;
+    }
+
+    @Benchmark
+    public void sendMessage() {
+        connection.sendMessage(General.TOPIC.EVENT, message);
+    }
+
+    @Benchmark
+    public boolean emit() {
+        return event.tryEmit("benchmark/event", data);
+    }
+
+    @Benchmark
+    public boolean emitChannel() {
+        return channel.tryEmit(data);
+    }
+}
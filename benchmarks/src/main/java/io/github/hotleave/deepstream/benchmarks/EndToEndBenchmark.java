@@ -0,0 +1,49 @@
+package io.github.hotleave.deepstream.benchmarks;
+
+import io.github.hotleave.deepstream.client.Client;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.transport.LoopbackTransport;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency from {@code emit} to the subscriber callback through the whole client and the loopback stand-in server.
+ * Sample time mode reports the percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+    ClientRuntime runtime;
+    Client client;
+    volatile CompletableFuture<String> received;
+
+    @Setup
+    public void setup() throws Exception {
+        var options = ConnectionOptions.builder().dispatchThreads(1).build();
+        runtime = new ClientRuntime(options, new LoopbackTransport(uri -> new LoopbackServer(true)));
+        client = new Client("ws://loopback/deepstream", options, runtime);
+        client.login();
+        client.event.subscribe("benchmark/latency", data -> received.complete(data)).get(10, TimeUnit.SECONDS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        runtime.close();
+    }
+
+    @Benchmark
+    public String emitToCallback() throws Exception {
+        var future = new CompletableFuture<String>();
+        received = future;
+        client.event.emit("benchmark/latency", "{}");
+        return future.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.hotleave.deepstream.benchmarks;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import io.deepstream.protobuf.Auth;
+import io.deepstream.protobuf.Connection.CONNECTION_ACTION;
+import io.deepstream.protobuf.Connection.ConnectionMessage;
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.InboundMessage;
+import io.github.hotleave.deepstream.client.connection.MessageDecoder;
+import io.github.hotleave.deepstream.client.connection.MessageEncoder;
+import io.github.hotleave.deepstream.client.transport.TransportListener;
+import io.github.hotleave.deepstream.client.transport.TransportSession;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in deepstream server for the loopback transport: accepts every login, acknowledges subscriptions and sends
+ * emitted events back when the name is subscribed. With {@code echo} off it only answers the handshake.
+ */
+class LoopbackServer implements TransportListener {
+    private final boolean echo;
+    private final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+    private TransportSession session;
+
+    LoopbackServer(boolean echo) {
+        this.echo = echo;
+    }
+
+    @Override
+    public void onOpen(TransportSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public void onMessage(ByteBuffer fragment, boolean last) {
+        try {
+            while (fragment.hasRemaining()) {
+                handle(MessageDecoder.decode(fragment));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onClose(int code, String reason) {
+    }
+
+    private void handle(InboundMessage message) throws InvalidProtocolBufferException {
+        switch (message.getTopic()) {
+            case CONNECTION:
+                var action = message.getMessage(ConnectionMessage.parser()).getAction();
+                if (action == CONNECTION_ACTION.CONNECTION_CHALLENGE) {
+                    send(General.TOPIC.CONNECTION, ConnectionMessage.newBuilder()
+                            .setAction(CONNECTION_ACTION.CONNECTION_ACCEPT)
+                            .build());
+                } else if (action == CONNECTION_ACTION.CONNECTION_PING) {
+                    // 不回应的话客户端在两个心跳周期后断开
+                    send(General.TOPIC.CONNECTION, ConnectionMessage.newBuilder()
+                            .setAction(CONNECTION_ACTION.CONNECTION_PONG)
+                            .build());
+                }
+                break;
+            case AUTH:
+                send(General.TOPIC.AUTH, Auth.AuthMessage.newBuilder()
+                        .setAction(Auth.AUTH_ACTION.AUTH_AUTH_SUCCESSFUL)
+                        .setData("{}")
+                        .build());
+                break;
+            case EVENT:
+                if (!echo) {
+                    return;
+                }
+                var event = message.getMessage(Event.EventMessage.parser());
+                if (event.getAction() == Event.EVENT_ACTION.EVENT_SUBSCRIBE) {
+                    subscriptions.addAll(event.getNamesList());
+                    send(General.TOPIC.EVENT, event.toBuilder().setIsAck(true).build());
+                } else if (event.getAction() == Event.EVENT_ACTION.EVENT_EMIT && subscriptions.contains(event.getName())) {
+                    send(General.TOPIC.EVENT, event);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void send(General.TOPIC topic, MessageLite msg) {
+        byte[] frame = new byte[MessageEncoder.delimitedSize(topic, msg)];
+        try {
+            MessageEncoder.writeDelimited(topic, msg, CodedOutputStream.newInstance(frame));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        session.send(ByteBuffer.wrap(frame), error -> {
+        });
+    }
+}
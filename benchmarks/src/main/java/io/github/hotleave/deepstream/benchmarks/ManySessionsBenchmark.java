@@ -0,0 +1,71 @@
+package io.github.hotleave.deepstream.benchmarks;
+
+import io.github.hotleave.deepstream.client.Client;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.server.StandInServer;
+import io.github.hotleave.deepstream.client.transport.JdkTransport;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs in many clients on one {@link ClientRuntime} against the embedded {@link StandInServer}. The score is the time
+ * until every session is open, after each iteration the threads and the retained heap per session are printed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ManySessionsBenchmark {
+    @Param({"1000", "10000"})
+    int sessions;
+
+    final ConnectionOptions options = ConnectionOptions.builder().dispatchThreads(4).build();
+    StandInServer server;
+    ClientRuntime runtime;
+    List<Client> clients;
+    long heap;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        server = StandInServer.start(StandInServer.Options.builder().build());
+        runtime = new ClientRuntime(options, new JdkTransport());
+        clients = new ArrayList<>(sessions);
+        heap = usedHeap();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        long perSession = (usedHeap() - heap) / sessions;
+        System.out.printf("%d sessions, %d threads, %d bytes per session%n", sessions, Thread.activeCount(),
+                perSession);
+
+        clients.forEach(Client::close);
+        runtime.close();
+        server.close();
+    }
+
+    @Benchmark
+    public List<Client> login() throws Exception {
+        var logins = new CompletableFuture<?>[sessions];
+        for (int i = 0; i < sessions; i++) {
+            var client = new Client(server.getUrl(), options, runtime);
+            clients.add(client);
+            logins[i] = client.loginAsync();
+        }
+        CompletableFuture.allOf(logins).get(1, TimeUnit.MINUTES);
+        return clients;
+    }
+
+    private static long usedHeap() {
+        Runtime jvm = Runtime.getRuntime();
+        System.gc();
+        return jvm.totalMemory() - jvm.freeMemory();
+    }
+}
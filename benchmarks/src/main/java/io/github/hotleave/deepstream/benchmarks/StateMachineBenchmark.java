@@ -0,0 +1,48 @@
+package io.github.hotleave.deepstream.benchmarks;
+
+import io.github.hotleave.deepstream.client.connection.ConnectionState;
+import io.github.hotleave.deepstream.client.connection.ConnectionTransition;
+import io.github.hotleave.deepstream.client.utils.StateMachine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one transition through a table the size of the connection's.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StateMachineBenchmark {
+    StateMachine<ConnectionState, ConnectionTransition> stateMachine;
+
+    @Setup
+    public void setup() {
+        var transitions = new ArrayList<StateMachine.Transition<ConnectionState, ConnectionTransition>>();
+        // 与Connection中的转换表规模相当
+        for (ConnectionTransition type : ConnectionTransition.values()) {
+            transitions.add(new StateMachine.Transition<>(type, ConnectionState.CHALLENGING,
+                    ConnectionState.REDIRECTING));
+        }
+        transitions.add(new StateMachine.Transition<>(ConnectionTransition.CONNECTED, ConnectionState.RECONNECTING,
+                ConnectionState.AWAITING_CONNECTION));
+        transitions.add(new StateMachine.Transition<>(ConnectionTransition.CONNECTION_LOST, null,
+                ConnectionState.RECONNECTING));
+
+        stateMachine = new StateMachine<>(ConnectionState.class, ConnectionTransition.class, ConnectionState.CLOSED,
+                transitions, (newState, oldState) -> {
+                });
+        stateMachine.transition(ConnectionTransition.CONNECTION_LOST);
+    }
+
+    @Benchmark
+    public ConnectionState transition() {
+        stateMachine.transition(ConnectionTransition.CONNECTED);
+        stateMachine.transition(ConnectionTransition.CONNECTION_LOST);
+        return stateMachine.getState();
+    }
+}
@@ -1,14 +1,19 @@
 package io.github.hotleave.deepstream.client;
 
 import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
 import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
 import io.github.hotleave.deepstream.client.event.EventHandler;
-import jakarta.websocket.DeploymentException;
+import io.github.hotleave.deepstream.client.presence.PresenceHandler;
+import io.github.hotleave.deepstream.client.record.RecordHandler;
+import io.github.hotleave.deepstream.client.rpc.RpcHandler;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
 
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class Client {
@@ -16,13 +21,45 @@ public class Client {
 
     public final EventHandler event;
 
+    public final RecordHandler record;
+
+    public final RpcHandler rpc;
+
+    public final PresenceHandler presence;
+
     public Client(String url) throws URISyntaxException {
-        connection = new Connection(url);
+        this(url, ConnectionOptions.defaults());
+    }
+
+    public Client(String url, ConnectionOptions options) throws URISyntaxException {
+        this(url, options, null);
+    }
+
+    /**
+     * @param runtime shared by many clients, see {@link ClientRuntime}
+     */
+    public Client(String url, ConnectionOptions options, ClientRuntime runtime) throws URISyntaxException {
+        connection = new Connection(url, options, runtime);
         event = new EventHandler(connection);
         connection.registerHandler(General.TOPIC.EVENT, event::handle);
+        record = new RecordHandler(connection);
+        connection.registerHandler(General.TOPIC.RECORD, record::handle);
+        rpc = new RpcHandler(connection);
+        connection.registerHandler(General.TOPIC.RPC, rpc::handle);
+        presence = new PresenceHandler(connection);
+        connection.registerHandler(General.TOPIC.PRESENCE, presence::handle);
     }
 
-    public void login() throws DeploymentException, IOException {
+    public void login() throws IOException {
         connection.connect();
     }
+
+    public CompletableFuture<Void> loginAsync() {
+        return connection.connectAsync();
+    }
+
+    public void close() {
+        rpc.close();
+        connection.close();
+    }
 }
@@ -0,0 +1,16 @@
+package io.github.hotleave.deepstream.client;
+
+import lombok.Getter;
+
+/**
+ * A request the server answered with an error action.
+ */
+@Getter
+public class DeepstreamException extends RuntimeException {
+    private final String action;
+
+    public DeepstreamException(String action, String message) {
+        super(action + ": " + message);
+        this.action = action;
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.hotleave.deepstream.client;
+
+import io.github.hotleave.deepstream.client.connection.ConnectionState;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Snapshot of one shard's connection. The counters are totals since the client was created, the rates are messages
+ * per second since the previous {@link ShardedClient#getShardStats()}.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class ShardStats {
+    private final int shard;
+    private final ConnectionState state;
+    private final int subscriptions;
+    private final long inboundMessages;
+    private final long outboundMessages;
+    private final double inboundRate;
+    private final double outboundRate;
+    private final long outboundFrames;
+    private final long inFlightBytes;
+}
@@ -0,0 +1,124 @@
+package io.github.hotleave.deepstream.client;
+
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.event.EventHandler;
+import io.github.hotleave.deepstream.client.event.ShardedEventHandler;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens several connections to the same cluster and spreads the events over them, see {@link ShardedEventHandler}.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ShardedClient {
+    List<Connection> connections = new ArrayList<>();
+    List<EventHandler> handlers = new ArrayList<>();
+    ClientRuntime runtime;
+    boolean ownsRuntime;
+    // 上次取统计时的计数，用于计算这段时间的速率
+    long[] lastInbound;
+    long[] lastOutbound;
+    @NonFinal
+    long lastSampled = System.nanoTime();
+
+    public final ShardedEventHandler event;
+
+    public ShardedClient(String url, int shards) throws URISyntaxException {
+        this(url, shards, ConnectionOptions.defaults());
+    }
+
+    public ShardedClient(String url, int shards, ConnectionOptions options) throws URISyntaxException {
+        this(url, shards, options, null);
+    }
+
+    /**
+     * @param runtime shared by the shards, null creates one for this client
+     */
+    public ShardedClient(String url, int shards, ConnectionOptions options, ClientRuntime runtime)
+            throws URISyntaxException {
+        this.ownsRuntime = runtime == null;
+        this.runtime = runtime != null ? runtime : new ClientRuntime(options);
+        this.lastInbound = new long[shards];
+        this.lastOutbound = new long[shards];
+        for (int i = 0; i < shards; i++) {
+            var shardOptions = options;
+            if (options.getJournalDirectory() != null) {
+                // 每个连接单独的日志目录
+                shardOptions = options.toBuilder()
+                        .journalDirectory(options.getJournalDirectory().resolve("shard-" + i))
+                        .build();
+            }
+
+            var connection = new Connection(url, shardOptions, this.runtime);
+            var handler = new EventHandler(connection);
+            connection.registerHandler(General.TOPIC.EVENT, handler::handle);
+            connections.add(connection);
+            handlers.add(handler);
+        }
+        event = new ShardedEventHandler(connections, handlers);
+    }
+
+    public void login() throws IOException {
+        try {
+            loginAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while connecting", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Completes once every shard is open.
+     */
+    public CompletableFuture<Void> loginAsync() {
+        return CompletableFuture.allOf(connections.stream()
+                .map(Connection::connectAsync)
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * The rates in the snapshot cover the time since the previous call, or since the client was created.
+     */
+    public synchronized List<ShardStats> getShardStats() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastSampled) / (double) TimeUnit.SECONDS.toNanos(1);
+        lastSampled = now;
+
+        List<ShardStats> stats = new ArrayList<>(connections.size());
+        for (int i = 0; i < connections.size(); i++) {
+            Connection connection = connections.get(i);
+            long inbound = connection.getInboundMessageCount();
+            long outbound = connection.getOutboundMessageCount();
+            stats.add(new ShardStats(i, connection.getConnectionState(), handlers.get(i).getSubscriptions().size(),
+                    inbound, outbound, (inbound - lastInbound[i]) / seconds, (outbound - lastOutbound[i]) / seconds,
+                    connection.getOutboundFrameCount(), connection.getInFlightBytes()));
+            lastInbound[i] = inbound;
+            lastOutbound[i] = outbound;
+        }
+        return stats;
+    }
+
+    public void close() {
+        connections.forEach(Connection::close);
+        if (ownsRuntime) {
+            runtime.close();
+        }
+    }
+}
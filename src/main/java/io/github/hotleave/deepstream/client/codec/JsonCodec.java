@@ -0,0 +1,56 @@
+package io.github.hotleave.deepstream.client.codec;
+
+import com.google.protobuf.ByteString;
+import io.github.hotleave.deepstream.client.utils.Json;
+
+/**
+ * Default codec based on {@link Json}: strings, numbers, booleans, maps and lists. {@link String} and
+ * {@link ByteString} decode the raw data without parsing it. Plug in a codec backed by a JSON mapper for other types.
+ * <p>
+ * {@link ByteString} and {@code byte[]} values are sent as they are and must hold UTF-8, the data field is a proto3
+ * string.
+ */
+public class JsonCodec implements PayloadCodec {
+    public static final JsonCodec INSTANCE = new JsonCodec();
+
+    /**
+     * @throws IllegalArgumentException if raw bytes are not valid UTF-8
+     */
+    @Override
+    public ByteString encode(Object value) {
+        if (value instanceof ByteString) {
+            return requireUtf8((ByteString) value);
+        }
+        if (value instanceof byte[]) {
+            return requireUtf8(ByteString.copyFrom((byte[]) value));
+        }
+        return ByteString.copyFromUtf8(Json.stringify(value));
+    }
+
+    @Override
+    public <T> T decode(ByteString data, Class<T> type) {
+        if (type == String.class) {
+            return type.cast(data.toStringUtf8());
+        }
+        if (type == ByteString.class) {
+            return type.cast(data);
+        }
+        if (type == byte[].class) {
+            return type.cast(data.toByteArray());
+        }
+
+        Object value = Json.parse(data.toStringUtf8());
+        if (value != null && !type.isInstance(value)) {
+            throw new IllegalArgumentException("Cannot decode " + value.getClass().getSimpleName() + " as "
+                    + type.getName());
+        }
+        return type.cast(value);
+    }
+
+    private static ByteString requireUtf8(ByteString data) {
+        if (!data.isValidUtf8()) {
+            throw new IllegalArgumentException("Data is not valid UTF-8, proto3 string fields reject it");
+        }
+        return data;
+    }
+}
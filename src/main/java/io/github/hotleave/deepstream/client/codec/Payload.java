@@ -0,0 +1,69 @@
+package io.github.hotleave.deepstream.client.codec;
+
+import com.google.protobuf.ByteString;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+/**
+ * Event data as received, decoded only when asked for. The last decoded value is kept, so all local subscribers of an
+ * event asking for the same type share one decode. Emitting a payload sends its bytes as they are.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Payload {
+    ByteString data;
+    PayloadCodec codec;
+    @NonFinal
+    volatile Decoded decoded;
+
+    public Payload(ByteString data, PayloadCodec codec) {
+        this.data = data;
+        this.codec = codec;
+    }
+
+    public static Payload of(Object value, PayloadCodec codec) {
+        return new Payload(codec.encode(value), codec);
+    }
+
+    public ByteString getBytes() {
+        return data;
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public String asString() {
+        return as(String.class);
+    }
+
+    /**
+     * Decodes the data, {@code Payload.class} returns the payload itself.
+     */
+    public <T> T as(Class<T> type) {
+        if (type == Payload.class) {
+            return type.cast(this);
+        }
+
+        var last = decoded;
+        if (last != null && last.type == type) {
+            return type.cast(last.value);
+        }
+
+        T value = codec.decode(data, type);
+        decoded = new Decoded(type, value);
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return data.toStringUtf8();
+    }
+
+    @AllArgsConstructor
+    private static class Decoded {
+        final Class<?> type;
+        final Object value;
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.hotleave.deepstream.client.codec;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Turns typed event data into the bytes sent on the wire and back, e.g. backed by a JSON mapper. The bytes should be
+ * UTF-8 JSON when clients in other languages read the same events.
+ */
+public interface PayloadCodec {
+    ByteString encode(Object value);
+
+    /**
+     * @throws IllegalArgumentException if the data can not be decoded as the type
+     */
+    <T> T decode(ByteString data, Class<T> type);
+}
@@ -0,0 +1,179 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import io.github.hotleave.deepstream.client.metrics.MBeans;
+import io.github.hotleave.deepstream.client.metrics.RuntimeMetrics;
+import io.github.hotleave.deepstream.client.utils.BufferPool;
+import io.github.hotleave.deepstream.client.utils.HashedWheelTimer;
+import io.github.hotleave.deepstream.client.utils.PendingRequests;
+import io.github.hotleave.deepstream.client.utils.StripedExecutor;
+import io.github.hotleave.deepstream.client.transport.JakartaTransport;
+import io.github.hotleave.deepstream.client.transport.JdkTransport;
+import io.github.hotleave.deepstream.client.transport.Transport;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resources shared by many connections: one transport, one timer, one dispatch pool, one RPC worker pool, one buffer
+ * pool and one task expiring the pending requests of all connections.
+ * A gateway holding a session per user creates one runtime and passes it to every client, the thread count then no
+ * longer grows with the number of sessions.
+ * <p>
+ * A connection created without a runtime gets a private one that is closed with the connection.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ClientRuntime implements Closeable {
+    private static final Executor DEFAULT_CONNECT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "deepstream-connect");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Getter
+    HashedWheelTimer timer;
+    @Getter
+    StripedExecutor dispatcher;
+    @Getter
+    BufferPool bufferPool;
+    @Getter
+    Executor connectExecutor;
+    Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    Set<PendingRequests> pendingRequests = ConcurrentHashMap.newKeySet();
+    HashedWheelTimer.Cancellable requestExpiry;
+    int rpcWorkerThreads;
+    int rpcQueueSize;
+    @NonFinal
+    volatile ExecutorService rpcWorkers;
+    @Getter
+    Transport transport;
+    @Getter
+    RuntimeMetrics metrics;
+    ObjectName objectName;
+
+    public ClientRuntime() {
+        this(ConnectionOptions.defaults());
+    }
+
+    /**
+     * Sizes the shared pools from the options: dispatch threads and queue, buffer pool, timer and connect executor.
+     */
+    public ClientRuntime(ConnectionOptions options) {
+        this(options, null);
+    }
+
+    /**
+     * @param transport opens the sessions, null uses a Jakarta container when one is on the class path and the JDK
+     *                  websocket client otherwise
+     */
+    public ClientRuntime(ConnectionOptions options, Transport transport) {
+        this.transport = transport != null ? transport : defaultTransport();
+        this.timer = options.getTimer() != null ? options.getTimer() : HashedWheelTimer.getDefault();
+        this.dispatcher = new StripedExecutor("deepstream-dispatch", options.getDispatchThreads(),
+                options.getDispatchQueueSize(), options.getDispatchOverflowPolicy());
+        this.bufferPool = new BufferPool(options.getMaxBatchBytes(), options.getBufferPoolSize(), options.isDirectBuffers());
+        this.connectExecutor = options.getConnectExecutor() != null ? options.getConnectExecutor() : DEFAULT_CONNECT_EXECUTOR;
+        this.rpcWorkerThreads = options.getRpcWorkerThreads();
+        this.rpcQueueSize = options.getRpcMaxPendingRequests();
+        // 所有连接共用一个过期检查任务
+        this.requestExpiry = timer.scheduleAtFixedRate(this::expireRequests, 100, 100, TimeUnit.MILLISECONDS);
+        this.metrics = new RuntimeMetrics(dispatcher, this::getConnectionCount);
+        this.objectName = options.isJmxEnabled() ? MBeans.register("Runtime", metrics) : null;
+    }
+
+    /**
+     * Number of connections whose requests are tracked by this runtime.
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    void register(Connection connection) {
+        connections.add(connection);
+    }
+
+    void unregister(Connection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * Adds the requests to the shared expiry task, they are checked every 100ms until untracked.
+     */
+    public void track(PendingRequests requests) {
+        pendingRequests.add(requests);
+    }
+
+    public void untrack(PendingRequests requests) {
+        pendingRequests.remove(requests);
+    }
+
+    /**
+     * Pool of {@link ConnectionOptions#getRpcWorkerThreads()} daemon threads running the RPC providers of every
+     * connection, created on first use. The queue holds {@link ConnectionOptions#getRpcMaxPendingRequests()} tasks,
+     * beyond that {@code execute} throws a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    public ExecutorService getRpcWorkers() {
+        var pool = rpcWorkers;
+        if (pool == null) {
+            synchronized (this) {
+                pool = rpcWorkers;
+                if (pool == null) {
+                    AtomicInteger counter = new AtomicInteger();
+                    var executor = new ThreadPoolExecutor(rpcWorkerThreads, rpcWorkerThreads, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(rpcQueueSize), runnable -> {
+                                Thread thread = new Thread(runnable, "deepstream-rpc-" + counter.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    executor.allowCoreThreadTimeOut(true);
+                    rpcWorkers = pool = executor;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Stops the dispatch and RPC threads and unregisters the MBean. The timer is the shared default or belongs to the
+     * caller and keeps running.
+     */
+    @Override
+    public void close() {
+        requestExpiry.cancel();
+        dispatcher.shutdown();
+        var pool = rpcWorkers;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        MBeans.unregister(objectName);
+    }
+
+    private static Transport defaultTransport() {
+        try {
+            Class.forName("jakarta.websocket.ContainerProvider", false, ClientRuntime.class.getClassLoader());
+            return new JakartaTransport();
+        } catch (ClassNotFoundException e) {
+            return new JdkTransport();
+        }
+    }
+
+    private void expireRequests() {
+        for (PendingRequests requests : pendingRequests) {
+            if (requests.size() > 0) {
+                requests.expire();
+            }
+        }
+    }
+}
@@ -1,107 +1,257 @@
 package io.github.hotleave.deepstream.client.connection;
 
-import com.google.protobuf.GeneratedMessageV3;
+import com.google.protobuf.MessageLite;
 import io.deepstream.protobuf.Auth;
 import io.deepstream.protobuf.Connection.CONNECTION_ACTION;
 import io.deepstream.protobuf.Connection.ConnectionMessage;
 import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.metrics.ConnectionMetrics;
+import io.github.hotleave.deepstream.client.metrics.MBeans;
+import io.github.hotleave.deepstream.client.utils.Backoff;
+import io.github.hotleave.deepstream.client.utils.BufferPool;
+import io.github.hotleave.deepstream.client.utils.HashedWheelTimer;
+import io.github.hotleave.deepstream.client.utils.PendingRequests;
 import io.github.hotleave.deepstream.client.utils.StateMachine;
-import jakarta.websocket.*;
+import io.github.hotleave.deepstream.client.utils.StripedExecutor;
+import io.github.hotleave.deepstream.client.transport.TransportListener;
+import io.github.hotleave.deepstream.client.transport.TransportSession;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import static io.deepstream.protobuf.Auth.AUTH_ACTION.*;
 import static io.deepstream.protobuf.Connection.CONNECTION_ACTION.*;
 import static io.github.hotleave.deepstream.client.connection.ConnectionState.*;
 
-@ClientEndpoint
+/**
+ * Protocol side of a deepstream session: state machine, challenge and authentication, heartbeats and topic routing.
+ * The bytes travel over the runtime's {@link io.github.hotleave.deepstream.client.transport.Transport}.
+ */
 @Slf4j
 public class Connection {
-    private Session session;
-    private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
-    private final Map<General.TOPIC, Consumer<General.Message>> handlerMap = new HashMap<>();
-    private final StateMachine stateMachine;
-
-    private final AtomicBoolean connected = new AtomicBoolean(false);
-    private final AtomicInteger retryCount = new AtomicInteger();
-    private ScheduledFuture<?> heartbeatScheduledFuture;
+    // 重放等待发送窗口时检查连接是否已断开的间隔
+    private static final long REPLAY_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private volatile TransportSession session;
+    // 当前会话的回调，旧会话迟到的回调不再处理
+    private volatile SessionListener sessionListener;
+    private final Map<General.TOPIC, Consumer<InboundMessage>> handlerMap = new HashMap<>();
+    private final StateMachine<ConnectionState, ConnectionTransition> stateMachine;
+    @Getter
+    private final ClientRuntime runtime;
+    private final boolean ownsRuntime;
+    @Getter
+    private final HashedWheelTimer timer;
+    @Getter
+    private final ConnectionOptions options;
+    private final BufferPool bufferPool;
+    private final MessageBatcher batcher;
+    private final FrameDecoder frameDecoder;
+    private final OutboundWindow window;
+    private final LongAdder inboundMessageCount = new LongAdder();
+    private final StripedExecutor dispatcher;
+    @Getter
+    private final PendingRequests pendingRequests;
+    @Getter
+    private final OfflineBuffer offlineBuffer;
+    @Getter
+    private final MessageJournal journal;
+    private final List<Runnable> openHooks = new CopyOnWriteArrayList<>();
+    @Getter
+    private final ConnectionMetrics metrics;
+    private final ObjectName objectName;
+    private volatile long pingSent;
+    private volatile long lastReceived;
+
+    private final Executor connectExecutor;
+    private final Backoff backoff;
+    private final List<ConnectionListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger reconnectAttempts = new AtomicInteger();
+    private final AtomicBoolean reconnectPending = new AtomicBoolean();
+    // 每次打开加一，重放发现连接已换代时停止
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final Object replayLock = new Object();
+    private volatile HashedWheelTimer.Timeout reconnectTimeout;
+    private volatile CompletableFuture<Void> openFuture;
+    private HashedWheelTimer.Cancellable heartbeat;
     private URI uri;
 
     public Connection(String url) throws URISyntaxException {
-        List<StateMachine.Transition> transitions = List.of(
-                new StateMachine.Transition("initialised", CLOSED, INITIALISING),
-                new StateMachine.Transition("connected", INITIALISING, AWAITING_CONNECTION),
-                new StateMachine.Transition("connected", REDIRECTING, AWAITING_CONNECTION),
-                new StateMachine.Transition("connected", RECONNECTING, AWAITING_CONNECTION),
-                new StateMachine.Transition("challenge", AWAITING_CONNECTION, CHALLENGING),
-                new StateMachine.Transition("redirected", CHALLENGING, REDIRECTING),
-                new StateMachine.Transition("challenge-denied", CHALLENGING, CHALLENGE_DENIED),
-                new StateMachine.Transition("accepted", CHALLENGING, AWAITING_AUTHENTICATION, this::onAwaitingAuthentication),
-                new StateMachine.Transition("authentication-timeout", AWAITING_CONNECTION, AUTHENTICATION_TIMEOUT),
-                new StateMachine.Transition("authentication-timeout", AWAITING_AUTHENTICATION, AUTHENTICATION_TIMEOUT),
-                new StateMachine.Transition("authenticate", AWAITING_AUTHENTICATION, AUTHENTICATING),
-                new StateMachine.Transition("unsuccessful-login", AUTHENTICATING, AWAITING_AUTHENTICATION),
-                new StateMachine.Transition("successful-login", AUTHENTICATING, OPEN),
-                new StateMachine.Transition("too-many-auth-attempts", AUTHENTICATING, TOO_MANY_AUTH_ATTEMPTS),
-                new StateMachine.Transition("too-many-auth-attempts", AWAITING_AUTHENTICATION, TOO_MANY_AUTH_ATTEMPTS),
-                new StateMachine.Transition("authentication-timeout", AWAITING_AUTHENTICATION, AUTHENTICATION_TIMEOUT),
-                new StateMachine.Transition("reconnect", RECONNECTING, RECONNECTING),
-                new StateMachine.Transition("closed", CLOSING, CLOSED),
-                new StateMachine.Transition("offline", PAUSING, OFFLINE),
-                new StateMachine.Transition("error", null, RECONNECTING),
-                new StateMachine.Transition("connection-lost", null, RECONNECTING),
-                new StateMachine.Transition("resume", null, RECONNECTING),
-                new StateMachine.Transition("pause", null, PAUSING),
-                new StateMachine.Transition("close", null, CLOSING)
+        this(url, ConnectionOptions.defaults());
+    }
+
+    public Connection(String url, ConnectionOptions options) throws URISyntaxException {
+        this(url, options, null);
+    }
+
+    /**
+     * @param runtime shared resources, null creates a private runtime from the options
+     */
+    public Connection(String url, ConnectionOptions options, ClientRuntime runtime) throws URISyntaxException {
+        List<StateMachine.Transition<ConnectionState, ConnectionTransition>> transitions = List.of(
+                new StateMachine.Transition<>(ConnectionTransition.INITIALISED, CLOSED, INITIALISING),
+                new StateMachine.Transition<>(ConnectionTransition.CONNECTED, INITIALISING, AWAITING_CONNECTION),
+                new StateMachine.Transition<>(ConnectionTransition.CONNECTED, REDIRECTING, AWAITING_CONNECTION),
+                new StateMachine.Transition<>(ConnectionTransition.CONNECTED, RECONNECTING, AWAITING_CONNECTION),
+                new StateMachine.Transition<>(ConnectionTransition.CHALLENGE, AWAITING_CONNECTION, CHALLENGING),
+                new StateMachine.Transition<>(ConnectionTransition.REDIRECTED, CHALLENGING, REDIRECTING),
+                new StateMachine.Transition<>(ConnectionTransition.CHALLENGE_DENIED, CHALLENGING, CHALLENGE_DENIED),
+                new StateMachine.Transition<>(ConnectionTransition.ACCEPTED, CHALLENGING, AWAITING_AUTHENTICATION, this::onAwaitingAuthentication),
+                new StateMachine.Transition<>(ConnectionTransition.AUTHENTICATION_TIMEOUT, AWAITING_CONNECTION, AUTHENTICATION_TIMEOUT),
+                new StateMachine.Transition<>(ConnectionTransition.AUTHENTICATION_TIMEOUT, AWAITING_AUTHENTICATION, AUTHENTICATION_TIMEOUT),
+                new StateMachine.Transition<>(ConnectionTransition.AUTHENTICATE, AWAITING_AUTHENTICATION, AUTHENTICATING),
+                new StateMachine.Transition<>(ConnectionTransition.UNSUCCESSFUL_LOGIN, AUTHENTICATING, AWAITING_AUTHENTICATION),
+                new StateMachine.Transition<>(ConnectionTransition.SUCCESSFUL_LOGIN, AUTHENTICATING, OPEN),
+                new StateMachine.Transition<>(ConnectionTransition.TOO_MANY_AUTH_ATTEMPTS, AUTHENTICATING, TOO_MANY_AUTH_ATTEMPTS),
+                new StateMachine.Transition<>(ConnectionTransition.TOO_MANY_AUTH_ATTEMPTS, AWAITING_AUTHENTICATION, TOO_MANY_AUTH_ATTEMPTS),
+                new StateMachine.Transition<>(ConnectionTransition.AUTHENTICATION_TIMEOUT, AWAITING_AUTHENTICATION, AUTHENTICATION_TIMEOUT),
+                new StateMachine.Transition<>(ConnectionTransition.RECONNECT, RECONNECTING, RECONNECTING),
+                new StateMachine.Transition<>(ConnectionTransition.CLOSED, CLOSING, CLOSED),
+                new StateMachine.Transition<>(ConnectionTransition.OFFLINE, PAUSING, OFFLINE),
+                new StateMachine.Transition<>(ConnectionTransition.ERROR, null, RECONNECTING),
+                new StateMachine.Transition<>(ConnectionTransition.CONNECTION_LOST, null, RECONNECTING),
+                new StateMachine.Transition<>(ConnectionTransition.RESUME, null, RECONNECTING),
+                new StateMachine.Transition<>(ConnectionTransition.PAUSE, null, PAUSING),
+                new StateMachine.Transition<>(ConnectionTransition.CLOSE, null, CLOSING)
         );
 
-        stateMachine = new StateMachine(transitions, this::onStateChange);
-        stateMachine.transition("initialised");
+        stateMachine = new StateMachine<>(ConnectionState.class, ConnectionTransition.class, CLOSED, transitions,
+                this::onStateChange);
 
         this.uri = new URI(url);
+        this.options = options;
+        this.ownsRuntime = runtime == null;
+        this.runtime = runtime != null ? runtime : new ClientRuntime(options);
+        this.timer = this.runtime.getTimer();
+        this.bufferPool = this.runtime.getBufferPool();
+        this.metrics = new ConnectionMetrics(this, this.runtime.getMetrics(), options.getMetricsListener());
+        this.batcher = new MessageBatcher(options.getBatchWindow(), options.getMaxBatchBytes(), bufferPool,
+                timer, this::sendFrame, metrics);
+        this.frameDecoder = new FrameDecoder(options.getMaxMessageSize());
+        this.window = new OutboundWindow(options.getInFlightHighWatermarkBytes(), options.getInFlightLowWatermarkBytes(),
+                options.getInFlightHighWatermarkMessages(), options.getInFlightLowWatermarkMessages(),
+                this::onWritabilityChanged);
+        this.dispatcher = this.runtime.getDispatcher();
+        this.pendingRequests = new PendingRequests(options.getRequestTimeout());
+        this.runtime.register(this);
+        this.runtime.track(pendingRequests);
+        this.offlineBuffer = new OfflineBuffer(options.getOfflineBufferMaxMessages(),
+                options.getOfflineBufferMaxBytes(), options.getOfflineBufferOverflowPolicy());
+        this.journal = openJournal(options);
+        this.connectExecutor = this.runtime.getConnectExecutor();
+        this.backoff = new Backoff(options.getReconnectInitialDelay(), options.getReconnectMaxDelay(),
+                options.getReconnectMultiplier());
+        this.objectName = options.isJmxEnabled() ? MBeans.register("Connection", metrics) : null;
+
+        stateMachine.transition(ConnectionTransition.INITIALISED);
     }
 
-    public void connect() throws DeploymentException, IOException {
-        synchronized (this) {
-            if (connected.get()) {
-                log.info("Connected, abort");
-                return;
-            }
+    @SneakyThrows(IOException.class)
+    private static MessageJournal openJournal(ConnectionOptions options) {
+        if (options.getJournalDirectory() == null) {
+            return null;
+        }
 
-            WebSocketContainer container = ContainerProvider.getWebSocketContainer();
-            session = container.connectToServer(this, uri);
+        return new MessageJournal(options.getJournalDirectory(), options.getJournalSegmentSize());
+    }
 
-            while (!connected.get()) {
-                log.debug("Connection is not ready, wait for it ready...");
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+    /**
+     * Blocks until the connection is {@link ConnectionState#OPEN}.
+     */
+    public void connect() throws IOException {
+        try {
+            connectAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while connecting to " + uri, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
+            throw new IOException(cause.getMessage(), cause);
+        }
 
-            log.info("Connected, ready for data transfer.");
+        log.info("Connected, ready for data transfer.");
+    }
+
+    /**
+     * Starts connecting without blocking, the future completes once the connection is {@link ConnectionState#OPEN}.
+     * Failed attempts are retried with backoff, the future fails when the attempts are used up or the server refuses
+     * the client.
+     */
+    public synchronized CompletableFuture<Void> connectAsync() {
+        if (isConnected()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (openFuture == null || openFuture.isDone()) {
+            openFuture = new CompletableFuture<>();
+            reconnectAttempts.set(0);
+            if (!reconnectPending.get()) {
+                connectExecutor.execute(this::openSession);
+            }
         }
+
+        return openFuture;
+    }
+
+    public void addListener(ConnectionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ConnectionListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Calls the listener whenever the connection enters the state.
+     */
+    public void addStateListener(ConnectionState state, BiConsumer<ConnectionState, ConnectionState> listener) {
+        stateMachine.addListener(state, listener);
     }
 
-    public void registerHandler(General.TOPIC topic, Consumer<General.Message> handler) {
+    public void removeStateListener(ConnectionState state, BiConsumer<ConnectionState, ConnectionState> listener) {
+        stateMachine.removeListener(state, listener);
+    }
+
+    /**
+     * The last state transitions, oldest first.
+     */
+    public List<StateMachine.HistoryEntry<ConnectionState, ConnectionTransition>> getStateHistory() {
+        return stateMachine.getHistory();
+    }
+
+    /**
+     * Runs every time the connection becomes {@link ConnectionState#OPEN}, before the offline buffer is replayed.
+     * Hooks restore server side state such as subscriptions with {@link #sendMessageDirect(General.TOPIC, MessageLite)}.
+     */
+    public void addOpenHook(Runnable hook) {
+        openHooks.add(hook);
+    }
+
+    public void registerHandler(General.TOPIC topic, Consumer<InboundMessage> handler) {
         handlerMap.put(topic, handler);
     }
 
@@ -109,30 +259,127 @@ public class Connection {
         return stateMachine.getState() == OPEN;
     }
 
+    public String getUrl() {
+        return uri.toString();
+    }
+
     public ConnectionState getConnectionState() {
         return stateMachine.getState();
     }
 
+    public long getInboundMessageCount() {
+        return inboundMessageCount.sum();
+    }
+
+    public long getOutboundFrameCount() {
+        return batcher.getFrameCount();
+    }
+
+    public long getOutboundMessageCount() {
+        return batcher.getMessageCount();
+    }
+
+    public double getAverageBatchSize() {
+        return batcher.getAverageBatchSize();
+    }
+
+    /**
+     * False while the bytes or messages handed to the websocket but not yet written are above the high watermark.
+     */
+    public boolean isWritable() {
+        return window.isWritable();
+    }
+
+    /**
+     * Blocks until the connection is writable.
+     *
+     * @return false if it is still not writable after the timeout
+     */
+    public boolean awaitWritable(Duration timeout) throws InterruptedException {
+        return window.awaitWritable(timeout.toNanos());
+    }
+
+    public long getInFlightBytes() {
+        return window.getBytes();
+    }
+
+    public int getInFlightMessages() {
+        return window.getMessages();
+    }
+
+    public void flush() {
+        batcher.flush();
+    }
+
+    /**
+     * Runs a subscriber callback off the I/O thread, callbacks with the same key keep their order.
+     */
+    public void dispatch(Object key, Runnable task) {
+        long queued = System.nanoTime();
+        dispatcher.execute(key, () -> {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                metrics.onDispatched(start - queued, System.nanoTime() - start);
+            }
+        });
+    }
+
+    public String nextCorrelationId() {
+        return pendingRequests.nextId();
+    }
+
+    public int getDispatchQueueDepth() {
+        return dispatcher.getQueueDepth();
+    }
+
     public void close() {
-        if (heartbeatScheduledFuture != null) {
-            heartbeatScheduledFuture.cancel(true);
+        cancelHeartbeat();
+
+        if (session != null && session.isOpen()) {
+            ConnectionMessage message = ConnectionMessage.newBuilder()
+                    .setAction(CONNECTION_ACTION.CONNECTION_CLOSING)
+                    .build();
+            sendMessage(General.TOPIC.CONNECTION, message);
+            batcher.flush();
         }
-
-        ConnectionMessage message = ConnectionMessage.newBuilder()
-                .setAction(CONNECTION_ACTION.CONNECTION_CLOSING)
-                .build();
-        sendMessage(General.TOPIC.CONNECTION, message);
-        stateMachine.transition("close");
+        stateMachine.transition(ConnectionTransition.CLOSE);
+        runtime.unregister(this);
+        runtime.untrack(pendingRequests);
+        MBeans.unregister(objectName);
+        if (ownsRuntime) {
+            runtime.close();
+        }
+        var timeout = reconnectTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        var error = new IllegalStateException("Connection closed");
+        failOpen(error);
+        offlineBuffer.clear(error);
+        if (journal != null) {
+            journal.close();
+        }
+        pendingRequests.failAll(error);
     }
 
-    @OnOpen
-    public void onOpen(Session session) {
+    private void onOpen(TransportSession session) {
+        if (isClosing()) {
+            // 重连过程中被关闭
+            session.close(TransportSession.NORMAL_CLOSURE, "Connection closed");
+            return;
+        }
+        frameDecoder.reset();
         this.session = session;
 
-        stateMachine.transition("connected");
+        stateMachine.transition(ConnectionTransition.CONNECTED);
 
         // 定时发送ping
-        heartbeatScheduledFuture = scheduledExecutorService.scheduleAtFixedRate(this::ping, 5, 5, TimeUnit.SECONDS);
+        lastReceived = System.nanoTime();
+        long interval = options.getHeartbeatInterval().toMillis();
+        cancelHeartbeat();
+        heartbeat = timer.scheduleAtFixedRate(this::ping, interval, interval, TimeUnit.MILLISECONDS);
 
         // 发送challenge
         ConnectionMessage challenge = ConnectionMessage.newBuilder()
@@ -142,135 +389,221 @@ public class Connection {
                 .setSdkVersion("1.0.5")
                 .setSdkType("java")
                 .build();
+        // 先切换状态，服务端的回复可能在发送返回前就到达
+        stateMachine.transition(ConnectionTransition.CHALLENGE);
         sendMessage(General.TOPIC.CONNECTION, challenge);
-
-        stateMachine.transition("challenge");
     }
 
-    @OnError
-    public void onError(Throwable throwable) {
+    private void onError(Throwable throwable) {
         log.error("Connection error: {}", throwable.getMessage(), throwable);
 
-        stateMachine.transition("error");
-
-        if (heartbeatScheduledFuture != null) {
-            heartbeatScheduledFuture.cancel(true);
+        cancelHeartbeat();
+        if (isClosing()) {
+            return;
         }
+        stateMachine.transition(ConnectionTransition.ERROR);
 
-        tryReconnect();
+        scheduleReconnect(throwable);
     }
 
-    private void tryReconnect() {
-        if (connected.get()) {
+    private void onClose(int code, String reason) {
+        log.debug("Websocket closed: {} {}", code, reason);
+        cancelHeartbeat();
+        frameDecoder.reset();
+
+        ConnectionState state = stateMachine.getState();
+        if (state == CHALLENGE_DENIED || state == TOO_MANY_AUTH_ATTEMPTS || state == AUTHENTICATION_TIMEOUT) {
+            failOpen(new IOException("Connection to " + uri + " closed: " + state));
             return;
         }
 
-        if (retryCount.incrementAndGet() >= 5) {
-            log.info("Connect to {} failed after {} times retry", uri, retryCount);
+        if (state == CLOSING) {
+            this.stateMachine.transition(ConnectionTransition.CLOSED);
+            return;
+        }
+        if (state == PAUSING) {
+            this.stateMachine.transition(ConnectionTransition.OFFLINE);
+            return;
+        }
+        if (state == REDIRECTING) {
+            log.info("Redirect to {}", uri);
+            connectExecutor.execute(this::openSession);
             return;
         }
+        stateMachine.transition(ConnectionTransition.CONNECTION_LOST);
+        scheduleReconnect(null);
+    }
 
+    private void openSession() {
+        if (isClosing()) {
+            return;
+        }
         try {
-            connect();
-        } catch (DeploymentException | IOException e) {
-            throw new RuntimeException(e);
+            var listener = new SessionListener();
+            sessionListener = listener;
+            session = runtime.getTransport().connect(uri, listener);
+        } catch (IOException | RuntimeException e) {
+            if (isClosing()) {
+                return;
+            }
+            log.warn("Connect to {} failed: {}", uri, e.getMessage());
+            stateMachine.transition(ConnectionTransition.ERROR);
+            scheduleReconnect(e);
         }
     }
 
-    @OnClose
-    public void onClose() {
-        log.debug("Websocket closed");
-        if (heartbeatScheduledFuture != null) {
-            heartbeatScheduledFuture.cancel(true);
+    /**
+     * Retries off the I/O thread after an exponential backoff with full jitter. onError and onClose usually both
+     * fire for one failure, only one reconnect is scheduled.
+     */
+    private void scheduleReconnect(Throwable cause) {
+        if (isClosing() || !reconnectPending.compareAndSet(false, true)) {
+            return;
         }
 
-        if (stateMachine.getState() == CHALLENGE_DENIED ||
-                stateMachine.getState() == TOO_MANY_AUTH_ATTEMPTS ||
-                stateMachine.getState() == AUTHENTICATION_TIMEOUT) {
+        int attempt = reconnectAttempts.incrementAndGet();
+        metrics.onReconnect(attempt);
+        int maxAttempts = options.getMaxReconnectAttempts();
+        if (maxAttempts != ConnectionOptions.UNLIMITED_RECONNECT_ATTEMPTS && attempt > maxAttempts) {
+            reconnectPending.set(false);
+            log.error("Connect to {} failed after {} times retry", uri, maxAttempts);
+            failOpen(new IOException("Connect to " + uri + " failed after " + maxAttempts + " times retry", cause));
             return;
         }
 
-        if (stateMachine.getState() == CLOSING) {
-            this.stateMachine.transition("closed");
-            return;
+        synchronized (this) {
+            if (openFuture == null || openFuture.isDone()) {
+                openFuture = new CompletableFuture<>();
+            }
         }
-        if (stateMachine.getState() == PAUSING) {
-            this.stateMachine.transition("offline");
-            return;
+
+        long delay = backoff.delayMillis(attempt - 1);
+        log.info("Reconnect to {} in {}ms, attempt {}", uri, delay, attempt);
+        for (ConnectionListener listener : listeners) {
+            listener.onReconnectAttempt(attempt, Duration.ofMillis(delay));
+        }
+
+        reconnectTimeout = timer.schedule(() -> {
+            reconnectPending.set(false);
+            connectExecutor.execute(this::openSession);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isClosing() {
+        ConnectionState state = stateMachine.getState();
+        return state == CLOSING || state == CLOSED;
+    }
+
+    private void failOpen(Throwable error) {
+        var future = openFuture;
+        if (future != null) {
+            future.completeExceptionally(error);
+        }
+    }
+
+    private void onMessage(ByteBuffer fragment, boolean last) {
+        lastReceived = System.nanoTime();
+        try {
+            frameDecoder.decode(fragment, last, this::dispatch);
+        } catch (MessageTooLargeException e) {
+            log.error("Close connection: {}", e.getMessage());
+            closeSession(TransportSession.TOO_BIG, e.getMessage());
+        } catch (IOException e) {
+            log.error("Invalid message: {}", e.getMessage(), e);
         }
-        stateMachine.transition("connection-lost");
-        tryReconnect();
     }
 
-    @OnMessage
     @SneakyThrows(IOException.class)
     public void onMessage(byte[] message) {
-        General.Message msg = General.Message.parseDelimitedFrom(new ByteArrayInputStream(message));
-        log.debug("topic = {}", msg.getTopic());
-
-        if (msg.getTopic() == General.TOPIC.CONNECTION) {
-            var connectionMessage = ConnectionMessage.parseFrom(msg.getMessage());
-            log.debug("Connection response {}", connectionMessage);
-            handleConnectionResponse(connectionMessage);
-        } else if (msg.getTopic() == General.TOPIC.AUTH) {
-            var authMessage = Auth.AuthMessage.parseFrom(msg.getMessage());
-            log.info("Auth response: {}", authMessage);
-            handleAuthResponse(authMessage);
-        } else {
-            Consumer<General.Message> handler = handlerMap.get(msg.getTopic());
-            handler.accept(msg);
+        frameDecoder.decode(message, this::dispatch);
+    }
+
+    private void dispatch(InboundMessage msg) {
+        inboundMessageCount.increment();
+
+        long start = System.nanoTime();
+        try {
+            if (msg.getTopic() == General.TOPIC.CONNECTION) {
+                var connectionMessage = msg.getMessage(ConnectionMessage.parser());
+                log.debug("Connection response {}", connectionMessage);
+                handleConnectionResponse(connectionMessage);
+            } else if (msg.getTopic() == General.TOPIC.AUTH) {
+                var authMessage = msg.getMessage(Auth.AuthMessage.parser());
+                log.debug("Auth response: {}", authMessage);
+                handleAuthResponse(authMessage);
+            } else {
+                Consumer<InboundMessage> handler = handlerMap.get(msg.getTopic());
+                if (handler == null) {
+                    log.warn("No handler for topic {}", msg.getTopic());
+                } else {
+                    handler.accept(msg);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Handle {} failed: {}", msg, e.getMessage(), e);
         }
+        metrics.onInbound(msg.getTopic(), msg.getSize(), System.nanoTime() - start);
     }
 
     private void handleAuthResponse(Auth.AuthMessage message) {
         if (message.getAction() == AUTH_TOO_MANY_AUTH_ATTEMPTS) {
-            stateMachine.transition("too-many-auth-attempts");
+            stateMachine.transition(ConnectionTransition.TOO_MANY_AUTH_ATTEMPTS);
             log.error("Too many auth attempts: {}", message);
         } else if (message.getAction() == AUTH_AUTH_UNSUCCESSFUL) {
-            stateMachine.transition("unsuccessful-login");
+            stateMachine.transition(ConnectionTransition.UNSUCCESSFUL_LOGIN);
             log.info("Auth unsuccessful: Invalid auth details");
         } else if (message.getAction() == AUTH_AUTH_SUCCESSFUL) {
-            stateMachine.transition("successful-login");
+            stateMachine.transition(ConnectionTransition.SUCCESSFUL_LOGIN);
             onAuthSuccessful(message.getData());
         }
     }
 
     private void onAuthSuccessful(String data) {
-        synchronized (this) {
-            log.debug("Client data is: {}", data);
-
-            this.connected.set(true);
-            this.notifyAll();
-        }
+        log.debug("Client data is: {}", data);
     }
 
     @SneakyThrows(URISyntaxException.class)
     private void handleConnectionResponse(ConnectionMessage message) {
+        if (message.getAction() == CONNECTION_PONG) {
+            long sent = pingSent;
+            if (sent != 0) {
+                metrics.onPingRoundTrip(System.nanoTime() - sent);
+            }
+            return;
+        }
         if (message.getAction() == CONNECTION_ACCEPT) {
-            stateMachine.transition("accepted");
+            stateMachine.transition(ConnectionTransition.ACCEPTED);
+            return;
+        }
+        if (message.getAction() == CONNECTION_CLOSED) {
+            // 服务端确认关闭后断开socket
+            closeSession();
             return;
         }
         if (message.getAction() == CONNECTION_REJECT) {
-            stateMachine.transition("challenge-denied");
+            stateMachine.transition(ConnectionTransition.CHALLENGE_DENIED);
             closeSession();
             return;
         }
         if (message.getAction() == CONNECTION_REDIRECT) {
             uri = new URI(message.getUrl());
-            stateMachine.transition("redirected");
+            stateMachine.transition(ConnectionTransition.REDIRECTED);
             closeSession();
             return;
         }
         if (message.getAction() == CONNECTION_AUTHENTICATION_TIMEOUT) {
-            this.stateMachine.transition("authentication-timeout");
+            this.stateMachine.transition(ConnectionTransition.AUTHENTICATION_TIMEOUT);
             log.error("Authentication timeout: {}", message);
         }
     }
 
-    @SneakyThrows(IOException.class)
     private void closeSession() {
+        closeSession(TransportSession.NORMAL_CLOSURE, "");
+    }
+
+    private void closeSession(int code, String reason) {
         if (session != null) {
-            session.close();
+            session.close(code, reason);
         }
     }
 
@@ -278,10 +611,104 @@ public class Connection {
         if (newState == oldState) {
             return;
         }
+        metrics.onStateChanged(newState);
+
+        if (oldState == OPEN) {
+            window.reset();
+            offlineBuffer.close();
+            if (journal != null) {
+                journal.pause();
+            }
+        }
+
+        if (newState == OPEN) {
+            reconnectAttempts.set(0);
+            restoreSession();
+            var future = openFuture;
+            if (future != null) {
+                future.complete(null);
+            }
+        }
+
+        for (ConnectionListener listener : listeners) {
+            try {
+                listener.onStateChanged(newState, oldState);
+            } catch (RuntimeException e) {
+                log.error("Connection listener failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void restoreSession() {
+        for (Runnable hook : openHooks) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                log.error("Open hook failed: {}", e.getMessage(), e);
+            }
+        }
+
+        int generation = openCount.incrementAndGet();
+        if (offlineBuffer.size() == 0 && (journal == null || !journal.hasPending())) {
+            // 没有要重放的消息，直接打开，连接可用后发出的消息不必再经过缓冲
+            replay(generation);
+        } else {
+            // 重放要等待发送窗口，不能占用I/O线程
+            connectExecutor.execute(() -> replay(generation));
+        }
+    }
+
+    /**
+     * Sends the journal and then the offline buffer, every record waits for room in the outbound window. Stops once
+     * the connection is lost, whatever was not sent is replayed on the next open.
+     */
+    private void replay(int generation) {
+        synchronized (replayLock) {
+            try {
+                if (journal != null) {
+                    journal.replay((record, completion) -> {
+                        awaitReplayWindow(generation);
+                        batcher.addRecord(record, completion);
+                    });
+                }
+                long replayed = offlineBuffer.getReplayedCount();
+                offlineBuffer.drain((record, completion) -> {
+                    awaitReplayWindow(generation);
+                    batcher.addRecord(ByteBuffer.wrap(record), completion);
+                });
+                log.debug("Replayed {} buffered messages", offlineBuffer.getReplayedCount() - replayed);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Replay stopped: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void awaitReplayWindow(int generation) throws IOException {
+        try {
+            do {
+                if (generation != openCount.get() || stateMachine.getState() != OPEN) {
+                    throw new IOException("Connection lost during replay");
+                }
+            } while (!window.awaitWritable(REPLAY_POLL_NANOS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during replay");
+        }
+    }
+
+    private void onWritabilityChanged(boolean writable) {
+        log.debug("Writable: {}", writable);
+        for (ConnectionListener listener : listeners) {
+            try {
+                listener.onWritabilityChanged(writable);
+            } catch (RuntimeException e) {
+                log.error("Connection listener failed: {}", e.getMessage(), e);
+            }
+        }
     }
 
     private void onAwaitingAuthentication() {
-        stateMachine.transition("authenticate");
+        stateMachine.transition(ConnectionTransition.AUTHENTICATE);
 
         Auth.AuthMessage authMessage = Auth.AuthMessage.newBuilder()
                 .setAction(Auth.AUTH_ACTION.AUTH_REQUEST)
@@ -291,25 +718,173 @@ public class Connection {
         sendMessage(General.TOPIC.AUTH, authMessage);
     }
 
+    private void cancelHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.cancel();
+            heartbeat = null;
+        }
+    }
+
     private void ping() {
+        long silence = System.nanoTime() - lastReceived;
+        if (silence > 2 * options.getHeartbeatInterval().toNanos()) {
+            // 半开的连接收不到关闭通知，两个心跳周期都没有消息就主动断开重连
+            log.warn("Nothing received from {} for {}ms, close the connection", uri,
+                    TimeUnit.NANOSECONDS.toMillis(silence));
+            cancelHeartbeat();
+            closeSession(TransportSession.GOING_AWAY, "Heartbeat timeout");
+            return;
+        }
+
         ConnectionMessage ping = ConnectionMessage.newBuilder()
                 .setAction(CONNECTION_ACTION.CONNECTION_PING)
                 .build();
         log.debug("Send ping message: {}", ping);
 
+        pingSent = System.nanoTime();
         sendMessage(General.TOPIC.CONNECTION, ping);
     }
 
+    /**
+     * Sends the message, while the connection is not open it is kept in the {@link OfflineBuffer} and replayed once
+     * the connection is open again.
+     *
+     * @throws OfflineBuffer.BufferFullException if the buffer is full and its policy is REJECT
+     */
     @SneakyThrows(IOException.class)
-    public void sendMessage(General.TOPIC topic, GeneratedMessageV3 msg) {
-        General.Message message = General.Message.newBuilder()
-                .setTopic(topic)
-                .setMessage(msg.toByteString())
-                .build();
+    public void sendMessage(General.TOPIC topic, MessageLite msg) {
+        outbound(topic, msg);
+        if (!isBuffered(topic) || !offlineBuffer.offer(topic, msg, null)) {
+            batcher.add(topic, msg);
+        }
+    }
+
+    /**
+     * Like {@link #sendMessage(General.TOPIC, MessageLite)}, the future completes once the message was written to the
+     * socket.
+     */
+    public CompletableFuture<Void> sendMessageAsync(General.TOPIC topic, MessageLite msg) {
+        var sent = new CompletableFuture<Void>();
+        outbound(topic, msg);
+        try {
+            if (!isBuffered(topic) || !offlineBuffer.offer(topic, msg, sent)) {
+                batcher.add(topic, msg, sent);
+            }
+        } catch (IOException | RuntimeException e) {
+            sent.completeExceptionally(e);
+        }
+
+        return sent;
+    }
+
+    /**
+     * Writes the message to the {@link MessageJournal} first, so it is sent even if the connection is down or the
+     * process restarts before. The future completes once the message was written to the socket.
+     *
+     * @throws IllegalStateException if no journal directory is configured
+     */
+    public CompletableFuture<Void> sendMessageDurable(General.TOPIC topic, MessageLite msg) {
+        if (journal == null) {
+            throw new IllegalStateException("No journal directory configured");
+        }
+
+        outbound(topic, msg);
+        try {
+            return journal.append(topic, msg, batcher::addRecord);
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Hands messages held in the {@link OfflineBuffer} elsewhere while the connection is down, e.g. to the connection
+     * taking over a lost shard. Messages sent later are offered to the forwarder too, until the connection is open.
+     */
+    public void forwardBuffered(OfflineBuffer.Forwarder forwarder) {
+        offlineBuffer.forward(forwarder);
+    }
+
+    /**
+     * Sends the message ahead of the offline buffer, only meant for open hooks.
+     */
+    @SneakyThrows(IOException.class)
+    public void sendMessageDirect(General.TOPIC topic, MessageLite msg) {
+        outbound(topic, msg);
+        batcher.add(topic, msg);
+    }
 
-        var outputStream = new ByteArrayOutputStream();
-        message.writeDelimitedTo(outputStream);
-        var buffer = ByteBuffer.wrap(outputStream.toByteArray());
-        session.getAsyncRemote().sendBinary(buffer);
+    private void outbound(General.TOPIC topic, MessageLite msg) {
+        metrics.onOutbound(topic, MessageEncoder.delimitedSize(topic, msg));
+    }
+
+    private static boolean isBuffered(General.TOPIC topic) {
+        return topic != General.TOPIC.CONNECTION && topic != General.TOPIC.AUTH;
+    }
+
+    private void sendFrame(ByteBuffer frame, int messages, List<CompletableFuture<Void>> completions) {
+        // 按缓冲区容量计算，即发送期间占用的内存
+        int size = frame.capacity();
+        window.acquire(size, messages);
+        try {
+            session.send(frame, error -> {
+                window.release(size, messages);
+                onFrameSent(frame, completions, error);
+            });
+        } catch (RuntimeException e) {
+            window.release(size, messages);
+            throw e;
+        }
+    }
+
+    private void onFrameSent(ByteBuffer frame, List<CompletableFuture<Void>> completions, Throwable error) {
+        bufferPool.release(frame);
+        if (error != null) {
+            log.warn("Send frame failed: {}", error.getMessage());
+        }
+        MessageBatcher.complete(completions, error);
+    }
+
+    /**
+     * Transport callbacks of one session. Once a newer session was opened the old one's late close or error must not
+     * start another reconnect, so callbacks only reach the connection while their session is the current one.
+     */
+    private class SessionListener implements TransportListener {
+        @Override
+        public void onOpen(TransportSession session) {
+            if (isCurrent()) {
+                Connection.this.onOpen(session);
+            } else {
+                session.close(TransportSession.NORMAL_CLOSURE, "Session superseded");
+            }
+        }
+
+        @Override
+        public void onMessage(ByteBuffer fragment, boolean last) {
+            if (isCurrent()) {
+                Connection.this.onMessage(fragment, last);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (isCurrent()) {
+                Connection.this.onError(throwable);
+            } else {
+                log.debug("Ignore error of a superseded session: {}", throwable.getMessage());
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason) {
+            if (isCurrent()) {
+                Connection.this.onClose(code, reason);
+            } else {
+                log.debug("Ignore close of a superseded session: {} {}", code, reason);
+            }
+        }
+
+        private boolean isCurrent() {
+            return sessionListener == this;
+        }
     }
 }
@@ -0,0 +1,20 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import java.time.Duration;
+
+public interface ConnectionListener {
+    default void onStateChanged(ConnectionState newState, ConnectionState oldState) {
+    }
+
+    /**
+     * A reconnect was scheduled, {@code attempt} starts at 1 after every successful login.
+     */
+    default void onReconnectAttempt(int attempt, Duration delay) {
+    }
+
+    /**
+     * The outbound window crossed a watermark, producers should pause while it is not writable.
+     */
+    default void onWritabilityChanged(boolean writable) {
+    }
+}
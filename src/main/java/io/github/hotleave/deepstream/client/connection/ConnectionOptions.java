@@ -0,0 +1,213 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import io.github.hotleave.deepstream.client.codec.PayloadCodec;
+import io.github.hotleave.deepstream.client.metrics.MetricsListener;
+import io.github.hotleave.deepstream.client.utils.HashedWheelTimer;
+import io.github.hotleave.deepstream.client.utils.StripedExecutor;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+@Getter
+@Builder(toBuilder = true)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ConnectionOptions {
+    public static final int UNLIMITED_RECONNECT_ATTEMPTS = -1;
+
+    /**
+     * How long outbound messages may wait to be coalesced into one frame, {@link Duration#ZERO} sends every message
+     * as soon as it is written. The flush runs on the timer, so the window is rounded up to its tick.
+     */
+    @Builder.Default
+    Duration batchWindow = Duration.ZERO;
+
+    /**
+     * A pending batch is flushed as soon as it reaches this size, regardless of the window.
+     */
+    @Builder.Default
+    int maxBatchBytes = 64 * 1024;
+
+    /**
+     * Number of frame buffers kept for reuse per size class, the classes are powers of two up to
+     * {@link #maxBatchBytes}.
+     */
+    @Builder.Default
+    int bufferPoolSize = 16;
+
+    @Builder.Default
+    boolean directBuffers = false;
+
+    /**
+     * Upper bound for a single inbound message, bounds the bytes carried over between fragments.
+     */
+    @Builder.Default
+    int maxMessageSize = 16 * 1024 * 1024;
+
+    /**
+     * Number of lanes running subscriber callbacks, 0 runs them on the socket's I/O thread.
+     */
+    @Builder.Default
+    int dispatchThreads = Runtime.getRuntime().availableProcessors();
+
+    @Builder.Default
+    int dispatchQueueSize = 1024;
+
+    @Builder.Default
+    StripedExecutor.OverflowPolicy dispatchOverflowPolicy = StripedExecutor.OverflowPolicy.BLOCK;
+
+    /**
+     * Most names put into one subscribe or unsubscribe message by the bulk APIs.
+     */
+    @Builder.Default
+    int maxNamesPerMessage = 1000;
+
+    /**
+     * How long a request waits for its acknowledgement or response.
+     */
+    @Builder.Default
+    Duration requestTimeout = Duration.ofSeconds(10);
+
+    /**
+     * A connection that received nothing for two intervals is closed and reconnected.
+     */
+    @Builder.Default
+    Duration heartbeatInterval = Duration.ofSeconds(5);
+
+    @Builder.Default
+    Duration reconnectInitialDelay = Duration.ofMillis(500);
+
+    @Builder.Default
+    Duration reconnectMaxDelay = Duration.ofSeconds(30);
+
+    @Builder.Default
+    double reconnectMultiplier = 2;
+
+    /**
+     * Reconnects after a connection loss before giving up, {@link #UNLIMITED_RECONNECT_ATTEMPTS} never gives up.
+     */
+    @Builder.Default
+    int maxReconnectAttempts = 5;
+
+    /**
+     * Capacity of the frame buffers handed to the websocket but not yet written at which the connection stops being
+     * writable.
+     */
+    @Builder.Default
+    long inFlightHighWatermarkBytes = 4 * 1024 * 1024;
+
+    /**
+     * The connection is writable again once the bytes in flight dropped to this value.
+     */
+    @Builder.Default
+    long inFlightLowWatermarkBytes = 1024 * 1024;
+
+    @Builder.Default
+    int inFlightHighWatermarkMessages = 10_000;
+
+    @Builder.Default
+    int inFlightLowWatermarkMessages = 5_000;
+
+    /**
+     * Outbound messages kept while the connection is not open.
+     */
+    @Builder.Default
+    int offlineBufferMaxMessages = 10_000;
+
+    @Builder.Default
+    long offlineBufferMaxBytes = 16 * 1024 * 1024;
+
+    @Builder.Default
+    OfflineBuffer.OverflowPolicy offlineBufferOverflowPolicy = OfflineBuffer.OverflowPolicy.DROP_OLDEST;
+
+    /**
+     * Directory of the {@link MessageJournal} used by durable sends, null disables the journal.
+     */
+    Path journalDirectory;
+
+    @Builder.Default
+    int journalSegmentSize = 64 * 1024 * 1024;
+
+    /**
+     * How long an RPC waits for a provider to accept it.
+     */
+    @Builder.Default
+    Duration rpcAckTimeout = Duration.ofSeconds(6);
+
+    /**
+     * How long an RPC waits for its response.
+     */
+    @Builder.Default
+    Duration rpcResponseTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Threads running the RPC providers of all connections sharing a {@link ClientRuntime}.
+     */
+    @Builder.Default
+    int rpcWorkerThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * RPCs a connection's providers accept at once, running or queued. Requests beyond are rejected, so the server
+     * can route them to another provider.
+     */
+    @Builder.Default
+    int rpcMaxPendingRequests = 1024;
+
+    /**
+     * How long a provider may take to answer an accepted RPC. Past it the request is answered with an error, so a
+     * provider that never answers does not hold on to one of the {@link #rpcMaxPendingRequests}.
+     */
+    @Builder.Default
+    Duration rpcProviderTimeout = Duration.ofSeconds(10);
+
+    /**
+     * How long presence changes are collected before listeners get them as one diff, {@link Duration#ZERO} reports
+     * every change on its own.
+     */
+    @Builder.Default
+    Duration presenceBatchWindow = Duration.ofMillis(100);
+
+    /**
+     * Approximate JSON size of the records kept in the local record cache, subscribed records are never evicted.
+     */
+    @Builder.Default
+    long recordCacheMaxBytes = 64 * 1024 * 1024;
+
+    /**
+     * Encodes typed event data and decodes it for typed subscribers, null uses
+     * {@link io.github.hotleave.deepstream.client.codec.JsonCodec}.
+     */
+    PayloadCodec payloadCodec;
+
+    /**
+     * Receives every measurement besides the built-in {@link io.github.hotleave.deepstream.client.metrics.ConnectionMetrics},
+     * null for none.
+     */
+    MetricsListener metricsListener;
+
+    /**
+     * Registers the connection and runtime metrics as MBeans.
+     */
+    @Builder.Default
+    boolean jmxEnabled = false;
+
+    /**
+     * Runs the blocking websocket handshakes and the replay of the journal and offline buffer after a reconnect, null
+     * uses a shared pool of daemon threads.
+     */
+    Executor connectExecutor;
+
+    /**
+     * Timer for heartbeats, batch flushes, request timeouts and reconnect delays, null uses the timer shared by all
+     * connections.
+     */
+    HashedWheelTimer timer;
+
+    public static ConnectionOptions defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.hotleave.deepstream.client.connection;
+
+/**
+ * Transitions of the connection's state machine.
+ */
+public enum ConnectionTransition {
+    INITIALISED,
+    CONNECTED,
+    CHALLENGE,
+    REDIRECTED,
+    CHALLENGE_DENIED,
+    ACCEPTED,
+    AUTHENTICATION_TIMEOUT,
+    AUTHENTICATE,
+    UNSUCCESSFUL_LOGIN,
+    SUCCESSFUL_LOGIN,
+    TOO_MANY_AUTH_ATTEMPTS,
+    RECONNECT,
+    CLOSED,
+    OFFLINE,
+    ERROR,
+    CONNECTION_LOST,
+    RESUME,
+    PAUSE,
+    CLOSE
+}
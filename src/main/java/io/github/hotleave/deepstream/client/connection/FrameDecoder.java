@@ -0,0 +1,161 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Incremental decoder for delimited {@link io.deepstream.protobuf.General.Message} records. A frame may carry any
+ * number of records and a record may be split across fragments, incomplete bytes are carried over to the next call.
+ * <p>
+ * Container buffers are only valid during the callback, so every fragment is copied once in bulk, decoded messages are
+ * views on that copy. Fragments of an incomplete record are appended behind the carried over bytes, the buffer grows by
+ * at least doubling so a large record split into many fragments is copied a constant number of times. Bytes that were
+ * handed out as a message are never written again.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class FrameDecoder {
+    static final int MAX_VARINT_SIZE = 5;
+
+    final int maxMessageSize;
+
+    byte[] pending;
+    int pendingOffset;
+    int pendingLength;
+    // Size of the incomplete record including its length prefix, 0 if the prefix is incomplete too
+    int expectedLength;
+
+    FrameDecoder(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Decodes a fragment of a websocket message, {@code last} marks the final fragment.
+     */
+    void decode(ByteBuffer fragment, boolean last, Consumer<InboundMessage> sink) throws IOException {
+        int size = pendingLength + fragment.remaining();
+        byte[] data;
+        int offset;
+        if (pendingLength == 0) {
+            data = new byte[size];
+            offset = 0;
+        } else {
+            if (pendingOffset + size > pending.length) {
+                int capacity = Math.min(Math.max(expectedLength, pending.length * 2), maxMessageSize + MAX_VARINT_SIZE);
+                byte[] grown = new byte[Math.max(size, capacity)];
+                System.arraycopy(pending, pendingOffset, grown, 0, pendingLength);
+                pending = grown;
+                pendingOffset = 0;
+            }
+            data = pending;
+            offset = pendingOffset;
+        }
+        fragment.get(data, offset + pendingLength, fragment.remaining());
+        clearPending();
+
+        decode(data, offset, size, last, sink);
+    }
+
+    /**
+     * Decodes a complete websocket message which is owned by the caller, no bytes are copied.
+     */
+    void decode(byte[] message, Consumer<InboundMessage> sink) throws IOException {
+        if (pendingLength > 0) {
+            decode(ByteBuffer.wrap(message), true, sink);
+            return;
+        }
+
+        decode(message, 0, message.length, true, sink);
+    }
+
+    boolean hasPending() {
+        return pendingLength > 0;
+    }
+
+    /**
+     * Drops the bytes of an incomplete record, they belong to a session that is gone.
+     */
+    void reset() {
+        if (pendingLength > 0) {
+            log.debug("Discard {} bytes of the previous session", pendingLength);
+        }
+        clearPending();
+    }
+
+    private void decode(byte[] data, int offset, int length, boolean last, Consumer<InboundMessage> sink) throws IOException {
+        var buffer = ByteBuffer.wrap(data, offset, length);
+        int end = offset + length;
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            long header = peekLength(data, start, end);
+            if (header < 0) {
+                break;
+            }
+
+            int recordLength = (int) header;
+            int recordEnd = start + (int) (header >>> 32) + recordLength;
+            if (recordLength > maxMessageSize) {
+                throw new MessageTooLargeException(recordLength, maxMessageSize);
+            }
+            if (recordEnd > end) {
+                expectedLength = recordEnd - start;
+                break;
+            }
+
+            sink.accept(MessageDecoder.decode(buffer));
+        }
+
+        int remaining = end - buffer.position();
+        if (remaining == 0) {
+            return;
+        }
+        if (last) {
+            log.warn("Discard {} bytes of truncated message", remaining);
+            return;
+        }
+        if (remaining > maxMessageSize + MAX_VARINT_SIZE) {
+            throw new MessageTooLargeException(remaining, maxMessageSize);
+        }
+
+        pending = data;
+        pendingOffset = buffer.position();
+        pendingLength = remaining;
+    }
+
+    private void clearPending() {
+        pending = null;
+        pendingOffset = 0;
+        pendingLength = 0;
+        expectedLength = 0;
+    }
+
+    /**
+     * Reads the varint length prefix at {@code offset}, the result packs the header size into the high and the record
+     * length into the low 32 bits, or is -1 when the prefix itself is incomplete.
+     */
+    private static long peekLength(byte[] data, int offset, int end) throws InvalidProtocolBufferException {
+        int result = 0;
+        for (int i = 0; i < MAX_VARINT_SIZE; i++) {
+            if (offset + i >= end) {
+                return -1;
+            }
+
+            byte b = data[offset + i];
+            result |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                if (result < 0) {
+                    throw new InvalidProtocolBufferException("Negative message size");
+                }
+                return (long) (i + 1) << 32 | result;
+            }
+        }
+
+        throw new InvalidProtocolBufferException("Malformed message size");
+    }
+}
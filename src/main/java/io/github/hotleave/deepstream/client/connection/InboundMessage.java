@@ -0,0 +1,56 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.deepstream.protobuf.General;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A received {@link General.Message} whose inner message is still a view on the frame bytes, it is only parsed the
+ * first time a handler asks for it.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class InboundMessage {
+    @Getter
+    final General.TOPIC topic;
+    final ByteBuffer payload;
+
+    Parser<?> parsedBy;
+    MessageLite parsed;
+
+    public InboundMessage(General.TOPIC topic, ByteBuffer payload) {
+        this.topic = topic;
+        this.payload = payload;
+    }
+
+    public int getSize() {
+        return payload.remaining();
+    }
+
+    /**
+     * Read-only view of the serialized inner message.
+     */
+    public ByteBuffer getPayload() {
+        return payload.asReadOnlyBuffer();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends MessageLite> T getMessage(Parser<T> parser) throws InvalidProtocolBufferException {
+        if (parsedBy != parser) {
+            parsed = parser.parseFrom(payload.duplicate());
+            parsedBy = parser;
+        }
+
+        return (T) parsed;
+    }
+
+    @Override
+    public String toString() {
+        return "InboundMessage(topic=" + topic + ", size=" + getSize() + ")";
+    }
+}
@@ -0,0 +1,227 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.metrics.MetricsListener;
+import io.github.hotleave.deepstream.client.utils.BufferPool;
+import io.github.hotleave.deepstream.client.utils.HashedWheelTimer;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects delimited {@link General.Message} records and writes them back-to-back into a single binary frame. Frames
+ * are pooled buffers sized to their content, a batch starts in the smallest buffer that fits and moves to a larger one
+ * as it grows. The sink must hand frames back to the pool once the send completed.
+ * <p>
+ * One {@link CodedOutputStream} lives as long as the batcher and is pointed at each new frame, so a send allocates
+ * nothing once the pool is warm, whatever the batch window.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class MessageBatcher {
+    final long windowNanos;
+    final int maxBatchBytes;
+    final BufferPool bufferPool;
+    final HashedWheelTimer timer;
+    final FrameSink frameSink;
+    final MetricsListener metrics;
+
+    final LongAdder frameCount = new LongAdder();
+    final LongAdder messageCount = new LongAdder();
+    final FrameOutput frameOutput = new FrameOutput();
+    final CodedOutputStream output = CodedOutputStream.newInstance(frameOutput, CodedOutputStream.DEFAULT_BUFFER_SIZE);
+
+    ByteBuffer buffer;
+    int pendingBytes;
+    int pendingMessages;
+    List<CompletableFuture<Void>> completions;
+    HashedWheelTimer.Timeout flushTimeout;
+
+    MessageBatcher(Duration window, int maxBatchBytes, BufferPool bufferPool, HashedWheelTimer timer,
+                   FrameSink frameSink) {
+        this(window, maxBatchBytes, bufferPool, timer, frameSink, MetricsListener.NONE);
+    }
+
+    MessageBatcher(Duration window, int maxBatchBytes, BufferPool bufferPool, HashedWheelTimer timer,
+                   FrameSink frameSink, MetricsListener metrics) {
+        this.windowNanos = window.toNanos();
+        this.maxBatchBytes = maxBatchBytes;
+        this.bufferPool = bufferPool;
+        this.timer = timer;
+        this.frameSink = frameSink;
+        this.metrics = metrics;
+    }
+
+    synchronized void add(General.TOPIC topic, MessageLite msg) throws IOException {
+        add(topic, msg, null);
+    }
+
+    /**
+     * @param completion completed once the frame carrying the message was written, may be null
+     */
+    synchronized void add(General.TOPIC topic, MessageLite msg, CompletableFuture<Void> completion) throws IOException {
+        int size = MessageEncoder.delimitedSize(topic, msg);
+        reserve(size);
+        long start = System.nanoTime();
+        MessageEncoder.writeDelimited(topic, msg, output);
+        metrics.onEncoded(System.nanoTime() - start);
+        pendingBytes += size;
+        added(completion);
+    }
+
+    private void added(CompletableFuture<Void> completion) {
+        pendingMessages++;
+        if (completion != null) {
+            if (completions == null) {
+                completions = new ArrayList<>();
+            }
+            completions.add(completion);
+        }
+
+        if (windowNanos <= 0 || pendingBytes >= maxBatchBytes) {
+            flush();
+        } else if (flushTimeout == null) {
+            flushTimeout = timer.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Appends a record that is already encoded as a delimited {@link General.Message}.
+     */
+    synchronized void addRecord(ByteBuffer record, CompletableFuture<Void> completion) throws IOException {
+        int size = record.remaining();
+        reserve(size);
+        output.flush();
+        buffer.put(record);
+        pendingBytes += size;
+        added(completion);
+    }
+
+    /**
+     * Makes room for the size, moving the batch to a larger buffer while it stays within the batch limit.
+     */
+    private void reserve(int size) throws IOException {
+        if (buffer != null && buffer.capacity() - pendingBytes < size) {
+            if (pendingBytes + size > maxBatchBytes) {
+                flush();
+            } else {
+                grow(Math.max(pendingBytes + size, Math.min(buffer.capacity() * 2, maxBatchBytes)));
+            }
+        }
+        if (buffer == null) {
+            buffer = bufferPool.acquire(size);
+            frameOutput.target = buffer;
+        }
+    }
+
+    private void grow(int capacity) throws IOException {
+        output.flush();
+        ByteBuffer larger = bufferPool.acquire(capacity);
+        larger.put(buffer.flip());
+        bufferPool.release(buffer);
+        buffer = larger;
+        frameOutput.target = larger;
+    }
+
+    synchronized void flush() {
+        if (flushTimeout != null) {
+            flushTimeout.cancel();
+            flushTimeout = null;
+        }
+
+        if (pendingMessages == 0) {
+            return;
+        }
+
+        try {
+            output.flush();
+        } catch (IOException e) {
+            // Never happens, the space was checked before writing
+            throw new IllegalStateException(e);
+        }
+
+        var frame = buffer.flip();
+        var frameCompletions = completions;
+        int messages = pendingMessages;
+        frameCount.increment();
+        messageCount.add(messages);
+        buffer = null;
+        frameOutput.target = null;
+        completions = null;
+        pendingBytes = 0;
+        pendingMessages = 0;
+
+        try {
+            frameSink.send(frame, messages, frameCompletions);
+        } catch (RuntimeException e) {
+            log.error("Send frame failed: {}", e.getMessage(), e);
+            // 发送未开始，缓冲区仍归批处理器所有
+            bufferPool.release(frame);
+            complete(frameCompletions, e);
+        }
+    }
+
+    static void complete(List<CompletableFuture<Void>> completions, Throwable error) {
+        if (completions == null) {
+            return;
+        }
+
+        for (CompletableFuture<Void> completion : completions) {
+            if (error == null) {
+                completion.complete(null);
+            } else {
+                completion.completeExceptionally(error);
+            }
+        }
+    }
+
+    long getFrameCount() {
+        return frameCount.sum();
+    }
+
+    long getMessageCount() {
+        return messageCount.sum();
+    }
+
+    double getAverageBatchSize() {
+        long frames = frameCount.sum();
+        return frames == 0 ? 0 : (double) messageCount.sum() / frames;
+    }
+
+    /**
+     * Drains the output's internal buffer into the current frame.
+     */
+    private static class FrameOutput extends OutputStream {
+        ByteBuffer target;
+
+        @Override
+        public void write(int b) {
+            target.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            target.put(bytes, offset, length);
+        }
+    }
+
+    interface FrameSink {
+        /**
+         * Sends the frame holding {@code messages} records, the completions (null if there are none) must be completed
+         * once the send finished.
+         */
+        void send(ByteBuffer frame, int messages, List<CompletableFuture<Void>> completions);
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import io.deepstream.protobuf.General;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static io.deepstream.protobuf.General.Message.MESSAGE_FIELD_NUMBER;
+import static io.deepstream.protobuf.General.Message.TOPIC_FIELD_NUMBER;
+
+/**
+ * Reads the {@link General.Message} envelope directly from the frame, the inner message is handed out as a view on
+ * the same bytes.
+ */
+public final class MessageDecoder {
+    private static final int TOPIC_TAG = TOPIC_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_VARINT;
+    private static final int MESSAGE_TAG = MESSAGE_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+    private MessageDecoder() {
+    }
+
+    /**
+     * Decodes the delimited record starting at the buffer's position and moves the position past it.
+     */
+    public static InboundMessage decode(ByteBuffer frame) throws IOException {
+        int start = frame.position();
+        CodedInputStream input = CodedInputStream.newInstance(frame);
+        int length = input.readRawVarint32();
+        if (length > frame.limit() - start - input.getTotalBytesRead()) {
+            throw new InvalidProtocolBufferException("Truncated message: " + length + " bytes expected");
+        }
+        int oldLimit = input.pushLimit(length);
+
+        General.TOPIC topic = General.TOPIC.UNKNOWN;
+        int payloadOffset = 0;
+        int payloadLength = 0;
+        while (true) {
+            int tag = input.readTag();
+            if (tag == 0) {
+                break;
+            }
+
+            if (tag == TOPIC_TAG) {
+                topic = General.TOPIC.forNumber(input.readEnum());
+                if (topic == null) {
+                    topic = General.TOPIC.UNRECOGNIZED;
+                }
+            } else if (tag == MESSAGE_TAG) {
+                payloadLength = input.readRawVarint32();
+                payloadOffset = start + input.getTotalBytesRead();
+                input.skipRawBytes(payloadLength);
+            } else if (!input.skipField(tag)) {
+                break;
+            }
+        }
+        input.popLimit(oldLimit);
+        frame.position(start + input.getTotalBytesRead());
+
+        var payload = frame.duplicate();
+        payload.limit(payloadOffset + payloadLength).position(payloadOffset);
+        return new InboundMessage(topic, payload);
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.WireFormat;
+import io.deepstream.protobuf.General;
+
+import java.io.IOException;
+
+import static io.deepstream.protobuf.General.Message.MESSAGE_FIELD_NUMBER;
+import static io.deepstream.protobuf.General.Message.TOPIC_FIELD_NUMBER;
+
+/**
+ * Writes the {@link General.Message} envelope around an inner message without building the envelope or copying the
+ * inner message into a {@link com.google.protobuf.ByteString}. The output is byte-for-byte what
+ * {@code General.Message#writeDelimitedTo} produces.
+ */
+public final class MessageEncoder {
+    private MessageEncoder() {
+    }
+
+    public static int envelopeSize(General.TOPIC topic, int innerSize) {
+        int size = 0;
+        if (topic.getNumber() != 0) {
+            size += CodedOutputStream.computeEnumSize(TOPIC_FIELD_NUMBER, topic.getNumber());
+        }
+        if (innerSize > 0) {
+            size += CodedOutputStream.computeTagSize(MESSAGE_FIELD_NUMBER)
+                    + CodedOutputStream.computeUInt32SizeNoTag(innerSize)
+                    + innerSize;
+        }
+
+        return size;
+    }
+
+    public static int delimitedSize(General.TOPIC topic, MessageLite msg) {
+        int size = envelopeSize(topic, msg.getSerializedSize());
+        return CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    }
+
+    public static void writeDelimited(General.TOPIC topic, MessageLite msg, CodedOutputStream output) throws IOException {
+        int innerSize = msg.getSerializedSize();
+        output.writeUInt32NoTag(envelopeSize(topic, innerSize));
+        if (topic.getNumber() != 0) {
+            output.writeEnum(TOPIC_FIELD_NUMBER, topic.getNumber());
+        }
+        if (innerSize > 0) {
+            output.writeTag(MESSAGE_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(innerSize);
+            msg.writeTo(output);
+        }
+    }
+}
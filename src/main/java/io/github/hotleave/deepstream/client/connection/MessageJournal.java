@@ -0,0 +1,348 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import io.deepstream.protobuf.General;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append only journal of outbound messages kept in memory mapped segment files, records use the delimited
+ * {@link General.Message} encoding of the wire so they are replayed as is. Every record is followed by the CRC32C of
+ * its bytes, recovery stops at the first record whose checksum does not match, e.g. one torn by a crash.
+ * <p>
+ * The cursor file holds the position up to which records were written to the socket, everything after it is replayed
+ * when the connection becomes open, also after a restart. It only moves over records that were all written, one whose
+ * send failed holds it back until the next replay. Delivery is at least once: records sent but not yet checkpointed
+ * are sent again.
+ * <p>
+ * Appends only write to the mapped memory, the operating system persists the pages in the background. Call
+ * {@link #sync()} to force them to disk.
+ */
+@Slf4j
+public class MessageJournal implements Closeable {
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int CHECKSUM_SIZE = Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    // 段起始位置 -> 映射
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    // 离线时写入的记录结束位置 -> 等待发送的future
+    private final TreeMap<Long, CompletableFuture<Void>> waiting = new TreeMap<>();
+    private final MappedByteBuffer cursor;
+    // 已交给socket的记录按顺序排列，游标只越过连续写完的部分
+    private final ArrayDeque<InFlight> inFlight = new ArrayDeque<>();
+
+    private MappedByteBuffer writeSegment;
+    private long writeBase;
+    private CodedOutputStream output;
+    private volatile long committed;
+    private boolean live;
+
+    public MessageJournal(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(CURSOR_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            cursor = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        }
+        committed = cursor.getLong(0);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(base, map(file));
+                }
+            }
+        }
+
+        if (segments.isEmpty()) {
+            openSegment(committed - committed % segmentSize);
+        } else {
+            Map.Entry<Long, MappedByteBuffer> last = segments.lastEntry();
+            writeBase = last.getKey();
+            writeSegment = last.getValue();
+            writeSegment.position(endOfRecords(writeSegment, 0));
+            output = CodedOutputStream.newInstance(writeSegment);
+        }
+
+        long written = writeBase + writeSegment.position();
+        if (committed > written) {
+            // 游标超出已写入的记录，多半是记录在崩溃时没有写完
+            log.warn("Journal {} cursor {} is past the written records, reset to {}", directory, committed, written);
+            committed = written;
+            cursor.putLong(0, written);
+        }
+        log.info("Journal {} recovered, {} bytes pending", directory, getPendingBytes());
+    }
+
+    /**
+     * Appends the record, it is handed to the sink right away while the journal is live. Otherwise the future
+     * completes when the record is replayed.
+     */
+    public synchronized CompletableFuture<Void> append(General.TOPIC topic, MessageLite msg, RecordSink sink)
+            throws IOException {
+        int size = MessageEncoder.delimitedSize(topic, msg);
+        if (size + CHECKSUM_SIZE >= segmentSize) {
+            throw new IllegalArgumentException("Message of " + size + " bytes does not fit into a journal segment");
+        }
+        if (writeSegment.remaining() <= size + CHECKSUM_SIZE) {
+            rollover();
+        }
+
+        int start = writeSegment.position();
+        MessageEncoder.writeDelimited(topic, msg, output);
+        output.flush();
+        int recordEnd = writeSegment.position();
+        output.writeFixed32NoTag(checksum(writeSegment, start, recordEnd));
+        output.flush();
+        long end = writeBase + writeSegment.position();
+
+        var sent = new CompletableFuture<Void>();
+        if (live) {
+            send(slice(writeSegment, start, recordEnd), end, sent, sink);
+        } else {
+            waiting.put(end, sent);
+        }
+        return sent;
+    }
+
+    /**
+     * Sends every record after the cursor and goes live, later appends are sent right away. Stops without going live
+     * if the sink fails.
+     */
+    synchronized void replay(RecordSink sink) throws IOException {
+        synchronized (cursor) {
+            // 游标之后的记录全部重发，之前的发送结果不再影响游标
+            inFlight.clear();
+        }
+
+        long position = committed;
+        var entry = segments.floorEntry(position);
+        if (entry == null || position - entry.getKey() >= segmentSize) {
+            // 游标所在的段已删除
+            entry = segments.ceilingEntry(position);
+            if (entry != null) {
+                position = entry.getKey();
+            }
+        }
+        while (entry != null) {
+            MappedByteBuffer segment = entry.getValue();
+            int offset = (int) (position - entry.getKey());
+            int length;
+            while ((length = recordLength(segment, offset)) > 0) {
+                int end = offset + length + CHECKSUM_SIZE;
+                long recordEnd = entry.getKey() + end;
+                var sent = waiting.get(recordEnd);
+                if (sent == null) {
+                    sent = new CompletableFuture<>();
+                }
+                send(slice(segment, offset, offset + length), recordEnd, sent, sink);
+                // 发送失败时留在等待表中，下次重放时完成
+                waiting.remove(recordEnd);
+                offset = end;
+            }
+
+            entry = segments.higherEntry(entry.getKey());
+            if (entry != null) {
+                position = entry.getKey();
+            }
+        }
+
+        live = true;
+    }
+
+    /**
+     * Stops sending appended records until the next {@link #replay(RecordSink)}.
+     */
+    synchronized void pause() {
+        live = false;
+    }
+
+    /**
+     * Forces the written records and the cursor to disk.
+     */
+    public synchronized void sync() {
+        writeSegment.force();
+        cursor.force();
+    }
+
+    /**
+     * Size of the records after the cursor.
+     */
+    public synchronized long getPendingBytes() {
+        long pending = 0;
+        long position = committed;
+        for (var entry : segments.tailMap(position - position % segmentSize, true).entrySet()) {
+            int start = (int) Math.max(0, position - entry.getKey());
+            pending += endOfRecords(entry.getValue(), start) - start;
+        }
+        return pending;
+    }
+
+    /**
+     * Whether records after the cursor wait to be sent or for their send to complete.
+     */
+    synchronized boolean hasPending() {
+        return committed < writeBase + writeSegment.position();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        sync();
+        var error = new IllegalStateException("Journal closed");
+        waiting.values().forEach(future -> future.completeExceptionally(error));
+        waiting.clear();
+        live = false;
+    }
+
+    private void send(ByteBuffer record, long end, CompletableFuture<Void> sent, RecordSink sink) throws IOException {
+        var tracked = new InFlight(end);
+        synchronized (cursor) {
+            inFlight.add(tracked);
+        }
+        sent.whenComplete((ignored, error) -> {
+            if (error == null) {
+                commit(tracked);
+            }
+        });
+        sink.send(record, sent);
+    }
+
+    private void commit(InFlight record) {
+        synchronized (cursor) {
+            record.written = true;
+            long position = committed;
+            while (!inFlight.isEmpty() && inFlight.peek().written) {
+                position = Math.max(position, inFlight.poll().end);
+            }
+            if (position > committed) {
+                committed = position;
+                cursor.putLong(0, position);
+            }
+        }
+    }
+
+    private void rollover() throws IOException {
+        openSegment(writeBase + segmentSize);
+        trim();
+    }
+
+    private void openSegment(long base) throws IOException {
+        writeBase = base;
+        writeSegment = map(segmentPath(base));
+        segments.put(base, writeSegment);
+        output = CodedOutputStream.newInstance(writeSegment);
+    }
+
+    /**
+     * Deletes the segments whose records were all sent.
+     */
+    private void trim() throws IOException {
+        long position = committed;
+        var iterator = segments.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            long base = entry.getKey();
+            boolean sent = position >= base + segmentSize
+                    || position >= base && recordLength(entry.getValue(), (int) (position - base)) == 0;
+            if (base == writeBase || !sent) {
+                break;
+            }
+
+            iterator.remove();
+            Files.deleteIfExists(segmentPath(base));
+        }
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path segmentPath(long base) {
+        return directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private static ByteBuffer slice(ByteBuffer segment, int start, int end) {
+        return segment.duplicate().limit(end).position(start);
+    }
+
+    private static int endOfRecords(ByteBuffer segment, int offset) {
+        int length;
+        while ((length = recordLength(segment, offset)) > 0) {
+            offset += length + CHECKSUM_SIZE;
+        }
+        return offset;
+    }
+
+    /**
+     * Size of the record at the offset including its length prefix, 0 where no complete record was written. Mapped
+     * files are zero filled and a record is never empty, so a zero length marks the end. A record whose checksum does
+     * not match was not completely written and marks the end as well.
+     */
+    private static int recordLength(ByteBuffer segment, int offset) {
+        int value = 0;
+        int position = offset;
+        for (int shift = 0; shift < 32 && position < segment.limit(); shift += 7) {
+            byte b = segment.get(position++);
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                int end = position + value;
+                if (value <= 0 || end < 0 || end + CHECKSUM_SIZE > segment.limit()) {
+                    return 0;
+                }
+                int stored = segment.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(end);
+                return stored == checksum(segment, offset, end) ? end - offset : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static int checksum(ByteBuffer segment, int start, int end) {
+        var crc = new CRC32C();
+        crc.update(slice(segment, start, end));
+        return (int) crc.getValue();
+    }
+
+    private static final class InFlight {
+        final long end;
+        boolean written;
+
+        InFlight(long end) {
+            this.end = end;
+        }
+    }
+
+    @FunctionalInterface
+    public interface RecordSink {
+        void send(ByteBuffer record, CompletableFuture<Void> completion) throws IOException;
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import java.io.IOException;
+
+public class MessageTooLargeException extends IOException {
+    public MessageTooLargeException(int size, int maxSize) {
+        super("Message size " + size + " exceeds the limit of " + maxSize + " bytes");
+    }
+}
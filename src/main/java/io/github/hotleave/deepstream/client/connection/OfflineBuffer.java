@@ -0,0 +1,224 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import io.deepstream.protobuf.General;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds encoded outbound messages while the connection is not open. Draining replays them in order and only opens
+ * the buffer once it is empty, messages written meanwhile queue up behind the replayed ones.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class OfflineBuffer {
+    public enum OverflowPolicy {
+        /**
+         * Evict the oldest messages until the new one fits.
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the new message.
+         */
+        DROP_NEWEST,
+        /**
+         * Throw {@link BufferFullException} to the sender.
+         */
+        REJECT
+    }
+
+    final int maxMessages;
+    final long maxBytes;
+    final OverflowPolicy overflowPolicy;
+    final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    final LongAdder bufferedCount = new LongAdder();
+    final LongAdder droppedCount = new LongAdder();
+    final LongAdder replayedCount = new LongAdder();
+
+    long bytes;
+    boolean open;
+    // 连接断开期间接管部分消息，缓冲区再次打开时清除
+    Forwarder forwarder;
+
+    OfflineBuffer(int maxMessages, long maxBytes, OverflowPolicy overflowPolicy) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Buffers the message unless the buffer is open.
+     *
+     * @return false if the buffer is open and the message must be sent right away
+     */
+    synchronized boolean offer(General.TOPIC topic, MessageLite msg, CompletableFuture<Void> completion) throws IOException {
+        if (open) {
+            return false;
+        }
+
+        byte[] record = new byte[MessageEncoder.delimitedSize(topic, msg)];
+        MessageEncoder.writeDelimited(topic, msg, CodedOutputStream.newInstance(record));
+        offer(record, completion);
+        return true;
+    }
+
+    synchronized void offer(byte[] record, CompletableFuture<Void> completion) {
+        if (forwarder != null && forwarder.forward(parse(record), completion)) {
+            return;
+        }
+
+        if (record.length > maxBytes) {
+            drop(new Entry(record, completion));
+            return;
+        }
+
+        while (entries.size() >= maxMessages || bytes + record.length > maxBytes) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    Entry oldest = entries.poll();
+                    bytes -= oldest.record.length;
+                    drop(oldest);
+                    break;
+                case DROP_NEWEST:
+                    drop(new Entry(record, completion));
+                    return;
+                default:
+                    droppedCount.increment();
+                    throw new BufferFullException(entries.size(), bytes);
+            }
+        }
+
+        entries.offer(new Entry(record, completion));
+        bytes += record.length;
+        bufferedCount.increment();
+    }
+
+    /**
+     * Replays every buffered message in order and opens the buffer once it is empty. A message the sink fails on
+     * stays at the head of the buffer.
+     */
+    void drain(RecordSink sink) throws IOException {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                entry = entries.poll();
+                if (entry == null) {
+                    open = true;
+                    forwarder = null;
+                    return;
+                }
+                bytes -= entry.record.length;
+            }
+
+            try {
+                sink.send(entry.record, entry.completion);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    // 没有发出的消息放回队首，下次打开时再重放
+                    entries.addFirst(entry);
+                    bytes += entry.record.length;
+                }
+                throw e;
+            }
+            replayedCount.increment();
+        }
+    }
+
+    /**
+     * Hands every buffered message the forwarder accepts to it in order, messages offered later go to it as well
+     * until the buffer opens again.
+     */
+    synchronized void forward(Forwarder forwarder) {
+        var iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (forwarder.forward(parse(entry.record), entry.completion)) {
+                iterator.remove();
+                bytes -= entry.record.length;
+            }
+        }
+
+        this.forwarder = open ? null : forwarder;
+    }
+
+    synchronized void close() {
+        open = false;
+    }
+
+    synchronized void clear(Throwable error) {
+        Entry entry;
+        while ((entry = entries.poll()) != null) {
+            if (entry.completion != null) {
+                entry.completion.completeExceptionally(error);
+            }
+        }
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getBufferedCount() {
+        return bufferedCount.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    public long getReplayedCount() {
+        return replayedCount.sum();
+    }
+
+    private void drop(Entry entry) {
+        droppedCount.increment();
+        if (entry.completion != null) {
+            entry.completion.completeExceptionally(new BufferFullException(entries.size(), bytes));
+        }
+    }
+
+    private static General.Message parse(byte[] record) {
+        try {
+            return General.Message.parseDelimitedFrom(new ByteArrayInputStream(record));
+        } catch (IOException e) {
+            // 记录由本端编码，不会出现
+            throw new IllegalStateException(e);
+        }
+    }
+
+    interface RecordSink {
+        void send(byte[] record, CompletableFuture<Void> completion) throws IOException;
+    }
+
+    public interface Forwarder {
+        /**
+         * @param completion completed once the message was written, may be null
+         * @return true if the message was taken over and must leave the buffer
+         */
+        boolean forward(General.Message message, CompletableFuture<Void> completion);
+    }
+
+    public static class BufferFullException extends IllegalStateException {
+        public BufferFullException(int messages, long bytes) {
+            super("Offline buffer is full: " + messages + " messages, " + bytes + " bytes");
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        final byte[] record;
+        final CompletableFuture<Void> completion;
+    }
+}
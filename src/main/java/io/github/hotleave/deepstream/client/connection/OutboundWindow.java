@@ -0,0 +1,101 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.function.Consumer;
+
+/**
+ * Bounds the bytes and messages handed to the websocket container but not yet written. Becomes unwritable at the
+ * high watermarks and writable again once both counts dropped to the low watermarks.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class OutboundWindow {
+    final long highWatermarkBytes;
+    final long lowWatermarkBytes;
+    final int highWatermarkMessages;
+    final int lowWatermarkMessages;
+    // Called with the lock held, so the changes are seen in order
+    final Consumer<Boolean> writabilityListener;
+
+    long bytes;
+    int messages;
+    boolean writable = true;
+
+    OutboundWindow(long highWatermarkBytes, long lowWatermarkBytes, int highWatermarkMessages,
+                   int lowWatermarkMessages, Consumer<Boolean> writabilityListener) {
+        if (lowWatermarkBytes > highWatermarkBytes || lowWatermarkMessages > highWatermarkMessages) {
+            throw new IllegalArgumentException("Low watermark must not exceed the high watermark");
+        }
+
+        this.highWatermarkBytes = highWatermarkBytes;
+        this.lowWatermarkBytes = lowWatermarkBytes;
+        this.highWatermarkMessages = highWatermarkMessages;
+        this.lowWatermarkMessages = lowWatermarkMessages;
+        this.writabilityListener = writabilityListener;
+    }
+
+    synchronized void acquire(int frameBytes, int frameMessages) {
+        bytes += frameBytes;
+        messages += frameMessages;
+        if (writable && (bytes >= highWatermarkBytes || messages >= highWatermarkMessages)) {
+            setWritable(false);
+        }
+    }
+
+    synchronized void release(int frameBytes, int frameMessages) {
+        // 重置后仍可能收到旧会话的回调
+        bytes = Math.max(0, bytes - frameBytes);
+        messages = Math.max(0, messages - frameMessages);
+        if (!writable && bytes <= lowWatermarkBytes && messages <= lowWatermarkMessages) {
+            setWritable(true);
+        }
+    }
+
+    /**
+     * Forgets the frames of a lost session, their callbacks may never fire.
+     */
+    synchronized void reset() {
+        bytes = 0;
+        messages = 0;
+        if (!writable) {
+            setWritable(true);
+        }
+    }
+
+    synchronized boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * @return false if the window is still full after the timeout
+     */
+    synchronized boolean awaitWritable(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        long remaining = timeoutNanos;
+        while (!writable) {
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            remaining = deadline - System.nanoTime();
+        }
+        return true;
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized int getMessages() {
+        return messages;
+    }
+
+    private void setWritable(boolean writable) {
+        this.writable = writable;
+        if (writable) {
+            notifyAll();
+        }
+        writabilityListener.accept(writable);
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.hotleave.deepstream.client.event;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.deepstream.protobuf.Event;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An emit through an {@link EventChannel}. Serializes to the same bytes as the equivalent {@link Event.EventMessage}
+ * without a correlation ID, the channel's pre-encoded fields are copied and the data is written straight into the
+ * output, a string without being copied into a byte array first.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class EncodedEvent implements MessageLite {
+    private static final int DATA_FIELD_NUMBER = Event.EventMessage.DATA_FIELD_NUMBER;
+
+    byte[] head;
+    byte[] tail;
+    // String或ByteString
+    Object data;
+    @NonFinal
+    int size = -1;
+
+    EncodedEvent(byte[] head, byte[] tail, Object data) {
+        this.head = head;
+        this.tail = tail;
+        this.data = data;
+    }
+
+    @Override
+    public void writeTo(CodedOutputStream output) throws IOException {
+        output.writeRawBytes(head);
+        if (data instanceof String) {
+            if (!((String) data).isEmpty()) {
+                output.writeString(DATA_FIELD_NUMBER, (String) data);
+            }
+        } else if (!((ByteString) data).isEmpty()) {
+            output.writeBytes(DATA_FIELD_NUMBER, (ByteString) data);
+        }
+        output.writeRawBytes(tail);
+    }
+
+    /**
+     * Measured once, the encoder asks for it several times per message.
+     */
+    @Override
+    public int getSerializedSize() {
+        int result = size;
+        if (result < 0) {
+            result = head.length + tail.length;
+            if (data instanceof String) {
+                if (!((String) data).isEmpty()) {
+                    result += CodedOutputStream.computeStringSize(DATA_FIELD_NUMBER, (String) data);
+                }
+            } else if (!((ByteString) data).isEmpty()) {
+                result += CodedOutputStream.computeBytesSize(DATA_FIELD_NUMBER, (ByteString) data);
+            }
+            size = result;
+        }
+        return result;
+    }
+
+    @Override
+    public Parser<Event.EventMessage> getParserForType() {
+        return Event.EventMessage.parser();
+    }
+
+    @Override
+    public ByteString toByteString() {
+        return ByteString.copyFrom(toByteArray());
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        byte[] result = new byte[getSerializedSize()];
+        var output = CodedOutputStream.newInstance(result);
+        try {
+            writeTo(output);
+        } catch (IOException e) {
+            // Never happens, the array has exactly the serialized size
+            throw new IllegalStateException(e);
+        }
+        output.checkNoSpaceLeft();
+        return result;
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        var coded = CodedOutputStream.newInstance(output);
+        writeTo(coded);
+        coded.flush();
+    }
+
+    @Override
+    public void writeDelimitedTo(OutputStream output) throws IOException {
+        var coded = CodedOutputStream.newInstance(output);
+        coded.writeUInt32NoTag(getSerializedSize());
+        writeTo(coded);
+        coded.flush();
+    }
+
+    @Override
+    public Event.EventMessage.Builder newBuilderForType() {
+        return Event.EventMessage.newBuilder();
+    }
+
+    @Override
+    public Event.EventMessage.Builder toBuilder() {
+        try {
+            return Event.EventMessage.parseFrom(toByteArray()).toBuilder();
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Event.EventMessage getDefaultInstanceForType() {
+        return Event.EventMessage.getDefaultInstance();
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return true;
+    }
+}
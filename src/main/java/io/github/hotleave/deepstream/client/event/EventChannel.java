@@ -0,0 +1,90 @@
+package io.github.hotleave.deepstream.client.event;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import io.deepstream.protobuf.Event;
+import io.github.hotleave.deepstream.client.codec.Payload;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Emits to one event name, meant to be obtained once and kept for names emitted over and over. The action and name
+ * fields are encoded when the channel is created, every emit only adds the data and is serialized directly into the
+ * outbound frame without building an {@link Event.EventMessage}. Emits carry no correlation ID, events are never
+ * acknowledged.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class EventChannel {
+    private static final byte[] EMIT_ACTION = encode(output ->
+            output.writeEnum(Event.EventMessage.ACTION_FIELD_NUMBER, Event.EVENT_ACTION.EVENT_EMIT_VALUE));
+
+    String name;
+    byte[] encodedName;
+    Supplier<EventHandler> handler;
+
+    EventChannel(String name, Supplier<EventHandler> handler) {
+        this.name = name;
+        this.encodedName = name.isEmpty() ? new byte[0]
+                : encode(output -> output.writeString(Event.EventMessage.NAME_FIELD_NUMBER, name));
+        this.handler = handler;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @see EventHandler#emit(String, String)
+     */
+    public CompletableFuture<Void> emit(String data) {
+        return handler.get().emit(name, message(data));
+    }
+
+    /**
+     * @see EventHandler#emit(String, Object)
+     */
+    public <T> CompletableFuture<Void> emit(T value) {
+        var target = handler.get();
+        return target.emit(name, message(target.encode(value)));
+    }
+
+    /**
+     * @see EventHandler#tryEmit(String, String)
+     */
+    public boolean tryEmit(String data) {
+        return handler.get().tryEmit(message(data));
+    }
+
+    /**
+     * @see EventHandler#emitDurable(String, String)
+     */
+    public CompletableFuture<Void> emitDurable(String data) {
+        return handler.get().emitDurable(message(data));
+    }
+
+    MessageLite message(Object data) {
+        return new EncodedEvent(EMIT_ACTION, encodedName, data);
+    }
+
+    private static byte[] encode(FieldWriter writer) {
+        try {
+            var bytes = ByteString.newOutput();
+            var output = CodedOutputStream.newInstance(bytes);
+            writer.write(output);
+            output.flush();
+            return bytes.toByteString().toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FieldWriter {
+        void write(CodedOutputStream output) throws IOException;
+    }
+}
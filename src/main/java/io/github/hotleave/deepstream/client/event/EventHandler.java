@@ -1,89 +1,333 @@
 package io.github.hotleave.deepstream.client.event;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.WireFormat;
 import io.deepstream.protobuf.Event;
 import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.DeepstreamException;
+import io.github.hotleave.deepstream.client.codec.JsonCodec;
+import io.github.hotleave.deepstream.client.codec.Payload;
+import io.github.hotleave.deepstream.client.codec.PayloadCodec;
 import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.InboundMessage;
+import io.github.hotleave.deepstream.client.utils.PendingRequests;
 import lombok.AccessLevel;
-import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
-@RequiredArgsConstructor
+/**
+ * Events of one connection. Event data travels as bytes, inbound events are wrapped in one lazily decoded
+ * {@link Payload} shared by all of the event's callbacks, typed values go through the connection's {@link PayloadCodec}.
+ */
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @Slf4j
-public class EventHandler {
+public class EventHandler implements EventOperations {
     Connection connection;
-    Map<String, Consumer<String>> eventHandlerMap = new ConcurrentHashMap<>();
+    PendingRequests pendingRequests;
+    PayloadCodec codec;
+    // Subscriber lists are never modified in place, they are replaced on subscribe and unsubscribe
+    Map<String, List<Subscriber>> eventHandlerMap = new ConcurrentHashMap<>();
+    // Keys of eventHandlerMap, updated within the same compute calls
+    NameTable nameTable = new NameTable();
+    PatternIndex<EventListener> listenerIndex = new PatternIndex<>();
+    Map<String, CompletableFuture<Void>> subscriptionAcks = new ConcurrentHashMap<>();
+    // Listens requested while the connection was not open, completed once they were sent on open
+    Map<String, CompletableFuture<Void>> listenAcks = new ConcurrentHashMap<>();
 
-    public void subscribe(String name, Consumer<String> callback) {
-        Event.EventMessage msg = Event.EventMessage.newBuilder()
-                .setAction(Event.EVENT_ACTION.EVENT_SUBSCRIBE)
-                .setCorrelationId(UUID.randomUUID().toString())
-                .addNames(name)
-                .build();
-        connection.sendMessage(General.TOPIC.EVENT, msg);
+    public EventHandler(Connection connection) {
+        this.connection = connection;
+        this.pendingRequests = connection.getPendingRequests();
+        var payloadCodec = connection.getOptions().getPayloadCodec();
+        this.codec = payloadCodec == null ? JsonCodec.INSTANCE : payloadCodec;
+        connection.addOpenHook(this::restore);
+    }
 
-        eventHandlerMap.put(name, callback);
+    /**
+     * Adds a callback for the event, the future completes once the server acknowledged the subscription.
+     */
+    @Override
+    public CompletableFuture<Void> subscribe(String name, Consumer<String> callback) {
+        return attach(name, Subscriber.of(callback));
     }
 
-    public void unsubscribe(String name) {
-        Event.EventMessage msg = Event.EventMessage.newBuilder()
-                .setAction(Event.EVENT_ACTION.EVENT_UNSUBSCRIBE)
-                .setCorrelationId(UUID.randomUUID().toString())
-                .addNames(name)
-                .build();
-        connection.sendMessage(General.TOPIC.EVENT, msg);
+    /**
+     * Adds a callback receiving the event data decoded as the type, {@code Payload.class} receives the undecoded
+     * payload. Callbacks asking for the same type share one decoded value, which must not be modified.
+     */
+    @Override
+    public <T> CompletableFuture<Void> subscribe(String name, Class<T> type, Consumer<T> callback) {
+        return attach(name, Subscriber.of(type, callback));
+    }
+
+    CompletableFuture<Void> attach(String name, Subscriber subscriber) {
+        boolean[] first = new boolean[1];
+        eventHandlerMap.compute(name, (key, callbacks) -> {
+            first[0] = callbacks == null;
+            if (first[0]) {
+                nameTable.add(key);
+            }
+            return append(callbacks, subscriber);
+        });
+
+        if (first[0]) {
+            return sendSubscriptions(Event.EVENT_ACTION.EVENT_SUBSCRIBE, List.of(name));
+        }
 
-        eventHandlerMap.remove(name);
+        return subscriptionAcks.getOrDefault(name, CompletableFuture.completedFuture(null));
     }
 
-    public void emit(String name, String data) {
-        Event.EventMessage msg = Event.EventMessage.newBuilder()
-                .setAction(Event.EVENT_ACTION.EVENT_EMIT)
-                .setCorrelationId(UUID.randomUUID().toString())
-                .setName(name)
-                .setData(data)
-                .build();
+    @Override
+    public CompletableFuture<Void> unsubscribe(String name, Consumer<String> callback) {
+        return remove(name, callback);
+    }
+
+    @Override
+    public <T> CompletableFuture<Void> unsubscribe(String name, Class<T> type, Consumer<T> callback) {
+        return remove(name, callback);
+    }
+
+    private CompletableFuture<Void> remove(String name, Object callback) {
+        boolean[] last = new boolean[1];
+        eventHandlerMap.computeIfPresent(name, (key, callbacks) -> {
+            var remaining = new ArrayList<>(callbacks);
+            for (int i = 0; i < remaining.size(); i++) {
+                if (remaining.get(i).matches(callback)) {
+                    remaining.remove(i);
+                    break;
+                }
+            }
+            last[0] = remaining.isEmpty();
+            if (last[0]) {
+                nameTable.remove(key);
+            }
+            return last[0] ? null : List.copyOf(remaining);
+        });
+
+        if (last[0]) {
+            return sendSubscriptions(Event.EVENT_ACTION.EVENT_UNSUBSCRIBE, List.of(name));
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> unsubscribe(String name) {
+        if (removeAll(name)) {
+            return sendSubscriptions(Event.EVENT_ACTION.EVENT_UNSUBSCRIBE, List.of(name));
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Event names currently subscribed, these are subscribed again after every reconnect.
+     */
+    @Override
+    public Collection<String> getSubscriptions() {
+        return List.copyOf(eventHandlerMap.keySet());
+    }
+
+    /**
+     * Registers all callbacks and subscribes the new names in as few messages as possible, the future completes once
+     * the server acknowledged every message.
+     */
+    @Override
+    public CompletableFuture<Void> subscribeAll(Map<String, Consumer<String>> subscriptions) {
+        List<String> names = new ArrayList<>();
+        subscriptions.forEach((name, callback) -> eventHandlerMap.compute(name, (key, callbacks) -> {
+            if (callbacks == null) {
+                names.add(name);
+                nameTable.add(key);
+            }
+            return append(callbacks, Subscriber.of(callback));
+        }));
+
+        return sendSubscriptions(Event.EVENT_ACTION.EVENT_SUBSCRIBE, names);
+    }
+
+    @Override
+    public CompletableFuture<Void> unsubscribeAll(Collection<String> names) {
+        List<String> removed = new ArrayList<>();
+        for (String name : names) {
+            if (removeAll(name)) {
+                removed.add(name);
+            }
+        }
+
+        return sendSubscriptions(Event.EVENT_ACTION.EVENT_UNSUBSCRIBE, removed);
+    }
+
+    /**
+     * Events are not acknowledged by the server, the future completes once the message was written to the socket.
+     * Blocks while the connection is not writable, the future fails with a {@link TimeoutException} if it stays full
+     * for longer than the request timeout.
+     */
+    @Override
+    public CompletableFuture<Void> emit(String name, String data) {
+        return emit(name, emitMessage(name, data));
+    }
+
+    /**
+     * Like {@link #emit(String, String)} but encodes the value with the connection's codec. A {@link Payload} is sent
+     * as it is, so a received event can be forwarded without encoding it again. Strings still resolve to
+     * {@link #emit(String, String)} and are sent as raw JSON.
+     */
+    @Override
+    public <T> CompletableFuture<Void> emit(String name, T value) {
+        return emit(name, emitMessage(name, encode(value)));
+    }
+
+    /**
+     * Handle for emitting the name over and over without encoding it every time.
+     */
+    @Override
+    public EventChannel channel(String name) {
+        return new EventChannel(name, () -> this);
+    }
+
+    CompletableFuture<Void> emit(String name, MessageLite msg) {
+        try {
+            if (!connection.awaitWritable(connection.getOptions().getRequestTimeout())) {
+                return CompletableFuture.failedFuture(new TimeoutException("Outbound window full, dropped " + name));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return connection.sendMessageAsync(General.TOPIC.EVENT, msg);
+    }
+
+    /**
+     * Sends the event only if the connection is writable.
+     *
+     * @return false if the outbound window is full, the event was not sent
+     */
+    @Override
+    public boolean tryEmit(String name, String data) {
+        return tryEmit(emitMessage(name, data));
+    }
+
+    boolean tryEmit(MessageLite msg) {
+        if (!connection.isWritable()) {
+            return false;
+        }
+
         connection.sendMessage(General.TOPIC.EVENT, msg);
+        return true;
+    }
+
+    /**
+     * Like {@link #emit(String, String)} but the event goes through the connection's journal, so it is not lost
+     * while the server is unreachable or across a restart. Requires a journal directory in the connection options.
+     */
+    @Override
+    public CompletableFuture<Void> emitDurable(String name, String data) {
+        return emitDurable(emitMessage(name, data));
+    }
+
+    CompletableFuture<Void> emitDurable(MessageLite msg) {
+        return connection.sendMessageDurable(General.TOPIC.EVENT, msg);
+    }
+
+    public Collection<String> getPatterns() {
+        return listenerIndex.patterns();
+    }
+
+    @Override
+    public CompletableFuture<Void> listen(String pattern, EventListener listener) {
+        synchronized (listenerIndex) {
+            if (listenerIndex.get(pattern) != null) {
+                throw new IllegalStateException("Already listening to " + pattern);
+            }
+            listenerIndex.put(pattern, listener);
+        }
+
+        return sendListen(Event.EVENT_ACTION.EVENT_LISTEN, pattern);
+    }
+
+    @Override
+    public CompletableFuture<Void> unlisten(String pattern) {
+        if (listenerIndex.remove(pattern) != null) {
+            var deferred = listenAcks.remove(pattern);
+            if (deferred != null) {
+                deferred.complete(null);
+            }
+            return sendListen(Event.EVENT_ACTION.EVENT_UNLISTEN, pattern);
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Removes the name's callbacks so they can be subscribed on another connection.
+     */
+    List<Subscriber> detach(String name) {
+        List<Subscriber> callbacks = eventHandlerMap.getOrDefault(name, List.of());
+        unsubscribe(name);
+        return callbacks;
     }
 
-    public void handle(General.Message message) {
+    EventListener detachListener(String pattern) {
+        var entry = listenerIndex.get(pattern);
+        unlisten(pattern);
+        return entry == null ? null : entry.getValue();
+    }
+
+    public void handle(InboundMessage message) {
+        if (deliverEmit(message)) {
+            return;
+        }
+
         try {
-            Event.EventMessage eventMessage = Event.EventMessage.parseFrom(message.getMessage());
+            Event.EventMessage eventMessage = message.getMessage(Event.EventMessage.parser());
             if (eventMessage.getIsAck()) {
+                pendingRequests.complete(eventMessage.getCorrelationId(), null);
                 return;
             }
 
             String name = eventMessage.getName();
             switch (eventMessage.getAction()) {
                 case EVENT_EMIT:
+                    // 不转码为String，由订阅者按需解码
+                    Payload payload = new Payload(eventMessage.getDataBytes(), codec);
+                    connection.dispatch(name, () -> deliver(name, payload));
+                    break;
                 case EVENT_SUBSCRIPTION_FOR_PATTERN_FOUND:
-                    Consumer<String> handler = eventHandlerMap.get(name);
-                    if (handler == null) {
-                        log.warn("Event handler for {} not found!", name);
-                    } else {
-                        handler.accept(eventMessage.getData());
-                    }
+                case EVENT_SUBSCRIPTION_FOR_PATTERN_REMOVED:
+                    handleListen(eventMessage);
                     break;
                 case EVENT_MESSAGE_DENIED:
-                case EVENT_SUBSCRIPTION_FOR_PATTERN_REMOVED:
-                    log.error("Event message denied or removed: {}", eventMessage);
+                    log.error("Event message denied: {}", eventMessage);
+                    fail(eventMessage);
                     if (eventMessage.getOriginalAction() == Event.EVENT_ACTION.EVENT_SUBSCRIBE) {
-                        eventHandlerMap.remove(name);
+                        removeAll(name);
+                    } else if (eventMessage.getOriginalAction() == Event.EVENT_ACTION.EVENT_LISTEN) {
+                        listenerIndex.remove(name);
                     }
                     break;
                 case EVENT_MULTIPLE_SUBSCRIPTIONS:
                 case EVENT_NOT_SUBSCRIBED:
+                case EVENT_NOT_LISTENING:
                     log.warn("Event failed: {}", eventMessage);
+                    fail(eventMessage);
                     break;
                 case EVENT_INVALID_LISTEN_REGEX:
                     log.error("Invalid listen regex: {}", eventMessage);
+                    listenerIndex.remove(name);
+                    fail(eventMessage);
                     break;
                 default:
                     log.error("Unsupported event action: {}", eventMessage);
@@ -93,4 +337,306 @@ public class EventHandler {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Emits of subscribed events skip parsing the message: the fields are read from the payload, the name is looked
+     * up by its bytes and only the data is copied.
+     *
+     * @return false if the message is anything else, it is then parsed as usual
+     */
+    private boolean deliverEmit(InboundMessage message) {
+        ByteBuffer bytes = message.getPayload();
+        int end = bytes.limit();
+        long action = 0;
+        int dataStart = -1;
+        int dataEnd = -1;
+        int nameStart = -1;
+        int nameEnd = -1;
+        while (bytes.position() < end) {
+            long tag = readVarint(bytes);
+            if (tag <= 0) {
+                return false;
+            }
+            int field = (int) (tag >>> 3);
+            switch ((int) tag & 7) {
+                case WireFormat.WIRETYPE_VARINT:
+                    long value = readVarint(bytes);
+                    if (value < 0) {
+                        return false;
+                    }
+                    if (field == Event.EventMessage.ACTION_FIELD_NUMBER) {
+                        action = value;
+                    } else if (value != 0 && (field == Event.EventMessage.ISACK_FIELD_NUMBER
+                            || field == Event.EventMessage.ISERROR_FIELD_NUMBER)) {
+                        return false;
+                    }
+                    break;
+                case WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    long length = readVarint(bytes);
+                    if (length < 0 || length > end - bytes.position()) {
+                        return false;
+                    }
+                    int start = bytes.position();
+                    bytes.position(start + (int) length);
+                    if (field == Event.EventMessage.DATA_FIELD_NUMBER) {
+                        dataStart = start;
+                        dataEnd = bytes.position();
+                    } else if (field == Event.EventMessage.NAME_FIELD_NUMBER) {
+                        nameStart = start;
+                        nameEnd = bytes.position();
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        if (action != Event.EVENT_ACTION.EVENT_EMIT_VALUE || nameStart < 0) {
+            return false;
+        }
+
+        String name = nameTable.lookup(bytes.limit(nameEnd).position(nameStart));
+        if (name == null) {
+            return false;
+        }
+
+        ByteString data = dataStart < 0 ? ByteString.EMPTY
+                : ByteString.copyFrom(bytes.limit(dataEnd).position(dataStart));
+        Payload payload = new Payload(data, codec);
+        connection.dispatch(name, () -> deliver(name, payload));
+        return true;
+    }
+
+    /**
+     * @return -1 if the varint is malformed, truncated or does not fit into 31 bits
+     */
+    private static long readVarint(ByteBuffer bytes) {
+        long result = 0;
+        for (int shift = 0; shift < 32 && bytes.hasRemaining(); shift += 7) {
+            byte b = bytes.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result > Integer.MAX_VALUE ? -1 : result;
+            }
+        }
+        return -1;
+    }
+
+    private void fail(Event.EventMessage eventMessage) {
+        var error = new DeepstreamException(eventMessage.getAction().name(), eventMessage.getName());
+        if (!pendingRequests.fail(eventMessage.getCorrelationId(), error)) {
+            var future = subscriptionAcks.get(eventMessage.getName());
+            if (future != null) {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+
+    private void handleListen(Event.EventMessage eventMessage) {
+        String pattern = eventMessage.getName();
+        String name = eventMessage.getSubscription().isEmpty() ? pattern : eventMessage.getSubscription();
+        boolean found = eventMessage.getAction() == Event.EVENT_ACTION.EVENT_SUBSCRIPTION_FOR_PATTERN_FOUND;
+
+        // 消息带的就是监听时的模式，直接按模式查找，不能拿它去匹配正则
+        PatternIndex.Entry<EventListener> entry = listenerIndex.get(pattern);
+        if (entry == null) {
+            log.warn("Listener for {} not found!", pattern);
+            return;
+        }
+
+        EventListener listener = entry.getValue();
+        connection.dispatch(name, () -> {
+            if (!found) {
+                listener.onSubscriptionRemoved(pattern, name);
+                return;
+            }
+
+            boolean accepted = listener.onSubscriptionFound(pattern, name);
+            Event.EventMessage response = Event.EventMessage.newBuilder()
+                    .setAction(accepted ? Event.EVENT_ACTION.EVENT_LISTEN_ACCEPT : Event.EVENT_ACTION.EVENT_LISTEN_REJECT)
+                    .setName(pattern)
+                    .setSubscription(name)
+                    .build();
+            connection.sendMessage(General.TOPIC.EVENT, response);
+        });
+    }
+
+    private void deliver(String name, Payload payload) {
+        List<Subscriber> callbacks = eventHandlerMap.get(name);
+        if (callbacks == null) {
+            log.warn("Event handler for {} not found!", name);
+            return;
+        }
+
+        for (int i = 0; i < callbacks.size(); i++) {
+            try {
+                callbacks.get(i).accept(payload);
+            } catch (RuntimeException e) {
+                log.error("Event handler for {} failed: {}", name, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * The server forgets subscriptions with the session, they are all sent again in bulk whenever the connection
+     * becomes open. Runs before the offline buffer is replayed.
+     */
+    private void restore() {
+        List<String> names = new ArrayList<>(eventHandlerMap.keySet());
+        if (!names.isEmpty()) {
+            log.info("Resubscribe {} events", names.size());
+            sendSubscriptions(Event.EVENT_ACTION.EVENT_SUBSCRIBE, names, true);
+        }
+
+        for (String pattern : listenerIndex.patterns()) {
+            var future = sendListen(Event.EVENT_ACTION.EVENT_LISTEN, pattern, true);
+            var deferred = listenAcks.remove(pattern);
+            if (deferred != null) {
+                propagate(future, deferred);
+            }
+        }
+    }
+
+    private CompletableFuture<Void> sendSubscriptions(Event.EVENT_ACTION action, List<String> names) {
+        if (names.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (!connection.isConnected()) {
+            // 连接恢复后由restore统一订阅
+            if (action == Event.EVENT_ACTION.EVENT_UNSUBSCRIBE) {
+                names.forEach(name -> {
+                    var deferred = subscriptionAcks.remove(name);
+                    if (deferred != null) {
+                        deferred.complete(null);
+                    }
+                });
+                return CompletableFuture.completedFuture(null);
+            }
+
+            var deferred = new CompletableFuture<?>[names.size()];
+            for (int i = 0; i < deferred.length; i++) {
+                deferred[i] = subscriptionAcks.computeIfAbsent(names.get(i), name -> new CompletableFuture<>());
+            }
+            return deferred.length == 1 ? (CompletableFuture<Void>) deferred[0] : CompletableFuture.allOf(deferred);
+        }
+
+        return sendSubscriptions(action, names, false);
+    }
+
+    private CompletableFuture<Void> sendSubscriptions(Event.EVENT_ACTION action, List<String> names, boolean direct) {
+
+        int chunkSize = connection.getOptions().getMaxNamesPerMessage();
+        var chunks = new CompletableFuture<?>[(names.size() + chunkSize - 1) / chunkSize];
+        for (int i = 0; i < chunks.length; i++) {
+            List<String> chunk = names.subList(i * chunkSize, Math.min(names.size(), (i + 1) * chunkSize));
+            String correlationId = connection.nextCorrelationId();
+            CompletableFuture<Void> future = pendingRequests.register(correlationId);
+            if (action == Event.EVENT_ACTION.EVENT_SUBSCRIBE) {
+                for (String name : chunk) {
+                    var deferred = subscriptionAcks.put(name, future);
+                    if (deferred != null) {
+                        propagate(future, deferred);
+                    }
+                }
+                future.whenComplete((result, error) -> chunk.forEach(name -> subscriptionAcks.remove(name, future)));
+            }
+            chunks[i] = future;
+
+            Event.EventMessage msg = Event.EventMessage.newBuilder()
+                    .setAction(action)
+                    .setCorrelationId(correlationId)
+                    .addAllNames(chunk)
+                    .build();
+            send(msg, direct);
+        }
+
+        return chunks.length == 1 ? (CompletableFuture<Void>) chunks[0] : CompletableFuture.allOf(chunks);
+    }
+
+    private CompletableFuture<Void> sendListen(Event.EVENT_ACTION action, String pattern) {
+        if (!connection.isConnected()) {
+            if (action == Event.EVENT_ACTION.EVENT_UNLISTEN) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return listenAcks.computeIfAbsent(pattern, key -> new CompletableFuture<>());
+        }
+
+        return sendListen(action, pattern, false);
+    }
+
+    private CompletableFuture<Void> sendListen(Event.EVENT_ACTION action, String pattern, boolean direct) {
+        String correlationId = connection.nextCorrelationId();
+        CompletableFuture<Void> future = pendingRequests.register(correlationId);
+        Event.EventMessage msg = Event.EventMessage.newBuilder()
+                .setAction(action)
+                .setCorrelationId(correlationId)
+                .setName(pattern)
+                .build();
+        send(msg, direct);
+        return future;
+    }
+
+    private Event.EventMessage emitMessage(String name, String data) {
+        return Event.EventMessage.newBuilder()
+                .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+                .setCorrelationId(connection.nextCorrelationId())
+                .setName(name)
+                .setData(data)
+                .build();
+    }
+
+    private Event.EventMessage emitMessage(String name, ByteString data) {
+        return Event.EventMessage.newBuilder()
+                .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+                .setCorrelationId(connection.nextCorrelationId())
+                .setName(name)
+                .setDataBytes(data)
+                .build();
+    }
+
+    ByteString encode(Object value) {
+        return value instanceof Payload ? ((Payload) value).getBytes() : codec.encode(value);
+    }
+
+    private void send(Event.EventMessage msg, boolean direct) {
+        if (direct) {
+            connection.sendMessageDirect(General.TOPIC.EVENT, msg);
+        } else {
+            connection.sendMessage(General.TOPIC.EVENT, msg);
+        }
+    }
+
+    private boolean removeAll(String name) {
+        boolean[] removed = new boolean[1];
+        eventHandlerMap.computeIfPresent(name, (key, callbacks) -> {
+            removed[0] = true;
+            nameTable.remove(key);
+            return null;
+        });
+        return removed[0];
+    }
+
+    private static void propagate(CompletableFuture<Void> source, CompletableFuture<Void> target) {
+        if (source == target) {
+            return;
+        }
+        source.whenComplete((result, error) -> {
+            if (error != null) {
+                target.completeExceptionally(error);
+            } else {
+                target.complete(result);
+            }
+        });
+    }
+
+    private static <T> List<T> append(List<T> list, T element) {
+        if (list == null) {
+            return List.of(element);
+        }
+
+        var result = new ArrayList<T>(list.size() + 1);
+        result.addAll(list);
+        result.add(element);
+        return List.copyOf(result);
+    }
 }
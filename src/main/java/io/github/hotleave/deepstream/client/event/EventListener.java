@@ -0,0 +1,14 @@
+package io.github.hotleave.deepstream.client.event;
+
+/**
+ * Provider side of a listen pattern, told by the server when clients start or stop subscribing to matching events.
+ */
+public interface EventListener {
+    /**
+     * @return true to accept providing the event, false to reject it
+     */
+    boolean onSubscriptionFound(String pattern, String name);
+
+    default void onSubscriptionRemoved(String pattern, String name) {
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.hotleave.deepstream.client.event;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Event API shared by the single connection and the sharded client.
+ */
+public interface EventOperations {
+    CompletableFuture<Void> subscribe(String name, Consumer<String> callback);
+
+    <T> CompletableFuture<Void> subscribe(String name, Class<T> type, Consumer<T> callback);
+
+    CompletableFuture<Void> unsubscribe(String name, Consumer<String> callback);
+
+    <T> CompletableFuture<Void> unsubscribe(String name, Class<T> type, Consumer<T> callback);
+
+    CompletableFuture<Void> unsubscribe(String name);
+
+    CompletableFuture<Void> subscribeAll(Map<String, Consumer<String>> subscriptions);
+
+    CompletableFuture<Void> unsubscribeAll(Collection<String> names);
+
+    Collection<String> getSubscriptions();
+
+    CompletableFuture<Void> emit(String name, String data);
+
+    <T> CompletableFuture<Void> emit(String name, T value);
+
+    boolean tryEmit(String name, String data);
+
+    EventChannel channel(String name);
+
+    CompletableFuture<Void> emitDurable(String name, String data);
+
+    CompletableFuture<Void> listen(String pattern, EventListener listener);
+
+    CompletableFuture<Void> unlisten(String pattern);
+}
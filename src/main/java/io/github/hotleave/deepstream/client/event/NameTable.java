@@ -0,0 +1,71 @@
+package io.github.hotleave.deepstream.client.event;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Subscribed event names by their UTF-8 bytes, so an inbound event finds the interned name without decoding it.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+class NameTable {
+    Map<Key, String> names = new ConcurrentHashMap<>();
+    // 查找时复用，避免每条消息分配新的Key
+    ThreadLocal<Key> probes = ThreadLocal.withInitial(Key::new);
+
+    void add(String name) {
+        names.putIfAbsent(Key.of(name), name);
+    }
+
+    void remove(String name) {
+        names.remove(Key.of(name));
+    }
+
+    /**
+     * @param bytes the name's bytes between position and limit, left unchanged
+     * @return the interned name, null if it is not in the table
+     */
+    String lookup(ByteBuffer bytes) {
+        Key probe = probes.get();
+        probe.set(bytes);
+        try {
+            return names.get(probe);
+        } finally {
+            probe.set(null);
+        }
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    private static class Key {
+        ByteBuffer bytes;
+        int hash;
+
+        static Key of(String name) {
+            var key = new Key();
+            key.set(ByteBuffer.wrap(name.getBytes(StandardCharsets.UTF_8)));
+            return key;
+        }
+
+        void set(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.hash = bytes == null ? 0 : bytes.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && bytes.equals(((Key) obj).bytes);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.hotleave.deepstream.client.event;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The listen patterns in registration order. The server does the matching and names the pattern in every
+ * SUBSCRIPTION_FOR_PATTERN_FOUND or _REMOVED notification, so patterns are only looked up, never matched on the client.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class PatternIndex<T> {
+    final Map<String, Entry<T>> entries = new LinkedHashMap<>();
+
+    synchronized Entry<T> get(String pattern) {
+        return entries.get(pattern);
+    }
+
+    synchronized void put(String pattern, T value) {
+        entries.put(pattern, new Entry<>(pattern, value));
+    }
+
+    synchronized Entry<T> remove(String pattern) {
+        return entries.remove(pattern);
+    }
+
+    synchronized List<String> patterns() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    @Getter
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    static class Entry<T> {
+        String pattern;
+        T value;
+
+        Entry(String pattern, T value) {
+            this.pattern = pattern;
+            this.value = value;
+        }
+    }
+}
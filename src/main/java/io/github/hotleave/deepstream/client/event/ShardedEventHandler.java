@@ -0,0 +1,259 @@
+package io.github.hotleave.deepstream.client.event;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionListener;
+import io.github.hotleave.deepstream.client.connection.ConnectionState;
+import io.github.hotleave.deepstream.client.utils.ConsistentHash;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Spreads events over several connections, every name and pattern belongs to one shard by consistent hash so events
+ * of one name keep their order. Subscriptions of a shard whose connection dropped move to the remaining shards and
+ * come back once it is open again. Emits the lost shard buffered are handed to the new owner of their name before the
+ * name moves, so they still go out ahead of later emits.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+public class ShardedEventHandler implements EventOperations {
+    private static final int VIRTUAL_NODES = 160;
+
+    List<Connection> connections;
+    List<EventHandler> shards;
+    // 曾经连上又断开的分片，从未连接的分片不算
+    Set<Integer> down = new LinkedHashSet<>();
+    @NonFinal
+    volatile ConsistentHash<Integer> ring;
+
+    public ShardedEventHandler(List<Connection> connections, List<EventHandler> shards) {
+        if (connections.size() != shards.size() || shards.isEmpty()) {
+            throw new IllegalArgumentException("Need one event handler per connection");
+        }
+
+        this.connections = List.copyOf(connections);
+        this.shards = List.copyOf(shards);
+        this.ring = new ConsistentHash<>(indices(), VIRTUAL_NODES);
+        for (int i = 0; i < connections.size(); i++) {
+            int shard = i;
+            connections.get(i).addListener(new ConnectionListener() {
+                @Override
+                public void onStateChanged(ConnectionState newState, ConnectionState oldState) {
+                    if (newState == ConnectionState.OPEN || oldState == ConnectionState.OPEN) {
+                        onShardChanged(shard, newState == ConnectionState.OPEN);
+                    }
+                }
+            });
+        }
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Index of the shard currently serving the name.
+     */
+    public int shardOf(String name) {
+        return ring.get(name);
+    }
+
+    public EventHandler getShard(int index) {
+        return shards.get(index);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> subscribe(String name, Consumer<String> callback) {
+        return route(name).subscribe(name, callback);
+    }
+
+    @Override
+    public synchronized <T> CompletableFuture<Void> subscribe(String name, Class<T> type, Consumer<T> callback) {
+        return route(name).subscribe(name, type, callback);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> unsubscribe(String name, Consumer<String> callback) {
+        return route(name).unsubscribe(name, callback);
+    }
+
+    @Override
+    public synchronized <T> CompletableFuture<Void> unsubscribe(String name, Class<T> type, Consumer<T> callback) {
+        return route(name).unsubscribe(name, type, callback);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> unsubscribe(String name) {
+        return route(name).unsubscribe(name);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> subscribeAll(Map<String, Consumer<String>> subscriptions) {
+        Map<Integer, Map<String, Consumer<String>>> byShard = new HashMap<>();
+        subscriptions.forEach((name, callback) ->
+                byShard.computeIfAbsent(shardOf(name), key -> new HashMap<>()).put(name, callback));
+
+        return allOf(byShard.entrySet().stream()
+                .map(entry -> shards.get(entry.getKey()).subscribeAll(entry.getValue())));
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> unsubscribeAll(Collection<String> names) {
+        Map<Integer, List<String>> byShard = names.stream().collect(Collectors.groupingBy(this::shardOf));
+
+        return allOf(byShard.entrySet().stream()
+                .map(entry -> shards.get(entry.getKey()).unsubscribeAll(entry.getValue())));
+    }
+
+    @Override
+    public Collection<String> getSubscriptions() {
+        List<String> names = new ArrayList<>();
+        shards.forEach(shard -> names.addAll(shard.getSubscriptions()));
+        return names;
+    }
+
+    @Override
+    public CompletableFuture<Void> emit(String name, String data) {
+        return route(name).emit(name, data);
+    }
+
+    @Override
+    public <T> CompletableFuture<Void> emit(String name, T value) {
+        return route(name).emit(name, value);
+    }
+
+    /**
+     * The channel follows the name when it moves to another shard.
+     */
+    @Override
+    public EventChannel channel(String name) {
+        return new EventChannel(name, () -> route(name));
+    }
+
+    @Override
+    public boolean tryEmit(String name, String data) {
+        return route(name).tryEmit(name, data);
+    }
+
+    @Override
+    public CompletableFuture<Void> emitDurable(String name, String data) {
+        return route(name).emitDurable(name, data);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> listen(String pattern, EventListener listener) {
+        return route(pattern).listen(pattern, listener);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> unlisten(String pattern) {
+        return route(pattern).unlisten(pattern);
+    }
+
+    private EventHandler route(String name) {
+        return shards.get(ring.get(name));
+    }
+
+    private synchronized void onShardChanged(int shard, boolean open) {
+        boolean changed = open ? down.remove(shard) : down.add(shard);
+        if (!changed) {
+            return;
+        }
+
+        List<Integer> live = indices().stream().filter(i -> !down.contains(i)).collect(Collectors.toList());
+        // 全部断开时保持原有分布，由各连接的离线缓冲负责
+        var next = new ConsistentHash<>(live.isEmpty() ? indices() : live, VIRTUAL_NODES);
+        if (!open && !live.isEmpty()) {
+            // 先转交缓冲中的事件再切换分布，同名的新事件不会越过旧事件
+            connections.get(shard).forwardBuffered((message, completion) -> forward(next, message, completion));
+        }
+        ring = next;
+        log.info("Shard {} {}, live shards: {}", shard, open ? "recovered" : "lost", live);
+        rebalance();
+    }
+
+    /**
+     * Moves every subscription and listen to the shard the ring assigns it to now.
+     */
+    private void rebalance() {
+        int moved = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            EventHandler source = shards.get(i);
+            for (String name : source.getSubscriptions()) {
+                int target = ring.get(name);
+                if (target != i) {
+                    source.detach(name).forEach(subscriber -> shards.get(target).attach(name, subscriber));
+                    moved++;
+                }
+            }
+            for (String pattern : source.getPatterns()) {
+                int target = ring.get(pattern);
+                if (target != i) {
+                    EventListener listener = source.detachListener(pattern);
+                    if (listener != null) {
+                        shards.get(target).listen(pattern, listener);
+                    }
+                    moved++;
+                }
+            }
+        }
+        log.info("Moved {} subscriptions between shards", moved);
+    }
+
+    /**
+     * Sends a buffered emit of a lost shard through the shard now serving its name. Other event messages stay, the
+     * subscriptions and listens move with {@link #rebalance()}.
+     */
+    private boolean forward(ConsistentHash<Integer> next, General.Message message, CompletableFuture<Void> completion) {
+        if (message.getTopic() != General.TOPIC.EVENT) {
+            return false;
+        }
+
+        Event.EventMessage event;
+        try {
+            event = Event.EventMessage.parseFrom(message.getMessage());
+        } catch (InvalidProtocolBufferException e) {
+            return false;
+        }
+        if (event.getAction() != Event.EVENT_ACTION.EVENT_EMIT) {
+            return false;
+        }
+
+        var sent = connections.get(next.get(event.getName())).sendMessageAsync(General.TOPIC.EVENT, event);
+        if (completion != null) {
+            sent.whenComplete((ignored, error) -> {
+                if (error == null) {
+                    completion.complete(null);
+                } else {
+                    completion.completeExceptionally(error);
+                }
+            });
+        }
+        return true;
+    }
+
+    private List<Integer> indices() {
+        return IntStream.range(0, shards.size()).boxed().collect(Collectors.toList());
+    }
+
+    private static CompletableFuture<Void> allOf(Stream<CompletableFuture<Void>> futures) {
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
+}
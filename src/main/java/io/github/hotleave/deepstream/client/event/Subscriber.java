@@ -0,0 +1,34 @@
+package io.github.hotleave.deepstream.client.event;
+
+import io.github.hotleave.deepstream.client.codec.Payload;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.function.Consumer;
+
+/**
+ * A subscribed callback adapted to receive the payload, unsubscribing matches the callback it was created for.
+ */
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+class Subscriber {
+    Object callback;
+    Consumer<Payload> consumer;
+
+    static Subscriber of(Consumer<String> callback) {
+        return new Subscriber(callback, payload -> callback.accept(payload.asString()));
+    }
+
+    static <T> Subscriber of(Class<T> type, Consumer<T> callback) {
+        return new Subscriber(callback, payload -> callback.accept(payload.as(type)));
+    }
+
+    boolean matches(Object callback) {
+        return this.callback == callback;
+    }
+
+    void accept(Payload payload) {
+        consumer.accept(payload);
+    }
+}
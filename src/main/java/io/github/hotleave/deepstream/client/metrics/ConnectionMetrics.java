@@ -0,0 +1,216 @@
+package io.github.hotleave.deepstream.client.metrics;
+
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionState;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and gauges of one connection, latencies go to the histograms of its runtime. Every measurement is also
+ * handed to the configured {@link MetricsListener}.
+ * <p>
+ * Recording only touches atomic counters, it is cheap enough to stay on permanently.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ConnectionMetrics implements MetricsListener, ConnectionMetricsMXBean {
+    private static final General.TOPIC[] TOPICS = General.TOPIC.values();
+    private static final ConnectionState[] STATES = ConnectionState.values();
+
+    Connection connection;
+    RuntimeMetrics runtimeMetrics;
+    MetricsListener listener;
+    AtomicLongArray inboundMessages = new AtomicLongArray(TOPICS.length);
+    AtomicLongArray inboundBytes = new AtomicLongArray(TOPICS.length);
+    AtomicLongArray outboundMessages = new AtomicLongArray(TOPICS.length);
+    AtomicLongArray outboundBytes = new AtomicLongArray(TOPICS.length);
+    LongAdder reconnects = new LongAdder();
+    // 各状态累计停留时间，状态变化不频繁，加锁即可
+    long[] stateNanos = new long[STATES.length];
+    @NonFinal
+    ConnectionState state;
+    @NonFinal
+    long stateEntered;
+    @NonFinal
+    volatile long lastPingRoundTrip = -1;
+
+    /**
+     * @param listener receives every measurement as well, null for none
+     */
+    public ConnectionMetrics(Connection connection, RuntimeMetrics runtimeMetrics, MetricsListener listener) {
+        this.connection = connection;
+        this.runtimeMetrics = runtimeMetrics;
+        this.listener = listener != null ? listener : NONE;
+    }
+
+    @Override
+    public void onInbound(General.TOPIC topic, int bytes, long nanos) {
+        inboundMessages.incrementAndGet(topic.ordinal());
+        inboundBytes.addAndGet(topic.ordinal(), bytes);
+        runtimeMetrics.decode.record(nanos);
+        listener.onInbound(topic, bytes, nanos);
+    }
+
+    @Override
+    public void onOutbound(General.TOPIC topic, int bytes) {
+        outboundMessages.incrementAndGet(topic.ordinal());
+        outboundBytes.addAndGet(topic.ordinal(), bytes);
+        listener.onOutbound(topic, bytes);
+    }
+
+    @Override
+    public void onEncoded(long nanos) {
+        runtimeMetrics.encode.record(nanos);
+        listener.onEncoded(nanos);
+    }
+
+    @Override
+    public void onDispatched(long waitNanos, long runNanos) {
+        runtimeMetrics.dispatchWait.record(waitNanos);
+        runtimeMetrics.handler.record(runNanos);
+        listener.onDispatched(waitNanos, runNanos);
+    }
+
+    @Override
+    public void onPingRoundTrip(long nanos) {
+        lastPingRoundTrip = nanos;
+        runtimeMetrics.pingRoundTrip.record(nanos);
+        listener.onPingRoundTrip(nanos);
+    }
+
+    @Override
+    public void onReconnect(int attempt) {
+        reconnects.increment();
+        listener.onReconnect(attempt);
+    }
+
+    /**
+     * Called by the connection on every state change.
+     */
+    public void onStateChanged(ConnectionState newState) {
+        long now = System.nanoTime();
+        ConnectionState oldState;
+        long nanos;
+        synchronized (stateNanos) {
+            oldState = state;
+            nanos = now - stateEntered;
+            if (oldState != null) {
+                stateNanos[oldState.ordinal()] += nanos;
+            }
+            state = newState;
+            stateEntered = now;
+        }
+        if (oldState != null) {
+            onStateTime(oldState, nanos);
+        }
+    }
+
+    @Override
+    public void onStateTime(ConnectionState state, long nanos) {
+        listener.onStateTime(state, nanos);
+    }
+
+    public long getInboundMessages(General.TOPIC topic) {
+        return inboundMessages.get(topic.ordinal());
+    }
+
+    public long getOutboundMessages(General.TOPIC topic) {
+        return outboundMessages.get(topic.ordinal());
+    }
+
+    public long getStateTime(ConnectionState state, TimeUnit unit) {
+        synchronized (stateNanos) {
+            long nanos = stateNanos[state.ordinal()];
+            if (state == this.state) {
+                nanos += System.nanoTime() - stateEntered;
+            }
+            return unit.convert(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public String getUrl() {
+        return connection.getUrl();
+    }
+
+    @Override
+    public String getState() {
+        return connection.getConnectionState().name();
+    }
+
+    @Override
+    public Map<String, Long> getInboundMessages() {
+        return byTopic(inboundMessages);
+    }
+
+    @Override
+    public Map<String, Long> getInboundBytes() {
+        return byTopic(inboundBytes);
+    }
+
+    @Override
+    public Map<String, Long> getOutboundMessages() {
+        return byTopic(outboundMessages);
+    }
+
+    @Override
+    public Map<String, Long> getOutboundBytes() {
+        return byTopic(outboundBytes);
+    }
+
+    @Override
+    public long getReconnectCount() {
+        return reconnects.sum();
+    }
+
+    @Override
+    public long getLastPingRoundTripMicros() {
+        long nanos = lastPingRoundTrip;
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public long getInFlightBytes() {
+        return connection.getInFlightBytes();
+    }
+
+    @Override
+    public int getInFlightMessages() {
+        return connection.getInFlightMessages();
+    }
+
+    @Override
+    public int getOfflineBufferedMessages() {
+        return connection.getOfflineBuffer().size();
+    }
+
+    @Override
+    public Map<String, Long> getStateTimeMillis() {
+        Map<String, Long> times = new LinkedHashMap<>();
+        for (ConnectionState s : STATES) {
+            long millis = getStateTime(s, TimeUnit.MILLISECONDS);
+            if (millis > 0 || s == state) {
+                times.put(s.name(), millis);
+            }
+        }
+        return times;
+    }
+
+    private static Map<String, Long> byTopic(AtomicLongArray counters) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (General.TOPIC topic : TOPICS) {
+            long value = counters.get(topic.ordinal());
+            if (value > 0) {
+                values.put(topic.name(), value);
+            }
+        }
+        return values;
+    }
+}
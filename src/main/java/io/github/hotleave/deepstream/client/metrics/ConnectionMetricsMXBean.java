@@ -0,0 +1,41 @@
+package io.github.hotleave.deepstream.client.metrics;
+
+import java.util.Map;
+
+public interface ConnectionMetricsMXBean {
+    String getUrl();
+
+    String getState();
+
+    /**
+     * Messages received per topic.
+     */
+    Map<String, Long> getInboundMessages();
+
+    Map<String, Long> getInboundBytes();
+
+    /**
+     * Messages accepted for sending per topic.
+     */
+    Map<String, Long> getOutboundMessages();
+
+    Map<String, Long> getOutboundBytes();
+
+    long getReconnectCount();
+
+    /**
+     * Round trip of the last answered ping, -1 before the first pong.
+     */
+    long getLastPingRoundTripMicros();
+
+    long getInFlightBytes();
+
+    int getInFlightMessages();
+
+    int getOfflineBufferedMessages();
+
+    /**
+     * Total time spent in every state visited so far, including the current one.
+     */
+    Map<String, Long> getStateTimeMillis();
+}
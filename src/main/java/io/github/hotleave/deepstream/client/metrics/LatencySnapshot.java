@@ -0,0 +1,31 @@
+package io.github.hotleave.deepstream.client.metrics;
+
+import io.github.hotleave.deepstream.client.utils.Histogram;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Percentiles of a latency histogram in microseconds.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class LatencySnapshot {
+    long count;
+    double mean;
+    long p50;
+    long p90;
+    long p99;
+    long p999;
+    long max;
+
+    public static LatencySnapshot of(Histogram histogram) {
+        long[] values = histogram.getPercentiles(50, 90, 99, 99.9);
+        return new LatencySnapshot(histogram.getCount(), histogram.getMean() / 1000, values[0] / 1000,
+                values[1] / 1000, values[2] / 1000, values[3] / 1000, histogram.getMax() / 1000);
+    }
+}
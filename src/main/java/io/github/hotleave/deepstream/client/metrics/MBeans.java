@@ -0,0 +1,47 @@
+package io.github.hotleave.deepstream.client.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registers metrics with the platform MBean server under {@code io.github.hotleave.deepstream:type=<type>,id=<n>}.
+ */
+@Slf4j
+public final class MBeans {
+    public static final String DOMAIN = "io.github.hotleave.deepstream";
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private MBeans() {
+    }
+
+    /**
+     * @return the name it was registered under, null if the registration failed
+     */
+    public static ObjectName register(String type, Object bean) {
+        try {
+            var name = new ObjectName(DOMAIN + ":type=" + type + ",id=" + NEXT_ID.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+            return name;
+        } catch (JMException e) {
+            log.warn("Register {} MBean failed: {}", type, e.getMessage());
+            return null;
+        }
+    }
+
+    public static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            log.debug("Unregister {} failed: {}", name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.hotleave.deepstream.client.metrics;
+
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.ConnectionState;
+
+/**
+ * Receives the raw measurements of a connection, for exporting them to a metrics library. Methods are called on the
+ * I/O, dispatch and sending threads and must return quickly.
+ */
+public interface MetricsListener {
+    MetricsListener NONE = new MetricsListener() {
+    };
+
+    /**
+     * A message was received, {@code nanos} is the time spent parsing and routing it on the I/O thread.
+     */
+    default void onInbound(General.TOPIC topic, int bytes, long nanos) {
+    }
+
+    /**
+     * A message was accepted for sending, directly or through the offline buffer or journal.
+     */
+    default void onOutbound(General.TOPIC topic, int bytes) {
+    }
+
+    /**
+     * A message was encoded into an outbound frame.
+     */
+    default void onEncoded(long nanos) {
+    }
+
+    /**
+     * A subscriber callback ran after waiting {@code waitNanos} in the dispatch queue.
+     */
+    default void onDispatched(long waitNanos, long runNanos) {
+    }
+
+    default void onPingRoundTrip(long nanos) {
+    }
+
+    default void onReconnect(int attempt) {
+    }
+
+    /**
+     * The connection left {@code state} after spending {@code nanos} in it.
+     */
+    default void onStateTime(ConnectionState state, long nanos) {
+    }
+}
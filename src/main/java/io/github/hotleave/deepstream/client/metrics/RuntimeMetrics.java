@@ -0,0 +1,77 @@
+package io.github.hotleave.deepstream.client.metrics;
+
+import io.github.hotleave.deepstream.client.utils.Histogram;
+import io.github.hotleave.deepstream.client.utils.StripedExecutor;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Latency histograms of all connections sharing a {@link io.github.hotleave.deepstream.client.connection.ClientRuntime},
+ * one set per runtime keeps the footprint of a connection small.
+ */
+@FieldDefaults(level = AccessLevel.PACKAGE, makeFinal = true)
+public class RuntimeMetrics implements RuntimeMetricsMXBean {
+    Histogram encode = new Histogram();
+    Histogram decode = new Histogram();
+    Histogram dispatchWait = new Histogram();
+    Histogram handler = new Histogram();
+    Histogram pingRoundTrip = new Histogram();
+    StripedExecutor dispatcher;
+    IntSupplier connectionCount;
+
+    public RuntimeMetrics(StripedExecutor dispatcher, IntSupplier connectionCount) {
+        this.dispatcher = dispatcher;
+        this.connectionCount = connectionCount;
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return connectionCount.getAsInt();
+    }
+
+    @Override
+    public LatencySnapshot getEncodeLatency() {
+        return LatencySnapshot.of(encode);
+    }
+
+    @Override
+    public LatencySnapshot getDecodeLatency() {
+        return LatencySnapshot.of(decode);
+    }
+
+    @Override
+    public LatencySnapshot getDispatchWait() {
+        return LatencySnapshot.of(dispatchWait);
+    }
+
+    @Override
+    public LatencySnapshot getHandlerLatency() {
+        return LatencySnapshot.of(handler);
+    }
+
+    @Override
+    public LatencySnapshot getPingRoundTrip() {
+        return LatencySnapshot.of(pingRoundTrip);
+    }
+
+    @Override
+    public int getDispatchQueueDepth() {
+        return dispatcher.getQueueDepth();
+    }
+
+    @Override
+    public long getDispatchDroppedCount() {
+        return dispatcher.getDroppedCount();
+    }
+
+    @Override
+    public void reset() {
+        encode.reset();
+        decode.reset();
+        dispatchWait.reset();
+        handler.reset();
+        pingRoundTrip.reset();
+    }
+}
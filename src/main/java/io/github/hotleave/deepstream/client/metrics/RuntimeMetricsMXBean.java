@@ -0,0 +1,24 @@
+package io.github.hotleave.deepstream.client.metrics;
+
+public interface RuntimeMetricsMXBean {
+    int getConnectionCount();
+
+    LatencySnapshot getEncodeLatency();
+
+    LatencySnapshot getDecodeLatency();
+
+    LatencySnapshot getDispatchWait();
+
+    LatencySnapshot getHandlerLatency();
+
+    LatencySnapshot getPingRoundTrip();
+
+    int getDispatchQueueDepth();
+
+    long getDispatchDroppedCount();
+
+    /**
+     * Clears the histograms.
+     */
+    void reset();
+}
@@ -0,0 +1,32 @@
+package io.github.hotleave.deepstream.client.presence;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Set;
+
+/**
+ * Users that came online or went offline during one batch window. A user joining and leaving within the same window
+ * is in neither set.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class PresenceDiff {
+    Set<String> joined;
+    Set<String> left;
+
+    PresenceDiff(Set<String> joined, Set<String> left) {
+        this.joined = joined;
+        this.left = left;
+    }
+
+    public boolean isEmpty() {
+        return joined.isEmpty() && left.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "+" + joined + " -" + left;
+    }
+}
@@ -0,0 +1,319 @@
+package io.github.hotleave.deepstream.client.presence;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.deepstream.protobuf.General;
+import io.deepstream.protobuf.Presence;
+import io.github.hotleave.deepstream.client.DeepstreamException;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.InboundMessage;
+import io.github.hotleave.deepstream.client.utils.HashedWheelTimer;
+import io.github.hotleave.deepstream.client.utils.PendingRequests;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Locally cached set of online users. The set is loaded by one query when the first listener subscribes and is then
+ * kept current from join and leave notifications only, reading it never goes to the server.
+ * <p>
+ * Listeners receive {@link PresenceDiff}s collected over the presence batch window instead of a callback per user.
+ * After a reconnect the subscription is restored and the set queried again, the next diff holds what changed while
+ * the connection was down.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+public class PresenceHandler {
+    Connection connection;
+    PendingRequests pendingRequests;
+    long batchWindowNanos;
+    Set<String> online = ConcurrentHashMap.newKeySet();
+    Set<String> onlineView = Collections.unmodifiableSet(online);
+    List<Consumer<PresenceDiff>> listeners = new CopyOnWriteArrayList<>();
+    // Guards the changes of the online set and the pending diff, so both stay in the same order
+    Object lock = new Object();
+
+    @NonFinal
+    Set<String> joined = new LinkedHashSet<>();
+    @NonFinal
+    Set<String> left = new LinkedHashSet<>();
+    @NonFinal
+    HashedWheelTimer.Timeout flushTimeout;
+    // Completed once the first query after subscribing was answered
+    @NonFinal
+    volatile CompletableFuture<Set<String>> loaded;
+
+    public PresenceHandler(Connection connection) {
+        this.connection = connection;
+        this.pendingRequests = connection.getPendingRequests();
+        this.batchWindowNanos = connection.getOptions().getPresenceBatchWindow().toNanos();
+        connection.addOpenHook(this::restore);
+    }
+
+    /**
+     * Adds a listener for presence diffs, the future completes with the online users once they are loaded. If the
+     * last load failed the set is queried again.
+     */
+    public CompletableFuture<Set<String>> subscribe(Consumer<PresenceDiff> listener) {
+        synchronized (listeners) {
+            listeners.add(listener);
+            if (loaded == null) {
+                loaded = new CompletableFuture<>();
+                if (connection.isConnected()) {
+                    // 未连接时由restore统一订阅
+                    sendSubscribe(false);
+                }
+            } else if (loaded.isCompletedExceptionally()) {
+                // 订阅还在，只需重新查询
+                loaded = new CompletableFuture<>();
+                if (connection.isConnected()) {
+                    sendQuery(false);
+                }
+            }
+            return loaded;
+        }
+    }
+
+    /**
+     * Removes the listener, the last one unsubscribes and clears the cached set.
+     */
+    public CompletableFuture<Void> unsubscribe(Consumer<PresenceDiff> listener) {
+        synchronized (listeners) {
+            if (!listeners.remove(listener) || !listeners.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            loaded = null;
+            synchronized (lock) {
+                if (flushTimeout != null) {
+                    flushTimeout.cancel();
+                    flushTimeout = null;
+                }
+                online.clear();
+                joined.clear();
+                left.clear();
+            }
+            if (!connection.isConnected()) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            String correlationId = connection.nextCorrelationId();
+            CompletableFuture<Void> future = pendingRequests.register(correlationId);
+            connection.sendMessage(General.TOPIC.PRESENCE, Presence.PresenceMessage.newBuilder()
+                    .setAction(Presence.PRESENCE_ACTION.PRESENCE_UNSUBSCRIBE_ALL)
+                    .setCorrelationId(correlationId)
+                    .build());
+            return future;
+        }
+    }
+
+    /**
+     * Read only view of the online users, kept current as notifications arrive. Empty while nobody is subscribed.
+     */
+    public Set<String> getOnline() {
+        return onlineView;
+    }
+
+    public boolean isOnline(String user) {
+        return online.contains(user);
+    }
+
+    public int getOnlineCount() {
+        return online.size();
+    }
+
+    public void handle(InboundMessage message) {
+        try {
+            Presence.PresenceMessage presenceMessage = message.getMessage(Presence.PresenceMessage.parser());
+            if (presenceMessage.getIsAck()) {
+                pendingRequests.complete(presenceMessage.getCorrelationId(), null);
+                return;
+            }
+
+            switch (presenceMessage.getAction()) {
+                case PRESENCE_QUERY_ALL_RESPONSE:
+                    reset(presenceMessage.getNamesList());
+                    pendingRequests.complete(presenceMessage.getCorrelationId(), onlineView);
+                    break;
+                case PRESENCE_PRESENCE_JOIN:
+                case PRESENCE_PRESENCE_JOIN_ALL:
+                    change(presenceMessage.getName(), true);
+                    break;
+                case PRESENCE_PRESENCE_LEAVE:
+                case PRESENCE_PRESENCE_LEAVE_ALL:
+                    change(presenceMessage.getName(), false);
+                    break;
+                case PRESENCE_MESSAGE_DENIED:
+                case PRESENCE_MULTIPLE_SUBSCRIPTIONS:
+                case PRESENCE_NOT_SUBSCRIBED:
+                case PRESENCE_ERROR:
+                    log.error("Presence request failed: {}", presenceMessage);
+                    pendingRequests.fail(presenceMessage.getCorrelationId(),
+                            new DeepstreamException(presenceMessage.getAction().name(), presenceMessage.getName()));
+                    break;
+                default:
+                    log.error("Unsupported presence action: {}", presenceMessage);
+                    break;
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void change(String user, boolean join) {
+        if (loaded == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            if (join ? online.add(user) : online.remove(user)) {
+                record(user, join);
+            }
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Replaces the set with a query result. The differences go into the pending diff, except for the first load whose
+     * users the subscribers get from their future.
+     */
+    private void reset(Collection<String> users) {
+        var future = loaded;
+        if (future == null) {
+            return;
+        }
+
+        boolean initial = !future.isDone();
+        synchronized (lock) {
+            Set<String> current = new HashSet<>(users);
+            for (String user : online) {
+                if (!current.contains(user)) {
+                    online.remove(user);
+                    record(user, false);
+                }
+            }
+            for (String user : current) {
+                if (online.add(user)) {
+                    record(user, true);
+                }
+            }
+            if (initial) {
+                joined.clear();
+                left.clear();
+            }
+        }
+        scheduleFlush();
+    }
+
+    private void record(String user, boolean join) {
+        if (join) {
+            if (!left.remove(user)) {
+                joined.add(user);
+            }
+        } else if (!joined.remove(user)) {
+            left.add(user);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (batchWindowNanos <= 0) {
+            flush();
+            return;
+        }
+
+        synchronized (lock) {
+            if (flushTimeout == null && !(joined.isEmpty() && left.isEmpty())) {
+                flushTimeout = connection.getTimer().schedule(this::flush, batchWindowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void flush() {
+        PresenceDiff diff;
+        synchronized (lock) {
+            flushTimeout = null;
+            if (joined.isEmpty() && left.isEmpty()) {
+                return;
+            }
+            diff = new PresenceDiff(Collections.unmodifiableSet(joined), Collections.unmodifiableSet(left));
+            joined = new LinkedHashSet<>();
+            left = new LinkedHashSet<>();
+        }
+
+        // 按处理器排序，共用运行时的各个会话不会挤在同一个分发线程上
+        connection.dispatch(this, () -> {
+            for (Consumer<PresenceDiff> listener : listeners) {
+                try {
+                    listener.accept(diff);
+                } catch (RuntimeException e) {
+                    log.error("Presence listener failed: {}", e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * The server forgets the subscription with the session, it is sent again whenever the connection becomes open.
+     */
+    private void restore() {
+        var future = loaded;
+        if (future != null) {
+            if (future.isCompletedExceptionally()) {
+                // 上次加载失败，重新查询的结果交给新的future
+                loaded = new CompletableFuture<>();
+            }
+            log.info("Resubscribe presence");
+            sendSubscribe(true);
+        }
+    }
+
+    private void sendSubscribe(boolean direct) {
+        String subscribeId = connection.nextCorrelationId();
+        pendingRequests.register(subscribeId);
+        send(Presence.PresenceMessage.newBuilder()
+                .setAction(Presence.PRESENCE_ACTION.PRESENCE_SUBSCRIBE_ALL)
+                .setCorrelationId(subscribeId)
+                .build(), direct);
+        sendQuery(direct);
+    }
+
+    private void sendQuery(boolean direct) {
+        String queryId = connection.nextCorrelationId();
+        CompletableFuture<Set<String>> query = pendingRequests.register(queryId);
+        var future = loaded;
+        query.whenComplete((users, error) -> {
+            if (future == null) {
+                return;
+            }
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(users);
+            }
+        });
+        send(Presence.PresenceMessage.newBuilder()
+                .setAction(Presence.PRESENCE_ACTION.PRESENCE_QUERY_ALL)
+                .setCorrelationId(queryId)
+                .build(), direct);
+    }
+
+    private void send(Presence.PresenceMessage msg, boolean direct) {
+        if (direct) {
+            connection.sendMessageDirect(General.TOPIC.PRESENCE, msg);
+        } else {
+            connection.sendMessage(General.TOPIC.PRESENCE, msg);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package io.github.hotleave.deepstream.client.record;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Latest {@link RecordSnapshot} per record name, bounded by the approximate JSON size of the cached records.
+ * <p>
+ * Reads are a map lookup of a volatile snapshot and never lock, writers are serialized. Once the cache is over its
+ * limit, eviction samples a few entries and drops the one with the largest idle time times size, an approximated LRU
+ * that gives up big idle records first. Pinned records, those currently subscribed, are never evicted and may keep the
+ * cache above its limit.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RecordCache {
+    private static final int SAMPLES = 8;
+    private static final int MAX_FAILED_SAMPLES = 4;
+
+    long maxBytes;
+    Predicate<String> pinned;
+    LongSupplier clock;
+    Map<String, Entry> entries = new ConcurrentHashMap<>();
+    AtomicLong bytes = new AtomicLong();
+    LongAdder hits = new LongAdder();
+    LongAdder misses = new LongAdder();
+    LongAdder evictions = new LongAdder();
+
+    // 仅用于随机抽样，由this锁保护
+    @NonFinal
+    Entry[] slots = new Entry[16];
+    @NonFinal
+    int slotCount;
+
+    public RecordCache(long maxBytes, Predicate<String> pinned) {
+        this(maxBytes, pinned, System::nanoTime);
+    }
+
+    RecordCache(long maxBytes, Predicate<String> pinned, LongSupplier clock) {
+        this.maxBytes = maxBytes;
+        this.pinned = pinned;
+        this.clock = clock;
+    }
+
+    /**
+     * Counts as a hit or miss and marks the record as recently used.
+     *
+     * @return the cached snapshot, null if the record is not cached
+     */
+    public RecordSnapshot get(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        entry.lastAccess = clock.getAsLong();
+        return entry.snapshot;
+    }
+
+    /**
+     * Counts a lookup that had to go to the server without consulting the cache.
+     */
+    void countMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Like {@link #get(String)} but neither counted nor marked as used.
+     */
+    public RecordSnapshot peek(String name) {
+        Entry entry = entries.get(name);
+        return entry == null ? null : entry.snapshot;
+    }
+
+    /**
+     * Replaces the record's snapshot with the result of the update, which gets null if the record is not cached.
+     * Returning the given snapshot leaves the cache as is, returning null removes the record.
+     *
+     * @return the snapshot in the cache afterwards
+     */
+    public synchronized RecordSnapshot update(String name, UnaryOperator<RecordSnapshot> update) {
+        Entry entry = entries.get(name);
+        RecordSnapshot current = entry == null ? null : entry.snapshot;
+        RecordSnapshot next = update.apply(current);
+        if (next == current) {
+            return current;
+        }
+
+        if (next == null) {
+            remove(entry);
+        } else if (entry == null) {
+            insert(new Entry(name, next, clock.getAsLong()));
+        } else {
+            entry.snapshot = next;
+            entry.lastAccess = clock.getAsLong();
+            bytes.addAndGet(next.getSize() - current.getSize());
+        }
+        evictIfNeeded();
+        return next;
+    }
+
+    public synchronized RecordSnapshot remove(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+
+        remove(entry);
+        return entry.snapshot;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return hits of all lookups, 0 if nothing was looked up yet
+     */
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private void insert(Entry entry) {
+        entries.put(entry.name, entry);
+        if (slotCount == slots.length) {
+            slots = Arrays.copyOf(slots, slotCount * 2);
+        }
+        entry.slot = slotCount;
+        slots[slotCount++] = entry;
+        bytes.addAndGet(entry.snapshot.getSize());
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.name);
+        Entry last = slots[--slotCount];
+        slots[entry.slot] = last;
+        last.slot = entry.slot;
+        slots[slotCount] = null;
+        bytes.addAndGet(-entry.snapshot.getSize());
+    }
+
+    private void evictIfNeeded() {
+        int failed = 0;
+        var random = ThreadLocalRandom.current();
+        while (bytes.get() > maxBytes && slotCount > 0 && failed < MAX_FAILED_SAMPLES) {
+            long now = clock.getAsLong();
+            Entry victim = null;
+            double worst = -1;
+            // 条目不多于样本数时全部比较
+            boolean all = slotCount <= SAMPLES;
+            for (int i = 0; i < Math.min(SAMPLES, slotCount); i++) {
+                Entry candidate = slots[all ? i : random.nextInt(slotCount)];
+                if (pinned.test(candidate.name)) {
+                    continue;
+                }
+                double score = (double) (now - candidate.lastAccess + 1) * candidate.snapshot.getSize();
+                if (score > worst) {
+                    worst = score;
+                    victim = candidate;
+                }
+            }
+
+            if (victim == null) {
+                failed++;
+            } else {
+                remove(victim);
+                evictions.increment();
+            }
+        }
+    }
+
+    private static class Entry {
+        final String name;
+        volatile RecordSnapshot snapshot;
+        volatile long lastAccess;
+        int slot;
+
+        Entry(String name, RecordSnapshot snapshot, long lastAccess) {
+            this.name = name;
+            this.snapshot = snapshot;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package io.github.hotleave.deepstream.client.record;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.deepstream.protobuf.General;
+import io.deepstream.protobuf.Record;
+import io.github.hotleave.deepstream.client.DeepstreamException;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.InboundMessage;
+import io.github.hotleave.deepstream.client.utils.Json;
+import io.github.hotleave.deepstream.client.utils.PendingRequests;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Records kept in sync with the server through a local {@link RecordCache}.
+ * <p>
+ * A record stays subscribed from the first {@link #get(String)} or {@link #subscribe} until {@link #discard(String)}.
+ * Remote updates are applied to the cached snapshot as they arrive, patches only touch the patched path, and the
+ * record is read again only if a version was missed. Discarded records stay cached until they are evicted, so reading
+ * them again skips parsing when the version did not change.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+public class RecordHandler {
+    Connection connection;
+    PendingRequests pendingRequests;
+    RecordCache cache;
+    // Subscribed records, callback lists are never modified in place
+    Map<String, List<Consumer<RecordSnapshot>>> subscriptions = new ConcurrentHashMap<>();
+    // Reads waiting for the record's READ_RESPONSE
+    Map<String, CompletableFuture<RecordSnapshot>> reads = new ConcurrentHashMap<>();
+    // Correlation IDs under which sent reads wait in the pending requests, so they time out like any other request
+    Map<String, String> readRequests = new ConcurrentHashMap<>();
+    // Local writes take their version and are sent under this lock, so they reach the server in version order
+    Object writeLock = new Object();
+
+    public RecordHandler(Connection connection) {
+        this.connection = connection;
+        this.pendingRequests = connection.getPendingRequests();
+        this.cache = new RecordCache(connection.getOptions().getRecordCacheMaxBytes(), subscriptions::containsKey);
+        connection.addOpenHook(this::restore);
+    }
+
+    public RecordCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Subscribes the record if necessary, completes right away from the cache if it is subscribed and loaded already.
+     */
+    public CompletableFuture<RecordSnapshot> get(String name) {
+        if (subscriptions.putIfAbsent(name, List.of()) == null) {
+            cache.countMiss();
+            return read(name);
+        }
+
+        RecordSnapshot snapshot = cache.get(name);
+        if (snapshot != null) {
+            return CompletableFuture.completedFuture(snapshot);
+        }
+        return read(name);
+    }
+
+    /**
+     * Lock free read of the cached record, null if it is not cached. Does not subscribe, the snapshot of a discarded
+     * record may be outdated.
+     */
+    public RecordSnapshot snapshot(String name) {
+        return cache.get(name);
+    }
+
+    /**
+     * Adds a callback receiving every later change of the record, local or remote. The future completes with the
+     * current snapshot.
+     */
+    public CompletableFuture<RecordSnapshot> subscribe(String name, Consumer<RecordSnapshot> callback) {
+        var future = get(name);
+        subscriptions.compute(name, (key, callbacks) -> {
+            List<Consumer<RecordSnapshot>> appended = new ArrayList<>(callbacks == null ? List.of() : callbacks);
+            appended.add(callback);
+            return List.copyOf(appended);
+        });
+        return future;
+    }
+
+    /**
+     * Removes the callback, the record stays subscribed until it is discarded.
+     */
+    public void unsubscribe(String name, Consumer<RecordSnapshot> callback) {
+        subscriptions.computeIfPresent(name, (key, callbacks) -> {
+            var remaining = new ArrayList<>(callbacks);
+            remaining.remove(callback);
+            return List.copyOf(remaining);
+        });
+    }
+
+    /**
+     * Unsubscribes the record and drops its callbacks, the future completes once the server acknowledged it.
+     */
+    public CompletableFuture<Void> discard(String name) {
+        if (subscriptions.remove(name) == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        var read = reads.remove(name);
+        if (read != null) {
+            read.cancel(false);
+        }
+        finishRead(name);
+        if (!connection.isConnected()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String correlationId = connection.nextCorrelationId();
+        CompletableFuture<Void> future = pendingRequests.register(correlationId);
+        connection.sendMessage(General.TOPIC.RECORD, Record.RecordMessage.newBuilder()
+                .setAction(Record.RECORD_ACTION.RECORD_UNSUBSCRIBE)
+                .setCorrelationId(correlationId)
+                .addNames(name)
+                .build());
+        return future;
+    }
+
+    public Collection<String> getSubscriptions() {
+        return List.copyOf(subscriptions.keySet());
+    }
+
+    /**
+     * Replaces the whole record.
+     */
+    public CompletableFuture<Void> set(String name, Object data) {
+        return write(name, Record.RECORD_ACTION.RECORD_UPDATE, null, data);
+    }
+
+    /**
+     * Sets the value at the path, only the path and the value are sent.
+     */
+    public CompletableFuture<Void> set(String name, String path, Object value) {
+        if (path == null || path.isEmpty()) {
+            return set(name, value);
+        }
+        return write(name, Record.RECORD_ACTION.RECORD_PATCH, path, value);
+    }
+
+    public CompletableFuture<Void> erase(String name, String path) {
+        return write(name, Record.RECORD_ACTION.RECORD_ERASE, path, null);
+    }
+
+    /**
+     * Deletes the record on the server, the future completes once the server confirmed it.
+     */
+    public CompletableFuture<Void> delete(String name) {
+        subscriptions.remove(name);
+        cache.remove(name);
+
+        String correlationId = connection.nextCorrelationId();
+        CompletableFuture<Void> future = pendingRequests.register(correlationId);
+        connection.sendMessage(General.TOPIC.RECORD, Record.RecordMessage.newBuilder()
+                .setAction(Record.RECORD_ACTION.RECORD_DELETE)
+                .setCorrelationId(correlationId)
+                .setName(name)
+                .build());
+        return future;
+    }
+
+    public void handle(InboundMessage message) {
+        try {
+            Record.RecordMessage recordMessage = message.getMessage(Record.RecordMessage.parser());
+            if (recordMessage.getIsAck()) {
+                pendingRequests.complete(recordMessage.getCorrelationId(), null);
+                return;
+            }
+
+            String name = recordMessage.getName();
+            switch (recordMessage.getAction()) {
+                case RECORD_READ_RESPONSE:
+                    onRead(name, recordMessage.getVersion(), recordMessage.getData(), false);
+                    break;
+                case RECORD_VERSION_EXISTS:
+                    // 版本冲突时以服务端数据为准
+                    log.warn("Version conflict on {}, using remote version {}", name, recordMessage.getVersion());
+                    onRead(name, recordMessage.getVersion(), recordMessage.getData(), true);
+                    break;
+                case RECORD_UPDATE:
+                    onUpdate(name, recordMessage.getVersion(), current ->
+                            RecordSnapshot.parse(name, recordMessage.getVersion(), recordMessage.getData()));
+                    break;
+                case RECORD_PATCH:
+                    onUpdate(name, recordMessage.getVersion(), current -> current.patch(recordMessage.getVersion(),
+                            recordMessage.getPath(), Json.parse(recordMessage.getData())));
+                    break;
+                case RECORD_ERASE:
+                    onUpdate(name, recordMessage.getVersion(), current ->
+                            current.erase(recordMessage.getVersion(), recordMessage.getPath()));
+                    break;
+                case RECORD_DELETE_SUCCESS:
+                case RECORD_WRITE_ACKNOWLEDGEMENT:
+                    pendingRequests.complete(recordMessage.getCorrelationId(), null);
+                    break;
+                case RECORD_DELETED:
+                    log.info("Record {} was deleted", name);
+                    subscriptions.remove(name);
+                    cache.remove(name);
+                    break;
+                case RECORD_MESSAGE_DENIED:
+                case RECORD_NOT_SUBSCRIBED:
+                case RECORD_ERROR:
+                    log.error("Record request failed: {}", recordMessage);
+                    fail(recordMessage);
+                    break;
+                default:
+                    log.error("Unsupported record action: {}", recordMessage);
+                    break;
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private CompletableFuture<Void> write(String name, Record.RECORD_ACTION action, String path, Object value) {
+        // 序列化后再解析，缓存中的快照不受调用方后续修改影响
+        String json = action == Record.RECORD_ACTION.RECORD_ERASE ? null : Json.stringify(value);
+        Object data = json == null ? null : Json.parse(json);
+        return get(name).thenCompose(loaded -> {
+            synchronized (writeLock) {
+                RecordSnapshot[] previous = new RecordSnapshot[1];
+                RecordSnapshot written = cache.update(name, current -> {
+                    previous[0] = current;
+                    if (current == null) {
+                        return null;
+                    }
+                    int version = current.getVersion() + 1;
+                    if (action == Record.RECORD_ACTION.RECORD_UPDATE) {
+                        return new RecordSnapshot(name, version, data, json.length());
+                    }
+                    if (action == Record.RECORD_ACTION.RECORD_ERASE) {
+                        return current.erase(version, path);
+                    }
+                    return current.patch(version, path, data);
+                });
+                if (previous[0] == null) {
+                    return CompletableFuture.failedFuture(new IllegalStateException("Record " + name + " is gone"));
+                }
+
+                var builder = Record.RecordMessage.newBuilder()
+                        .setAction(action)
+                        .setName(name)
+                        .setVersion(written.getVersion());
+                if (path != null) {
+                    builder.setPath(path);
+                }
+                if (json != null) {
+                    builder.setData(json);
+                }
+                notify(name, written);
+                return connection.sendMessageAsync(General.TOPIC.RECORD, builder.build());
+            }
+        });
+    }
+
+    /**
+     * Takes a full copy of the record, unless the cached version is at least as new.
+     */
+    private void onRead(String name, int version, String data, boolean force) {
+        RecordSnapshot before = cache.peek(name);
+        RecordSnapshot after = cache.update(name, current -> {
+            if (current != null && (current.getVersion() == version || !force && current.getVersion() > version)) {
+                return current;
+            }
+            return RecordSnapshot.parse(name, version, data);
+        });
+
+        finishRead(name);
+        var read = reads.remove(name);
+        if (read != null) {
+            read.complete(after);
+        }
+        if (before != null && after != before) {
+            notify(name, after);
+        }
+    }
+
+    /**
+     * Applies a remote change on top of the cached snapshot if it is the next version, older versions were seen
+     * already. A gap means a change was missed and the record is read again.
+     */
+    private void onUpdate(String name, int version, UnaryOperator<RecordSnapshot> change) {
+        boolean[] missed = new boolean[1];
+        RecordSnapshot before = cache.peek(name);
+        RecordSnapshot after = cache.update(name, current -> {
+            if (current != null && version <= current.getVersion()) {
+                return current;
+            }
+            if (current == null || version != current.getVersion() + 1) {
+                missed[0] = true;
+                return current;
+            }
+            return change.apply(current);
+        });
+
+        if (missed[0]) {
+            if (subscriptions.containsKey(name)) {
+                log.debug("Missed a version of {}, read it again", name);
+                connection.sendMessage(General.TOPIC.RECORD, Record.RecordMessage.newBuilder()
+                        .setAction(Record.RECORD_ACTION.RECORD_READ)
+                        .setName(name)
+                        .build());
+            }
+        } else if (after != before) {
+            notify(name, after);
+        }
+    }
+
+    private void notify(String name, RecordSnapshot snapshot) {
+        List<Consumer<RecordSnapshot>> callbacks = subscriptions.get(name);
+        if (callbacks == null || callbacks.isEmpty()) {
+            return;
+        }
+
+        connection.dispatch(name, () -> {
+            for (int i = 0; i < callbacks.size(); i++) {
+                try {
+                    callbacks.get(i).accept(snapshot);
+                } catch (RuntimeException e) {
+                    log.error("Record callback for {} failed: {}", name, e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    private void fail(Record.RecordMessage recordMessage) {
+        var error = new DeepstreamException(recordMessage.getAction().name(), recordMessage.getName());
+        if (pendingRequests.fail(recordMessage.getCorrelationId(), error)) {
+            return;
+        }
+
+        if (recordMessage.getOriginalAction() == Record.RECORD_ACTION.RECORD_SUBSCRIBECREATEANDREAD) {
+            subscriptions.remove(recordMessage.getName());
+        }
+        finishRead(recordMessage.getName());
+        var read = reads.remove(recordMessage.getName());
+        if (read != null) {
+            read.completeExceptionally(error);
+        }
+    }
+
+    private CompletableFuture<RecordSnapshot> read(String name) {
+        var future = new CompletableFuture<RecordSnapshot>();
+        var existing = reads.putIfAbsent(name, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        future.whenComplete((snapshot, error) -> reads.remove(name, future));
+        if (connection.isConnected()) {
+            // 未连接时由restore统一订阅
+            sendSubscriptions(List.of(name), false);
+        }
+        return future;
+    }
+
+    /**
+     * The server forgets subscriptions with the session, they are sent again in bulk whenever the connection becomes
+     * open. The read responses bring the cache up to date, unchanged versions are not parsed again.
+     */
+    private void restore() {
+        List<String> names = new ArrayList<>(subscriptions.keySet());
+        if (!names.isEmpty()) {
+            log.info("Resubscribe {} records", names.size());
+            sendSubscriptions(names, true);
+        }
+    }
+
+    private void sendSubscriptions(List<String> names, boolean direct) {
+        int chunkSize = connection.getOptions().getMaxNamesPerMessage();
+        for (int i = 0; i < names.size(); i += chunkSize) {
+            List<String> chunk = names.subList(i, Math.min(names.size(), i + chunkSize));
+            for (String name : chunk) {
+                var read = reads.get(name);
+                if (read != null) {
+                    trackRead(name, read);
+                }
+            }
+
+            Record.RecordMessage msg = Record.RecordMessage.newBuilder()
+                    .setAction(Record.RECORD_ACTION.RECORD_SUBSCRIBECREATEANDREAD)
+                    .addAllNames(chunk)
+                    .build();
+            if (direct) {
+                connection.sendMessageDirect(General.TOPIC.RECORD, msg);
+            } else {
+                connection.sendMessage(General.TOPIC.RECORD, msg);
+            }
+        }
+    }
+
+    /**
+     * Registers the sent read with the pending requests, the read fails once it expired there.
+     */
+    private void trackRead(String name, CompletableFuture<RecordSnapshot> read) {
+        String correlationId = connection.nextCorrelationId();
+        String previous = readRequests.put(name, correlationId);
+        if (previous != null) {
+            // 重连后重新发送，旧请求不再等待
+            pendingRequests.complete(previous, null);
+        }
+        pendingRequests.register(correlationId).whenComplete((result, error) -> {
+            readRequests.remove(name, correlationId);
+            if (error != null) {
+                read.completeExceptionally(error);
+            }
+        });
+    }
+
+    private void finishRead(String name) {
+        String correlationId = readRequests.remove(name);
+        if (correlationId != null) {
+            pendingRequests.complete(correlationId, null);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.hotleave.deepstream.client.record;
+
+import io.github.hotleave.deepstream.client.utils.Json;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Immutable state of a record at one version. The data is a tree of unmodifiable {@link Json} values, patches copy the
+ * containers along the patched path and share the rest, so snapshots can be read from any thread without locking.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RecordSnapshot {
+    String name;
+    int version;
+    Object data;
+    /**
+     * Approximate size in JSON, used to bound the cache.
+     */
+    long size;
+
+    RecordSnapshot(String name, int version, Object data, long size) {
+        this.name = name;
+        this.version = version;
+        this.data = data;
+        this.size = size;
+    }
+
+    static RecordSnapshot parse(String name, int version, String json) {
+        String data = json == null || json.isEmpty() ? "{}" : json;
+        return new RecordSnapshot(name, version, Json.parse(data), data.length());
+    }
+
+    static RecordSnapshot of(String name, int version, Object data) {
+        return new RecordSnapshot(name, version, data, Json.estimateSize(data));
+    }
+
+    /**
+     * @return the value at the path, e.g. {@code address.street} or {@code items[2]}, null if it does not exist
+     */
+    public Object get(String path) {
+        return Json.get(data, path);
+    }
+
+    public String toJson() {
+        return Json.stringify(data);
+    }
+
+    /**
+     * Sets the value at the path, only the replaced subtree is measured to keep the size up to date.
+     */
+    RecordSnapshot patch(int version, String path, Object value) {
+        if (path == null || path.isEmpty()) {
+            return of(name, version, value);
+        }
+
+        long removed = Json.estimateSize(Json.get(data, path));
+        return new RecordSnapshot(name, version, Json.set(data, path, value),
+                Math.max(0, size - removed + Json.estimateSize(value)));
+    }
+
+    RecordSnapshot erase(int version, String path) {
+        long removed = Json.estimateSize(Json.get(data, path));
+        return new RecordSnapshot(name, version, Json.erase(data, path), Math.max(0, size - removed));
+    }
+
+    @Override
+    public String toString() {
+        return name + "@" + version;
+    }
+}
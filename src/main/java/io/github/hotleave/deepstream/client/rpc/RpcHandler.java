@@ -0,0 +1,265 @@
+package io.github.hotleave.deepstream.client.rpc;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.deepstream.protobuf.General;
+import io.deepstream.protobuf.Rpc;
+import io.github.hotleave.deepstream.client.DeepstreamException;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.connection.InboundMessage;
+import io.github.hotleave.deepstream.client.utils.PendingRequests;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Remote procedure calls over the connection. Any number of calls can be in flight at once, their responses are
+ * matched by correlation ID. A call fails with a {@link java.util.concurrent.TimeoutException} if no provider accepted
+ * it within the ack timeout, or if the response did not arrive within the response timeout.
+ * <p>
+ * Providers run on the {@link ClientRuntime#getRpcWorkers() worker pool} of the runtime, never on the socket's I/O
+ * thread. Requests beyond {@link ConnectionOptions#getRpcMaxPendingRequests()} are rejected right away, the server
+ * then tries another provider, and requests not answered within {@link ConnectionOptions#getRpcProviderTimeout()}
+ * are answered with an error. Calls time out through the runtime's shared expiry task.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+public class RpcHandler implements Closeable {
+    Connection connection;
+    ClientRuntime runtime;
+    PendingRequests pendingRequests;
+    PendingRequests acks;
+    PendingRequests responses;
+    Map<String, RpcProvider> providers = new ConcurrentHashMap<>();
+    Semaphore permits;
+
+    public RpcHandler(Connection connection) {
+        ConnectionOptions options = connection.getOptions();
+        this.connection = connection;
+        this.runtime = connection.getRuntime();
+        this.pendingRequests = connection.getPendingRequests();
+        this.acks = new PendingRequests(options.getRpcAckTimeout());
+        this.responses = new PendingRequests(options.getRpcResponseTimeout());
+        this.permits = new Semaphore(options.getRpcMaxPendingRequests());
+        runtime.track(acks);
+        runtime.track(responses);
+        connection.addOpenHook(this::restore);
+    }
+
+    /**
+     * Calls the RPC, the future completes with the provider's response.
+     */
+    public CompletableFuture<String> make(String name, String data) {
+        String correlationId = connection.nextCorrelationId();
+        CompletableFuture<String> response = responses.register(correlationId);
+        CompletableFuture<Void> ack = acks.register(correlationId);
+        ack.whenComplete((result, error) -> {
+            if (error != null) {
+                responses.fail(correlationId, error);
+            }
+        });
+        response.whenComplete((result, error) -> acks.complete(correlationId, null));
+
+        connection.sendMessage(General.TOPIC.RPC, Rpc.RpcMessage.newBuilder()
+                .setAction(Rpc.RPC_ACTION.RPC_REQUEST)
+                .setName(name)
+                .setCorrelationId(correlationId)
+                .setData(data)
+                .build());
+        return response;
+    }
+
+    /**
+     * Registers the provider for the name, the future completes once the server acknowledged it.
+     */
+    public CompletableFuture<Void> provide(String name, RpcProvider provider) {
+        if (providers.putIfAbsent(name, provider) != null) {
+            throw new IllegalStateException("Already providing " + name);
+        }
+
+        if (!connection.isConnected()) {
+            // 连接恢复后由restore统一注册
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendProvide(Rpc.RPC_ACTION.RPC_PROVIDE, List.of(name), false);
+    }
+
+    public CompletableFuture<Void> unprovide(String name) {
+        if (providers.remove(name) == null || !connection.isConnected()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendProvide(Rpc.RPC_ACTION.RPC_UNPROVIDE, List.of(name), false);
+    }
+
+    public Collection<String> getProvidedNames() {
+        return List.copyOf(providers.keySet());
+    }
+
+    /**
+     * Calls waiting for their response.
+     */
+    public int getPendingCount() {
+        return responses.size();
+    }
+
+    /**
+     * Provider requests accepted but not answered yet.
+     */
+    public int getActiveProviderRequests() {
+        return connection.getOptions().getRpcMaxPendingRequests() - permits.availablePermits();
+    }
+
+    /**
+     * Fails every pending call, provider requests already accepted still run on the shared pool.
+     */
+    @Override
+    public void close() {
+        runtime.untrack(acks);
+        runtime.untrack(responses);
+        var error = new IllegalStateException("RPC handler closed");
+        responses.failAll(error);
+        acks.failAll(error);
+    }
+
+    public void handle(InboundMessage message) {
+        try {
+            Rpc.RpcMessage rpcMessage = message.getMessage(Rpc.RpcMessage.parser());
+            if (rpcMessage.getIsAck()) {
+                pendingRequests.complete(rpcMessage.getCorrelationId(), null);
+                return;
+            }
+
+            String correlationId = rpcMessage.getCorrelationId();
+            switch (rpcMessage.getAction()) {
+                case RPC_REQUEST:
+                    onRequest(rpcMessage);
+                    break;
+                case RPC_ACCEPT:
+                    acks.complete(correlationId, null);
+                    break;
+                case RPC_RESPONSE:
+                    responses.complete(correlationId, rpcMessage.getData());
+                    break;
+                case RPC_REQUEST_ERROR:
+                    responses.fail(correlationId, new DeepstreamException(rpcMessage.getAction().name(),
+                            rpcMessage.getName() + " " + rpcMessage.getData()));
+                    break;
+                case RPC_MESSAGE_DENIED:
+                    log.error("RPC message denied: {}", rpcMessage);
+                    if (rpcMessage.getOriginalAction() == Rpc.RPC_ACTION.RPC_PROVIDE) {
+                        providers.remove(rpcMessage.getName());
+                    }
+                    fail(rpcMessage);
+                    break;
+                case RPC_NO_RPC_PROVIDER:
+                case RPC_ACCEPT_TIMEOUT:
+                case RPC_RESPONSE_TIMEOUT:
+                case RPC_MULTIPLE_PROVIDERS:
+                case RPC_NOT_PROVIDED:
+                    log.warn("RPC failed: {}", rpcMessage);
+                    fail(rpcMessage);
+                    break;
+                default:
+                    log.error("Unsupported RPC action: {}", rpcMessage);
+                    break;
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs on the I/O thread, so it only accepts or rejects and leaves the work to the pool.
+     */
+    private void onRequest(Rpc.RpcMessage request) {
+        String name = request.getName();
+        RpcProvider provider = providers.get(name);
+        if (provider == null || !permits.tryAcquire()) {
+            if (provider != null) {
+                log.warn("Too many pending RPCs, rejected {}", name);
+            }
+            reply(request, Rpc.RPC_ACTION.RPC_REJECT);
+            return;
+        }
+
+        reply(request, Rpc.RPC_ACTION.RPC_ACCEPT);
+        var response = new RpcResponse(connection, name, request.getCorrelationId(), permits::release);
+        response.expireAfter(connection.getTimer(), connection.getOptions().getRpcProviderTimeout().toMillis());
+        String data = request.getData();
+        try {
+            runtime.getRpcWorkers().execute(() -> {
+                try {
+                    provider.provide(data, response);
+                } catch (Exception e) {
+                    log.error("RPC provider for {} failed: {}", name, e.getMessage(), e);
+                    response.error(String.valueOf(e.getMessage()));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 多个连接共用的队列已满，已经接受了只能回复错误
+            log.warn("RPC worker queue full, failed {}", name);
+            response.error("Too many pending RPCs");
+        }
+    }
+
+    private void reply(Rpc.RpcMessage request, Rpc.RPC_ACTION action) {
+        connection.sendMessage(General.TOPIC.RPC, Rpc.RpcMessage.newBuilder()
+                .setAction(action)
+                .setName(request.getName())
+                .setCorrelationId(request.getCorrelationId())
+                .build());
+    }
+
+    private void fail(Rpc.RpcMessage rpcMessage) {
+        var error = new DeepstreamException(rpcMessage.getAction().name(), rpcMessage.getName());
+        String correlationId = rpcMessage.getCorrelationId();
+        if (!pendingRequests.fail(correlationId, error)) {
+            responses.fail(correlationId, error);
+        }
+    }
+
+    /**
+     * The server forgets providers with the session, they are registered again whenever the connection becomes open.
+     */
+    private void restore() {
+        List<String> names = new ArrayList<>(providers.keySet());
+        if (!names.isEmpty()) {
+            log.info("Provide {} RPCs again", names.size());
+            sendProvide(Rpc.RPC_ACTION.RPC_PROVIDE, names, true);
+        }
+    }
+
+    private CompletableFuture<Void> sendProvide(Rpc.RPC_ACTION action, List<String> names, boolean direct) {
+        int chunkSize = connection.getOptions().getMaxNamesPerMessage();
+        var chunks = new CompletableFuture<?>[(names.size() + chunkSize - 1) / chunkSize];
+        for (int i = 0; i < chunks.length; i++) {
+            List<String> chunk = names.subList(i * chunkSize, Math.min(names.size(), (i + 1) * chunkSize));
+            String correlationId = connection.nextCorrelationId();
+            chunks[i] = pendingRequests.register(correlationId);
+
+            Rpc.RpcMessage msg = Rpc.RpcMessage.newBuilder()
+                    .setAction(action)
+                    .setCorrelationId(correlationId)
+                    .addAllNames(chunk)
+                    .build();
+            if (direct) {
+                connection.sendMessageDirect(General.TOPIC.RPC, msg);
+            } else {
+                connection.sendMessage(General.TOPIC.RPC, msg);
+            }
+        }
+
+        return chunks.length == 1 ? (CompletableFuture<Void>) chunks[0] : CompletableFuture.allOf(chunks);
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.hotleave.deepstream.client.rpc;
+
+/**
+ * Answers the RPCs of one name, runs on the RPC worker pool. Exceptions are sent to the caller as a request error.
+ */
+@FunctionalInterface
+public interface RpcProvider {
+    /**
+     * Must eventually call one of the response's methods, it may be handed to another thread to answer later.
+     */
+    void provide(String data, RpcResponse response) throws Exception;
+}
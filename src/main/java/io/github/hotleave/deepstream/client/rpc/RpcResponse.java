@@ -0,0 +1,89 @@
+package io.github.hotleave.deepstream.client.rpc;
+
+import io.deepstream.protobuf.General;
+import io.deepstream.protobuf.Rpc;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.utils.HashedWheelTimer;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Answer to a single RPC, only the first call is sent. A request the provider did not answer in time is answered
+ * with an error.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RpcResponse {
+    Connection connection;
+    @Getter
+    String name;
+    String correlationId;
+    Runnable onComplete;
+    AtomicBoolean completed = new AtomicBoolean();
+    @NonFinal
+    volatile HashedWheelTimer.Timeout timeout;
+
+    RpcResponse(Connection connection, String name, String correlationId, Runnable onComplete) {
+        this.connection = connection;
+        this.name = name;
+        this.correlationId = correlationId;
+        this.onComplete = onComplete;
+    }
+
+    public void send(String data) {
+        complete(Rpc.RPC_ACTION.RPC_RESPONSE, data);
+    }
+
+    /**
+     * Lets the server pass the request on to another provider.
+     */
+    public void reject() {
+        complete(Rpc.RPC_ACTION.RPC_REJECT, null);
+    }
+
+    public void error(String message) {
+        complete(Rpc.RPC_ACTION.RPC_REQUEST_ERROR, message);
+    }
+
+    public boolean isCompleted() {
+        return completed.get();
+    }
+
+    void expireAfter(HashedWheelTimer timer, long timeoutMillis) {
+        timeout = timer.schedule(this::expire, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void expire() {
+        if (!completed.get()) {
+            log.warn("RPC {} {} not answered in time", name, correlationId);
+            complete(Rpc.RPC_ACTION.RPC_REQUEST_ERROR, "Provider timeout");
+        }
+    }
+
+    private void complete(Rpc.RPC_ACTION action, String data) {
+        if (!completed.compareAndSet(false, true)) {
+            log.warn("RPC {} {} already answered, dropped {}", name, correlationId, action);
+            return;
+        }
+
+        var builder = Rpc.RpcMessage.newBuilder()
+                .setAction(action)
+                .setName(name)
+                .setCorrelationId(correlationId);
+        if (data != null) {
+            builder.setData(data);
+        }
+        var expiry = timeout;
+        if (expiry != null) {
+            expiry.cancel();
+        }
+        connection.sendMessage(General.TOPIC.RPC, builder.build());
+        onComplete.run();
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.hotleave.deepstream.client.transport;
+
+import jakarta.websocket.ClientEndpointConfig;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.DeploymentException;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.MessageHandler;
+import jakarta.websocket.Session;
+import jakarta.websocket.WebSocketContainer;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Runs on a Jakarta WebSocket container such as Undertow.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class JakartaTransport implements Transport {
+    ClientEndpointConfig config = ClientEndpointConfig.Builder.create().build();
+    @NonFinal
+    volatile WebSocketContainer container;
+
+    /**
+     * Asks the {@link ContainerProvider} for a container on the first connect.
+     */
+    public JakartaTransport() {
+        this(null);
+    }
+
+    public JakartaTransport(WebSocketContainer container) {
+        this.container = container;
+    }
+
+    @Override
+    public TransportSession connect(URI uri, TransportListener listener) throws IOException {
+        var endpoint = new ListenerEndpoint(listener);
+        try {
+            getContainer().connectToServer(endpoint, config, uri);
+        } catch (DeploymentException e) {
+            throw new IOException("Connect to " + uri + " failed: " + e.getMessage(), e);
+        }
+        return endpoint.session;
+    }
+
+    private WebSocketContainer getContainer() {
+        var result = container;
+        if (result == null) {
+            synchronized (this) {
+                result = container;
+                if (result == null) {
+                    container = result = ContainerProvider.getWebSocketContainer();
+                }
+            }
+        }
+        return result;
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static class ListenerEndpoint extends Endpoint {
+        final TransportListener listener;
+        volatile SessionAdapter session;
+
+        ListenerEndpoint(TransportListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onOpen(Session session, EndpointConfig config) {
+            session.addMessageHandler(ByteBuffer.class, (MessageHandler.Partial<ByteBuffer>) listener::onMessage);
+            this.session = new SessionAdapter(session);
+            listener.onOpen(this.session);
+        }
+
+        @Override
+        public void onClose(Session session, CloseReason closeReason) {
+            listener.onClose(closeReason.getCloseCode().getCode(), closeReason.getReasonPhrase());
+        }
+
+        @Override
+        public void onError(Session session, Throwable throwable) {
+            listener.onError(throwable);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class SessionAdapter implements TransportSession {
+        private final Session session;
+
+        @Override
+        public void send(ByteBuffer frame, Consumer<Throwable> callback) {
+            session.getAsyncRemote().sendBinary(frame, result -> callback.accept(result.getException()));
+        }
+
+        @Override
+        public boolean isOpen() {
+            return session.isOpen();
+        }
+
+        @Override
+        public void close(int code, String reason) {
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.getCloseCode(code), reason));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package io.github.hotleave.deepstream.client.transport;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Runs on the JDK's {@link java.net.http.WebSocket}, needs no container.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class JdkTransport implements Transport {
+    // 关闭后等待对端关闭帧的时间
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+    private static final int ABNORMAL_CLOSURE = 1006;
+
+    HttpClient httpClient;
+    Duration connectTimeout;
+
+    public JdkTransport() {
+        this(HttpClient.newHttpClient(), Duration.ofSeconds(10));
+    }
+
+    /**
+     * @param httpClient shared by all sessions, its executor runs the listener callbacks
+     */
+    public JdkTransport(HttpClient httpClient, Duration connectTimeout) {
+        this.httpClient = httpClient;
+        this.connectTimeout = connectTimeout;
+    }
+
+    @Override
+    public TransportSession connect(URI uri, TransportListener listener) throws IOException {
+        var adapter = new ListenerAdapter(listener);
+        try {
+            httpClient.newWebSocketBuilder()
+                    .connectTimeout(connectTimeout)
+                    .buildAsync(uri, adapter)
+                    .join();
+        } catch (CompletionException e) {
+            throw new IOException("Connect to " + uri + " failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        return adapter.session;
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static class ListenerAdapter implements WebSocket.Listener {
+        final TransportListener listener;
+        // onClose和onError只通知一次
+        final AtomicBoolean terminated = new AtomicBoolean();
+        volatile SessionAdapter session;
+
+        ListenerAdapter(TransportListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            session = new SessionAdapter(webSocket, this);
+            listener.onOpen(session);
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            // 解码器会复制跨片段的数据，返回null即可复用data
+            listener.onMessage(data, last);
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            if (terminated.compareAndSet(false, true)) {
+                listener.onClose(statusCode, reason);
+            }
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            if (terminated.compareAndSet(false, true)) {
+                listener.onError(error);
+            }
+        }
+
+        /**
+         * The JDK can miss the end of the stream, e.g. when it arrives while a message is being handled. A session
+         * that was closed locally but never reported closed is aborted and reported as closed abnormally.
+         */
+        void abort(WebSocket webSocket) {
+            if (terminated.compareAndSet(false, true)) {
+                webSocket.abort();
+                listener.onClose(ABNORMAL_CLOSURE, "Closing handshake timed out");
+            }
+        }
+    }
+
+    /**
+     * The JDK allows one outstanding send, frames are chained behind each other.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static class SessionAdapter implements TransportSession {
+        final WebSocket webSocket;
+        final ListenerAdapter adapter;
+        CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+        SessionAdapter(WebSocket webSocket, ListenerAdapter adapter) {
+            this.webSocket = webSocket;
+            this.adapter = adapter;
+        }
+
+        @Override
+        public synchronized void send(ByteBuffer frame, Consumer<Throwable> callback) {
+            tail = tail.handle((result, error) -> null)
+                    .thenCompose(ignored -> webSocket.sendBinary(frame, true))
+                    .whenComplete((result, error) -> callback.accept(
+                            error instanceof CompletionException ? error.getCause() : error));
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !webSocket.isOutputClosed() && !webSocket.isInputClosed();
+        }
+
+        @Override
+        public void close(int code, String reason) {
+            webSocket.sendClose(code, reason);
+            CompletableFuture.delayedExecutor(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    .execute(() -> adapter.abort(webSocket));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.hotleave.deepstream.client.transport;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Connects to a server living in the same process, tests and benchmarks run the whole client without a socket.
+ * Frames are copied and delivered in order on the executor, each side's callbacks never run concurrently.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class LoopbackTransport implements Transport {
+    Function<URI, TransportListener> server;
+    Executor executor;
+
+    /**
+     * @param server creates the server side listener of a new session, null refuses the connection
+     */
+    public LoopbackTransport(Function<URI, TransportListener> server) {
+        this(server, ForkJoinPool.commonPool());
+    }
+
+    public LoopbackTransport(Function<URI, TransportListener> server, Executor executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    @Override
+    public TransportSession connect(URI uri, TransportListener listener) throws IOException {
+        TransportListener serverListener = server.apply(uri);
+        if (serverListener == null) {
+            throw new IOException("Connection to " + uri + " refused");
+        }
+
+        var client = new Endpoint(listener);
+        var serverSide = new Endpoint(serverListener);
+        client.peer = serverSide;
+        serverSide.peer = client;
+
+        serverSide.run(() -> serverListener.onOpen(serverSide));
+        client.run(() -> listener.onOpen(client));
+        return client;
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private class Endpoint implements TransportSession {
+        final TransportListener listener;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicBoolean open = new AtomicBoolean(true);
+        volatile Endpoint peer;
+
+        Endpoint(TransportListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void send(ByteBuffer frame, Consumer<Throwable> callback) {
+            if (!open.get()) {
+                callback.accept(new IOException("Session closed"));
+                return;
+            }
+
+            ByteBuffer copy = ByteBuffer.allocate(frame.remaining()).put(frame.duplicate()).flip();
+            peer.run(() -> peer.listener.onMessage(copy, true));
+            callback.accept(null);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open.get();
+        }
+
+        @Override
+        public void close(int code, String reason) {
+            if (open.compareAndSet(true, false)) {
+                peer.open.set(false);
+                peer.run(() -> peer.listener.onClose(code, reason));
+                run(() -> listener.onClose(code, reason));
+            }
+        }
+
+        void run(Runnable task) {
+            tasks.add(task);
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Loopback callback failed: {}", e.getMessage(), e);
+                }
+            }
+
+            scheduled.set(false);
+            if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+    }
+}
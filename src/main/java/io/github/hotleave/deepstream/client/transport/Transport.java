@@ -0,0 +1,15 @@
+package io.github.hotleave.deepstream.client.transport;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Opens the binary message channel a connection talks deepstream over.
+ */
+public interface Transport {
+    /**
+     * Opens a session, may block until the handshake finished. {@link TransportListener#onOpen(TransportSession)} is
+     * called before this method returns.
+     */
+    TransportSession connect(URI uri, TransportListener listener) throws IOException;
+}
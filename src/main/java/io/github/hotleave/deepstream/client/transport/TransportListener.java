@@ -0,0 +1,16 @@
+package io.github.hotleave.deepstream.client.transport;
+
+import java.nio.ByteBuffer;
+
+public interface TransportListener {
+    void onOpen(TransportSession session);
+
+    /**
+     * A fragment of a binary message, the buffer is only valid during the call.
+     */
+    void onMessage(ByteBuffer fragment, boolean last);
+
+    void onError(Throwable throwable);
+
+    void onClose(int code, String reason);
+}
@@ -0,0 +1,20 @@
+package io.github.hotleave.deepstream.client.transport;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+public interface TransportSession {
+    int NORMAL_CLOSURE = 1000;
+    int GOING_AWAY = 1001;
+    int TOO_BIG = 1009;
+
+    /**
+     * Sends the frame as one binary message. The callback gets null once it was written, or the failure, the frame
+     * must not be touched before the callback ran.
+     */
+    void send(ByteBuffer frame, Consumer<Throwable> callback);
+
+    boolean isOpen();
+
+    void close(int code, String reason);
+}
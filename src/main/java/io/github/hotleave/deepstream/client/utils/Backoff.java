@@ -0,0 +1,43 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Exponential backoff with full jitter: the delay of an attempt is uniformly random between zero and the exponential
+ * ceiling, so clients that lost the same server do not come back in lockstep.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class Backoff {
+    long initialMillis;
+    long maxMillis;
+    double multiplier;
+    DoubleSupplier random;
+
+    public Backoff(Duration initialDelay, Duration maxDelay, double multiplier) {
+        this(initialDelay, maxDelay, multiplier, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    public Backoff(Duration initialDelay, Duration maxDelay, double multiplier, DoubleSupplier random) {
+        this.initialMillis = initialDelay.toMillis();
+        this.maxMillis = maxDelay.toMillis();
+        this.multiplier = multiplier;
+        this.random = random;
+    }
+
+    /**
+     * @param attempt zero based number of the attempt
+     */
+    public long ceilingMillis(int attempt) {
+        double ceiling = initialMillis * Math.pow(multiplier, attempt);
+        return (long) Math.min(maxMillis, ceiling);
+    }
+
+    public long delayMillis(int attempt) {
+        return (long) (random.getAsDouble() * (ceilingMillis(attempt) + 1));
+    }
+}
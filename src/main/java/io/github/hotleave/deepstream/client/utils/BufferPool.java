@@ -0,0 +1,90 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of {@link ByteBuffer}s in power of two size classes from {@value #MIN_BUFFER_SIZE} bytes up to the
+ * maximum buffer size, so a buffer is at most twice as large as requested. Requests larger than the maximum get a
+ * one-off buffer which is simply dropped on release.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class BufferPool {
+    public static final int MIN_BUFFER_SIZE = 256;
+
+    @Getter
+    int maxBufferSize;
+    @Getter
+    boolean direct;
+    // 下标i对应容量为MIN_BUFFER_SIZE << i的缓冲区
+    ArrayBlockingQueue<ByteBuffer>[] classes;
+    LongAdder allocations = new LongAdder();
+
+    /**
+     * @param maxPooled buffers kept per size class
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int maxBufferSize, int maxPooled, boolean direct) {
+        this.maxBufferSize = maxBufferSize;
+        this.direct = direct;
+        this.classes = new ArrayBlockingQueue[classOf(Math.max(MIN_BUFFER_SIZE, maxBufferSize)) + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+        }
+    }
+
+    /**
+     * @return a cleared buffer of the smallest size class holding the capacity
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > maxBufferSize) {
+            return allocate(minCapacity);
+        }
+
+        int index = classOf(minCapacity);
+        ByteBuffer buffer = classes[index].poll();
+        return buffer != null ? buffer : allocate(MIN_BUFFER_SIZE << index);
+    }
+
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (capacity < MIN_BUFFER_SIZE || Integer.bitCount(capacity) != 1 || buffer.isDirect() != direct) {
+            return;
+        }
+
+        int index = classOf(capacity);
+        if (index < classes.length) {
+            buffer.clear();
+            classes[index].offer(buffer);
+        }
+    }
+
+    public int getPooledCount() {
+        int count = 0;
+        for (var pooled : classes) {
+            count += pooled.size();
+        }
+        return count;
+    }
+
+    public long getAllocationCount() {
+        return allocations.sum();
+    }
+
+    private static int classOf(int capacity) {
+        if (capacity <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        allocations.increment();
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable hash ring, each node owns {@code virtualNodes} points so keys spread evenly. Removing a node only moves
+ * the keys it owned.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ConsistentHash<T> {
+    int[] points;
+    Object[] owners;
+
+    public ConsistentHash(Collection<T> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("No nodes");
+        }
+
+        List<T> nodeList = List.copyOf(nodes);
+        long[] ring = new long[nodeList.size() * virtualNodes];
+        for (int i = 0; i < nodeList.size(); i++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                int point = hash(nodeList.get(i) + "#" + v);
+                // 高32位存位置，低32位存节点下标，排序后同位置按下标稳定
+                ring[i * virtualNodes + v] = (long) point << 32 | i;
+            }
+        }
+        Arrays.sort(ring);
+
+        points = new int[ring.length];
+        owners = new Object[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = (int) (ring[i] >> 32);
+            owners[i] = nodeList.get((int) ring[i]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(String key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return (T) owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes followed by a murmur3 finalizer, String.hashCode clusters similar names.
+     */
+    static int hash(String key) {
+        int h = 0x811c9dc5;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,383 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * A hashed timing wheel, scheduling and cancelling are O(1) no matter how many timeouts are pending.
+ * <p>
+ * New and cancelled timeouts are queued and applied by the worker thread on its next tick, so the buckets are only
+ * ever touched by one thread. Tasks run on the worker thread and must not block. While nothing is pending the worker
+ * parks until the next timeout is scheduled instead of waking up every tick.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HashedWheelTimer {
+    static final int INIT = 0;
+    static final int CANCELLED = 1;
+    static final int EXPIRED = 2;
+
+    /**
+     * Tick of the default timer, timeouts fire up to one tick late.
+     */
+    public static final Duration DEFAULT_TICK = Duration.ofMillis(10);
+
+    private static volatile HashedWheelTimer defaultTimer;
+
+    final String name;
+    final long tickNanos;
+    final Bucket[] wheel;
+    final int mask;
+    final LongSupplier nanoClock;
+    final long startTime;
+    final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    final AtomicInteger pending = new AtomicInteger();
+    final boolean startWorker;
+
+    long tick;
+    volatile Thread worker;
+    volatile boolean stopped;
+
+    public HashedWheelTimer(String name, Duration tickDuration, int ticksPerWheel) {
+        this(name, tickDuration, ticksPerWheel, System::nanoTime, true);
+    }
+
+    /**
+     * @param nanoClock   source of time
+     * @param startWorker false leaves ticking to the caller, tests drive a virtual clock through {@link #advance()}
+     */
+    public HashedWheelTimer(String name, Duration tickDuration, int ticksPerWheel, LongSupplier nanoClock,
+                            boolean startWorker) {
+        int size = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+        this.name = name;
+        this.tickNanos = Math.max(1, tickDuration.toNanos());
+        this.wheel = new Bucket[size];
+        this.mask = size - 1;
+        this.nanoClock = nanoClock;
+        this.startTime = nanoClock.getAsLong();
+        this.startWorker = startWorker;
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+    }
+
+    /**
+     * The timer shared by every connection which was not given its own, its worker is a daemon thread.
+     */
+    public static HashedWheelTimer getDefault() {
+        var timer = defaultTimer;
+        if (timer == null || timer.stopped) {
+            synchronized (HashedWheelTimer.class) {
+                timer = defaultTimer;
+                if (timer == null || timer.stopped) {
+                    defaultTimer = timer = new HashedWheelTimer("deepstream-timer", DEFAULT_TICK, 512);
+                }
+            }
+        }
+
+        return timer;
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("Timer " + name + " is stopped");
+        }
+
+        var timeout = new Timeout(task, nanoClock.getAsLong() + unit.toNanos(Math.max(0, delay)));
+        boolean idle = pending.getAndIncrement() == 0;
+        newTimeouts.offer(timeout);
+        if (idle) {
+            wakeUp();
+        }
+        return timeout;
+    }
+
+    public Cancellable scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        var periodic = new Periodic(task, unit.toNanos(period));
+        periodic.scheduleAt(nanoClock.getAsLong() + unit.toNanos(initialDelay));
+        return periodic;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the worker, pending timeouts are dropped without running.
+     */
+    public void stop() {
+        stopped = true;
+        Thread thread;
+        synchronized (this) {
+            thread = worker;
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Processes every tick that elapsed according to the clock.
+     */
+    public void advance() {
+        long now = nanoClock.getAsLong();
+        while (now - tickDeadline(tick) >= 0) {
+            processCancelled();
+            transferNewTimeouts();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    private long tickDeadline(long tick) {
+        return startTime + (tick + 1) * tickNanos;
+    }
+
+    private void wakeUp() {
+        Thread thread = worker;
+        if (thread == null) {
+            startWorker();
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private synchronized void startWorker() {
+        if (worker != null || !startWorker || stopped) {
+            return;
+        }
+
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run() {
+        while (!stopped) {
+            if (pending.get() == 0) {
+                // 没有待执行的超时，挂起到下次调度，醒来后跳过空闲期间的空刻度
+                LockSupport.park(this);
+                skipIdleTicks();
+                continue;
+            }
+
+            long sleep = tickDeadline(tick) - nanoClock.getAsLong();
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+
+            try {
+                advance();
+            } catch (RuntimeException e) {
+                log.error("Timer {} failed: {}", name, e.getMessage(), e);
+            }
+        }
+
+        newTimeouts.clear();
+        cancelledTimeouts.clear();
+    }
+
+    /**
+     * Only called while no timeout is pending, the buckets hold nothing but cancelled timeouts.
+     */
+    private void skipIdleTicks() {
+        processCancelled();
+        tick = Math.max(tick, (nanoClock.getAsLong() - startTime) / tickNanos);
+    }
+
+    private void transferNewTimeouts() {
+        // Bounded so a producer flooding the queue can not stall the tick
+        for (int i = 0; i < 100_000; i++) {
+            Timeout timeout = newTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() == CANCELLED) {
+                continue;
+            }
+
+            long calculated = Math.max(0, (timeout.deadline - startTime) / tickNanos);
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void processCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    public interface Cancellable {
+        boolean cancel();
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public final class Timeout implements Cancellable {
+        final Runnable task;
+        final long deadline;
+        final AtomicInteger state = new AtomicInteger(INIT);
+        long remainingRounds;
+        Bucket bucket;
+        Timeout next;
+        Timeout prev;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) {
+                return false;
+            }
+
+            pending.decrementAndGet();
+            cancelledTimeouts.offer(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        void expire() {
+            if (!state.compareAndSet(INIT, EXPIRED)) {
+                return;
+            }
+
+            pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Timer task failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private final class Periodic implements Cancellable, Runnable {
+        final Runnable task;
+        final long periodNanos;
+        volatile Timeout current;
+        volatile boolean cancelled;
+        long nextRun;
+
+        Periodic(Runnable task, long periodNanos) {
+            this.task = task;
+            this.periodNanos = periodNanos;
+        }
+
+        void scheduleAt(long deadline) {
+            nextRun = deadline;
+            current = schedule(this, deadline - nanoClock.getAsLong(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Periodic task failed: {}", e.getMessage(), e);
+            } finally {
+                // 任务失败也继续调度下一次
+                if (!cancelled && !stopped) {
+                    scheduleAt(nextRun + periodNanos);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            cancelled = true;
+            Timeout timeout = current;
+            return timeout != null && timeout.cancel();
+        }
+    }
+
+    private static final class Bucket {
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = timeout.next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
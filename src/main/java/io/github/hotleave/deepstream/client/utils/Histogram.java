@@ -0,0 +1,121 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative values such as latencies in nanoseconds. Every power of two is split into 32
+ * linear buckets, so a reported percentile is at most about 3% above the recorded value.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    LongAdder count = new LongAdder();
+    LongAdder sum = new LongAdder();
+    AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        return getPercentiles(percentile)[0];
+    }
+
+    /**
+     * Reads all percentiles from one pass over the buckets, so they stay ordered while values are being recorded.
+     *
+     * @param percentiles ascending, between 0 and 100
+     */
+    public long[] getPercentiles(double... percentiles) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        long[] values = new long[percentiles.length];
+        if (total == 0) {
+            return values;
+        }
+
+        long upper = max.get();
+        int bucket = 0;
+        long seen = snapshot[0];
+        for (int i = 0; i < percentiles.length; i++) {
+            long rank = Math.max(1, (long) Math.ceil(percentiles[i] / 100 * total));
+            while (seen < rank && bucket < BUCKETS - 1) {
+                seen += snapshot[++bucket];
+            }
+            values[i] = Math.min(upperBound(bucket), upper);
+        }
+        return values;
+    }
+
+    /**
+     * Not atomic with concurrent recording, values recorded meanwhile may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lower = (long) (SUB_BUCKETS | index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
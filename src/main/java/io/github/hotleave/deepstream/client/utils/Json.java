@@ -0,0 +1,486 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for record data. Values are {@link Map}, {@link List}, {@link String}, {@link Long},
+ * {@link Double}, {@link Boolean} or null, parsed containers are unmodifiable.
+ * <p>
+ * Paths use the deepstream notation {@code a.b[2].c}. {@link #set} and {@link #erase} copy only the containers along
+ * the path and share everything else with the original, so existing values can be handed to other threads as is.
+ */
+public final class Json {
+    private Json() {
+    }
+
+    public static Object parse(String json) {
+        var parser = new Parser(json);
+        parser.skipWhitespace();
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position != json.length()) {
+            throw parser.error("Unexpected trailing characters");
+        }
+        return value;
+    }
+
+    public static String stringify(Object value) {
+        var builder = new StringBuilder();
+        write(value, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Approximate size of the value in JSON, without serializing it.
+     */
+    public static long estimateSize(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof String) {
+            return ((String) value).length() + 2;
+        }
+        if (value instanceof Map) {
+            var map = (Map<?, ?>) value;
+            long size = 1 + Math.max(1, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + 3 + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof List) {
+            var list = (List<?>) value;
+            long size = 1 + Math.max(1, list.size());
+            for (Object element : list) {
+                size += estimateSize(element);
+            }
+            return size;
+        }
+        return 8;
+    }
+
+    /**
+     * @return the value at the path, null if it does not exist
+     */
+    public static Object get(Object root, String path) {
+        Object value = root;
+        for (Object token : tokenize(path)) {
+            if (value instanceof Map) {
+                value = ((Map<?, ?>) value).get(token.toString());
+            } else if (value instanceof List && index(token) >= 0) {
+                var list = (List<?>) value;
+                int index = index(token);
+                value = index < list.size() ? list.get(index) : null;
+            } else {
+                return null;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns a copy of the root with the value at the path replaced, missing containers are created. An empty path
+     * replaces the root.
+     */
+    public static Object set(Object root, String path, Object value) {
+        return set(root, tokenize(path), 0, value);
+    }
+
+    /**
+     * Returns a copy of the root without the value at the path.
+     */
+    public static Object erase(Object root, String path) {
+        var tokens = tokenize(path);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        return erase(root, tokens, 0);
+    }
+
+    private static Object set(Object node, List<Object> tokens, int i, Object value) {
+        if (i == tokens.size()) {
+            return value;
+        }
+
+        Object token = tokens.get(i);
+        int index = index(token);
+        if (token instanceof Integer || node instanceof List && index >= 0) {
+            List<Object> list = node instanceof List ? new ArrayList<>((List<?>) node) : new ArrayList<>();
+            while (list.size() <= index) {
+                list.add(null);
+            }
+            list.set(index, set(list.get(index), tokens, i + 1, value));
+            return Collections.unmodifiableList(list);
+        }
+
+        Map<String, Object> map = node instanceof Map ? new LinkedHashMap<>(cast(node)) : new LinkedHashMap<>();
+        String key = token.toString();
+        map.put(key, set(map.get(key), tokens, i + 1, value));
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static Object erase(Object node, List<Object> tokens, int i) {
+        Object token = tokens.get(i);
+        boolean last = i == tokens.size() - 1;
+        if (node instanceof List && index(token) >= 0) {
+            int index = index(token);
+            var list = (List<?>) node;
+            if (index >= list.size()) {
+                return node;
+            }
+            List<Object> copy = new ArrayList<>(list);
+            if (last) {
+                copy.remove(index);
+            } else {
+                copy.set(index, erase(copy.get(index), tokens, i + 1));
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        if (node instanceof Map) {
+            Map<String, Object> map = cast(node);
+            String key = token.toString();
+            if (!map.containsKey(key)) {
+                return node;
+            }
+            Map<String, Object> copy = new LinkedHashMap<>(map);
+            if (last) {
+                copy.remove(key);
+            } else {
+                copy.put(key, erase(copy.get(key), tokens, i + 1));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+        return node;
+    }
+
+    /**
+     * Splits {@code a.b[2]} into {@code "a", "b", 2}, bracket indices become integers.
+     */
+    static List<Object> tokenize(String path) {
+        List<Object> tokens = new ArrayList<>();
+        if (path == null || path.isEmpty()) {
+            return tokens;
+        }
+
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            char c = i < path.length() ? path.charAt(i) : '.';
+            if (c == '.' || c == '[') {
+                if (i > start) {
+                    tokens.add(path.substring(start, i));
+                }
+                start = i + 1;
+                if (c == '[') {
+                    int end = path.indexOf(']', start);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Invalid path: " + path);
+                    }
+                    tokens.add(Integer.parseInt(path.substring(start, end).trim()));
+                    i = end;
+                    start = end + 1;
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static int index(Object token) {
+        if (token instanceof Integer) {
+            return (Integer) token;
+        }
+        String key = token.toString();
+        for (int i = 0; i < key.length(); i++) {
+            if (!Character.isDigit(key.charAt(i))) {
+                return -1;
+            }
+        }
+        return key.isEmpty() || key.length() > 9 ? -1 : Integer.parseInt(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> cast(Object map) {
+        return (Map<String, Object>) map;
+    }
+
+    private static void write(Object value, StringBuilder out) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            writeString((String) value, out);
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(String.valueOf(entry.getKey()), out);
+                out.append(':');
+                write(entry.getValue(), out);
+            }
+            out.append('}');
+        } else if (value instanceof List) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : (List<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                write(element, out);
+            }
+            out.append(']');
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                out.append("null");
+            } else if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                out.append((long) d);
+            } else {
+                out.append(d);
+            }
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else {
+            writeString(value.toString(), out);
+        }
+    }
+
+    private static void writeString(String value, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static class Parser {
+        final String json;
+        int position;
+
+        Parser(String json) {
+            this.json = json;
+        }
+
+        Object readValue() {
+            if (position >= json.length()) {
+                throw error("Unexpected end");
+            }
+
+            char c = json.charAt(position);
+            switch (c) {
+                case '{':
+                    return readObject();
+                case '[':
+                    return readArray();
+                case '"':
+                    return readString();
+                case 't':
+                    expect("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    expect("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    expect("null");
+                    return null;
+                default:
+                    return readNumber();
+            }
+        }
+
+        Map<String, Object> readObject() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            position++;
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return Collections.unmodifiableMap(map);
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("Expected key");
+                }
+                String key = readString();
+                skipWhitespace();
+                if (peek() != ':') {
+                    throw error("Expected ':'");
+                }
+                position++;
+                skipWhitespace();
+                map.put(key, readValue());
+                skipWhitespace();
+                char c = peek();
+                position++;
+                if (c == '}') {
+                    return Collections.unmodifiableMap(map);
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        List<Object> readArray() {
+            List<Object> list = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return Collections.unmodifiableList(list);
+            }
+            while (true) {
+                skipWhitespace();
+                list.add(readValue());
+                skipWhitespace();
+                char c = peek();
+                position++;
+                if (c == ']') {
+                    return Collections.unmodifiableList(list);
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or ']'");
+                }
+            }
+        }
+
+        String readString() {
+            position++;
+            StringBuilder builder = null;
+            int start = position;
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if (c == '"') {
+                    String value = builder == null ? json.substring(start, position)
+                            : builder.append(json, start, position).toString();
+                    position++;
+                    return value;
+                }
+                if (c == '\\') {
+                    if (builder == null) {
+                        builder = new StringBuilder();
+                    }
+                    builder.append(json, start, position);
+                    builder.append(readEscape());
+                    start = position;
+                } else {
+                    position++;
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        char readEscape() {
+            position++;
+            if (position >= json.length()) {
+                throw error("Unterminated escape");
+            }
+            char c = json.charAt(position++);
+            switch (c) {
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'u':
+                    if (position + 4 > json.length()) {
+                        throw error("Invalid unicode escape");
+                    }
+                    char unicode = (char) Integer.parseInt(json.substring(position, position + 4), 16);
+                    position += 4;
+                    return unicode;
+                default:
+                    return c;
+            }
+        }
+
+        Object readNumber() {
+            int start = position;
+            boolean decimal = false;
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    decimal = true;
+                } else if (!(c == '-' || c == '+' || c >= '0' && c <= '9')) {
+                    break;
+                }
+                position++;
+            }
+            if (start == position) {
+                throw error("Unexpected character");
+            }
+
+            String number = json.substring(start, position);
+            try {
+                if (!decimal) {
+                    return Long.parseLong(number);
+                }
+            } catch (NumberFormatException e) {
+                // 超出long范围，按浮点数处理
+            }
+            try {
+                return Double.parseDouble(number);
+            } catch (NumberFormatException e) {
+                throw error("Invalid number " + number);
+            }
+        }
+
+        void expect(String literal) {
+            if (!json.startsWith(literal, position)) {
+                throw error("Expected " + literal);
+            }
+            position += literal.length();
+        }
+
+        char peek() {
+            if (position >= json.length()) {
+                throw error("Unexpected end");
+            }
+            return json.charAt(position);
+        }
+
+        void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + position);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Requests waiting for a response, keyed by correlation ID.
+ * <p>
+ * Every request has the same timeout, so deadlines expire in registration order. They are kept in a FIFO queue which
+ * {@link #expire()} trims from the head, there is no scheduled task per request.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class PendingRequests {
+    long timeoutNanos;
+    LongSupplier nanoClock;
+    AtomicLong counter = new AtomicLong();
+    Map<String, CompletableFuture<Object>> requests = new ConcurrentHashMap<>();
+    Queue<Deadline> deadlines = new ConcurrentLinkedQueue<>();
+
+    public PendingRequests(Duration timeout) {
+        this(timeout, System::nanoTime);
+    }
+
+    public PendingRequests(Duration timeout, LongSupplier nanoClock) {
+        this.timeoutNanos = timeout.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    public String nextId() {
+        return Long.toString(counter.incrementAndGet(), Character.MAX_RADIX);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> register(String correlationId) {
+        var future = new CompletableFuture<Object>();
+        requests.put(correlationId, future);
+        deadlines.offer(new Deadline(correlationId, nanoClock.getAsLong() + timeoutNanos));
+        return (CompletableFuture<T>) future;
+    }
+
+    public boolean complete(String correlationId, Object value) {
+        CompletableFuture<Object> future = requests.remove(correlationId);
+        return future != null && future.complete(value);
+    }
+
+    public boolean fail(String correlationId, Throwable error) {
+        CompletableFuture<Object> future = requests.remove(correlationId);
+        return future != null && future.completeExceptionally(error);
+    }
+
+    public boolean isPending(String correlationId) {
+        return requests.containsKey(correlationId);
+    }
+
+    /**
+     * Fails every request whose deadline passed.
+     *
+     * @return the number of requests that timed out
+     */
+    public int expire() {
+        long now = nanoClock.getAsLong();
+        int expired = 0;
+        Deadline deadline;
+        while ((deadline = deadlines.peek()) != null && now - deadline.expiresAt >= 0) {
+            deadlines.poll();
+            if (fail(deadline.correlationId, new TimeoutException("No response for request " + deadline.correlationId))) {
+                expired++;
+            }
+        }
+
+        return expired;
+    }
+
+    public void failAll(Throwable error) {
+        requests.keySet().forEach(correlationId -> fail(correlationId, error));
+        deadlines.clear();
+    }
+
+    public int size() {
+        return requests.size();
+    }
+
+    @AllArgsConstructor
+    private static class Deadline {
+        final String correlationId;
+        final long expiresAt;
+    }
+}
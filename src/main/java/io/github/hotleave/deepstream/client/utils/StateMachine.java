@@ -1,67 +1,194 @@
 package io.github.hotleave.deepstream.client.utils;
 
-import io.github.hotleave.deepstream.client.connection.ConnectionState;
-import lombok.*;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 
-@FieldDefaults(level = AccessLevel.PRIVATE)
-@RequiredArgsConstructor
+/**
+ * Table driven state machine over enum states and transitions. The transition list is compiled into one array per
+ * transition indexed by the source state, the current state is swapped by compare-and-set so transitions may be fired
+ * from any thread.
+ * <p>
+ * The last {@link #HISTORY_SIZE} transitions are kept in a ring of packed longs for diagnostics, a transition
+ * allocates nothing.
+ */
 @Slf4j
-public class StateMachine {
-    final List<Transition> transitions;
-    final BiConsumer<ConnectionState, ConnectionState> stateChangeListener;
-    final List<Map<String, Object>> history = new ArrayList<>();
-    @Getter
-    ConnectionState state = ConnectionState.CLOSED;
-
-    public void transition(String name) {
-        for (Transition transition : transitions) {
-            if (Objects.equals(transition.name, name) && (state == transition.from || transition.from == null)) {
-                history.add(Map.ofEntries(
-                        Map.entry("oldState", state),
-                        Map.entry("newState", transition.to),
-                        Map.entry("transitionName", name)
-                ));
-                var oldState = state;
-                state = transition.to;
-
-                if (stateChangeListener != null) {
-                    stateChangeListener.accept(state, oldState);
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StateMachine<S extends Enum<S>, T extends Enum<T>> {
+    public static final int HISTORY_SIZE = 32;
+
+    S[] states;
+    T[] types;
+    EnumMap<T, Transition<S, T>[]> table;
+    EnumMap<S, List<BiConsumer<S, S>>> stateListeners;
+    BiConsumer<S, S> stateChangeListener;
+    AtomicReference<S> state;
+    // 每条记录：相对创建时间的毫秒数 << 24 | 转换 << 16 | 原状态 << 8 | 新状态
+    AtomicLongArray history = new AtomicLongArray(HISTORY_SIZE);
+    AtomicLong sequence = new AtomicLong();
+    long created = System.currentTimeMillis();
+
+    /**
+     * @param transitions a transition from null applies to every state without an explicit one, the first transition
+     *                    listed for a type and state wins
+     * @param stateChangeListener called after every transition, also when the state stays the same, may be null
+     */
+    @SuppressWarnings("unchecked")
+    public StateMachine(Class<S> stateType, Class<T> transitionType, S initialState,
+                        List<Transition<S, T>> transitions, BiConsumer<S, S> stateChangeListener) {
+        this.states = stateType.getEnumConstants();
+        this.types = transitionType.getEnumConstants();
+        if (states.length > 0xff || types.length > 0xff) {
+            throw new IllegalArgumentException("At most 255 states and transitions are supported");
+        }
+
+        this.table = new EnumMap<>(transitionType);
+        for (T type : types) {
+            table.put(type, new Transition[states.length]);
+        }
+        for (Transition<S, T> transition : transitions) {
+            if (transition.from != null) {
+                var row = table.get(transition.type);
+                if (row[transition.from.ordinal()] == null) {
+                    row[transition.from.ordinal()] = transition;
                 }
+            }
+        }
+        for (Transition<S, T> transition : transitions) {
+            if (transition.from == null) {
+                var row = table.get(transition.type);
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] == null) {
+                        row[i] = transition;
+                    }
+                }
+            }
+        }
 
+        // 预先为每个状态建好列表，之后只读，无需加锁
+        this.stateListeners = new EnumMap<>(stateType);
+        for (S s : states) {
+            stateListeners.put(s, new CopyOnWriteArrayList<>());
+        }
+        this.stateChangeListener = stateChangeListener;
+        this.state = new AtomicReference<>(initialState);
+    }
+
+    public S getState() {
+        return state.get();
+    }
+
+    /**
+     * @return false if the transition is not allowed in the current state, the state is left unchanged
+     */
+    public boolean transition(T type) {
+        var row = table.get(type);
+        while (true) {
+            S current = state.get();
+            var transition = row[current.ordinal()];
+            if (transition == null) {
+                log.error("Invalid state transition {} in state {}, history: {}", type, current, getHistory());
+                return false;
+            }
+
+            if (state.compareAndSet(current, transition.to)) {
+                record(type, current, transition.to);
+                notifyListeners(transition.to, current);
                 if (transition.handler != null) {
                     transition.handler.run();
                 }
-
-                return;
+                return true;
             }
         }
+    }
 
-        // From initial state to current state
-        log.error("Invalid state transition: {}, [state={}, transitionName={}]", history, state, name);
+    /**
+     * Calls the listener whenever the machine enters the state from another one, after the state change listener.
+     */
+    public void addListener(S state, BiConsumer<S, S> listener) {
+        stateListeners.get(state).add(listener);
     }
 
-    @Data
+    public void removeListener(S state, BiConsumer<S, S> listener) {
+        stateListeners.get(state).remove(listener);
+    }
+
+    /**
+     * The last transitions, oldest first.
+     */
+    public List<HistoryEntry<S, T>> getHistory() {
+        long end = sequence.get();
+        List<HistoryEntry<S, T>> entries = new ArrayList<>();
+        for (long i = Math.max(0, end - HISTORY_SIZE); i < end; i++) {
+            long entry = history.get((int) (i % HISTORY_SIZE));
+            entries.add(new HistoryEntry<>(types[(int) (entry >>> 16) & 0xff], states[(int) (entry >>> 8) & 0xff],
+                    states[(int) entry & 0xff], created + (entry >>> 24)));
+        }
+        return entries;
+    }
+
+    private void record(T type, S from, S to) {
+        long elapsed = System.currentTimeMillis() - created;
+        long entry = elapsed << 24 | (long) type.ordinal() << 16 | from.ordinal() << 8 | to.ordinal();
+        history.set((int) (sequence.getAndIncrement() % HISTORY_SIZE), entry);
+    }
+
+    private void notifyListeners(S newState, S oldState) {
+        if (stateChangeListener != null) {
+            stateChangeListener.accept(newState, oldState);
+        }
+        if (newState == oldState) {
+            return;
+        }
+
+        for (BiConsumer<S, S> listener : stateListeners.get(newState)) {
+            try {
+                listener.accept(newState, oldState);
+            } catch (RuntimeException e) {
+                log.error("State listener failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    @Getter
     @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
     @AllArgsConstructor
-    public static class Transition {
-        String name;
-        ConnectionState from;
-        ConnectionState to;
+    @ToString
+    public static class Transition<S, T> {
+        T type;
+        S from;
+        S to;
         Runnable handler;
 
-        public Transition(String name, ConnectionState from, ConnectionState to) {
-            this.name = name;
-            this.from = from;
-            this.to = to;
-            handler = null;
+        public Transition(T type, S from, S to) {
+            this(type, from, to, null);
+        }
+    }
+
+    @Getter
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class HistoryEntry<S, T> {
+        T transition;
+        S from;
+        S to;
+        long timestamp;
+
+        @Override
+        public String toString() {
+            return from + " -" + transition + "-> " + to;
         }
     }
 }
@@ -0,0 +1,152 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs tasks on a fixed set of single threaded lanes. Tasks with the same key always land on the same lane, so they
+ * run in submission order while different keys spread over all lanes.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StripedExecutor {
+    public enum OverflowPolicy {
+        /**
+         * Wait for room in the lane, this pushes back on the caller (usually the socket's I/O thread).
+         */
+        BLOCK,
+        /**
+         * Discard the oldest queued task of the lane.
+         */
+        DROP_OLDEST,
+        /**
+         * Throw {@link RejectedExecutionException}.
+         */
+        FAIL
+    }
+
+    Lane[] lanes;
+    OverflowPolicy overflowPolicy;
+    LongAdder dropped = new LongAdder();
+
+    /**
+     * @param laneCount number of lanes, 0 runs every task on the calling thread
+     */
+    public StripedExecutor(String name, int laneCount, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(name + "-" + i, queueCapacity);
+            lanes[i].start();
+        }
+    }
+
+    public void execute(Object key, Runnable task) {
+        if (lanes.length == 0) {
+            run(task);
+            return;
+        }
+
+        int hash = key == null ? 0 : key.hashCode();
+        hash ^= hash >>> 16;
+        lanes[Math.floorMod(hash, lanes.length)].enqueue(task);
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.queue.size();
+        }
+
+        return depth;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public void shutdown() {
+        for (Lane lane : lanes) {
+            lane.interrupt();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lane lane : lanes) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedJoin(lane, remaining);
+            if (lane.isAlive()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.error("Dispatch task failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private class Lane extends Thread {
+        final BlockingQueue<Runnable> queue;
+
+        Lane(String name, int capacity) {
+            super(name);
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void enqueue(Runnable task) {
+            if (queue.offer(task)) {
+                return;
+            }
+
+            switch (overflowPolicy) {
+                case BLOCK:
+                    try {
+                        queue.put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for " + getName());
+                    }
+                    break;
+                case DROP_OLDEST:
+                    while (!queue.offer(task)) {
+                        if (queue.poll() != null) {
+                            dropped.increment();
+                        }
+                    }
+                    break;
+                default:
+                    dropped.increment();
+                    throw new RejectedExecutionException("Dispatch lane " + getName() + " is full");
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    StripedExecutor.run(queue.take());
+                }
+            } catch (InterruptedException e) {
+                // shutdown
+            }
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package io.github.hotleave.deepstream.client;
 
-import jakarta.websocket.DeploymentException;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -12,7 +11,7 @@ import java.net.URISyntaxException;
 @Disabled
 class ClientTest {
     @Test
-    void testConnection() throws DeploymentException, URISyntaxException, IOException, InterruptedException {
+    void testConnection() throws URISyntaxException, IOException, InterruptedException {
         Client client = new Client("ws://127.0.0.1:6020/deepstream");
         client.login();
 
@@ -0,0 +1,66 @@
+package io.github.hotleave.deepstream.client.codec;
+
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadTest {
+    @Test
+    void roundTripJson() {
+        var payload = Payload.of(Map.of("id", 7L, "tags", List.of("a", "b")), JsonCodec.INSTANCE);
+
+        Map<?, ?> value = payload.as(Map.class);
+        assertEquals(7L, value.get("id"));
+        assertEquals(List.of("a", "b"), value.get("tags"));
+        assertSame(payload, payload.as(Payload.class));
+    }
+
+    @Test
+    void stringsAndBytesAreNotParsed() {
+        var data = ByteString.copyFromUtf8("{\"broken\"");
+        var payload = new Payload(data, JsonCodec.INSTANCE);
+
+        assertEquals("{\"broken\"", payload.asString());
+        assertSame(data, payload.as(ByteString.class));
+        assertSame(data, Payload.of(data, JsonCodec.INSTANCE).getBytes());
+    }
+
+    @Test
+    void decodedOnceForTheSameType() {
+        var decodes = new AtomicInteger();
+        var codec = new JsonCodec() {
+            @Override
+            public <T> T decode(ByteString data, Class<T> type) {
+                decodes.incrementAndGet();
+                return super.decode(data, type);
+            }
+        };
+        var payload = new Payload(ByteString.copyFromUtf8("[1,2]"), codec);
+
+        var first = payload.as(List.class);
+        assertSame(first, payload.as(List.class));
+        assertEquals(1, decodes.get());
+    }
+
+    @Test
+    void rejectMismatchedType() {
+        var payload = new Payload(ByteString.copyFromUtf8("[1,2]"), JsonCodec.INSTANCE);
+
+        assertThrows(IllegalArgumentException.class, () -> payload.as(Map.class));
+    }
+
+    @Test
+    void rejectBytesThatAreNotUtf8() {
+        byte[] invalid = {(byte) 0xc3, (byte) 0x28};
+
+        assertThrows(IllegalArgumentException.class, () -> JsonCodec.INSTANCE.encode(invalid));
+        assertThrows(IllegalArgumentException.class, () -> JsonCodec.INSTANCE.encode(ByteString.copyFrom(invalid)));
+        assertEquals("é", JsonCodec.INSTANCE.encode("é".getBytes(StandardCharsets.UTF_8)).toStringUtf8());
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientRuntimeTest {
+    @Test
+    void connectionsShareThreads() throws Exception {
+        var options = ConnectionOptions.builder().dispatchThreads(2).build();
+        try (var runtime = new ClientRuntime(options)) {
+            int threads = Thread.activeCount();
+
+            List<Connection> connections = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                connections.add(new Connection("ws://127.0.0.1:6020/deepstream", options, runtime));
+            }
+
+            assertEquals(1000, runtime.getConnectionCount());
+            assertTrue(Thread.activeCount() <= threads + 1, "threads grew from " + threads + " to " + Thread.activeCount());
+
+            connections.forEach(Connection::close);
+            assertEquals(0, runtime.getConnectionCount());
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import io.deepstream.protobuf.Auth;
+import io.deepstream.protobuf.Connection.CONNECTION_ACTION;
+import io.deepstream.protobuf.Connection.ConnectionMessage;
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.transport.LoopbackTransport;
+import io.github.hotleave.deepstream.client.transport.TransportListener;
+import io.github.hotleave.deepstream.client.transport.TransportSession;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionTest {
+    @Test
+    void replayOffTheTransportThreadWithinWindow() throws Exception {
+        var options = ConnectionOptions.builder()
+                .dispatchThreads(1)
+                .inFlightHighWatermarkMessages(4)
+                .inFlightLowWatermarkMessages(2)
+                .build();
+        List<String> received = new CopyOnWriteArrayList<>();
+        Set<String> replayThreads = ConcurrentHashMap.newKeySet();
+        var maxInFlight = new AtomicInteger();
+        var io = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "loopback-io"));
+        // 写完的回调延后触发，发送窗口才会被占满
+        var writer = Executors.newSingleThreadScheduledExecutor();
+        var loopback = new LoopbackTransport(uri -> new Server(received), io);
+        Connection[] connection = new Connection[1];
+
+        try (var runtime = new ClientRuntime(options, (uri, listener) -> {
+            TransportSession session = loopback.connect(uri, listener);
+            return new TransportSession() {
+                @Override
+                public void send(ByteBuffer frame, Consumer<Throwable> callback) {
+                    if (topicOf(frame) == General.TOPIC.EVENT) {
+                        replayThreads.add(Thread.currentThread().getName());
+                        maxInFlight.accumulateAndGet(connection[0].getInFlightMessages(), Math::max);
+                    }
+                    session.send(frame, error -> writer.schedule(() -> callback.accept(error), 2, TimeUnit.MILLISECONDS));
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return session.isOpen();
+                }
+
+                @Override
+                public void close(int code, String reason) {
+                    session.close(code, reason);
+                }
+            };
+        })) {
+            connection[0] = new Connection("ws://loopback/deepstream", options, runtime);
+            List<CompletableFuture<Void>> sent = new ArrayList<>();
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                expected.add("event/" + i);
+                sent.add(connection[0].sendMessageAsync(General.TOPIC.EVENT, emit("event/" + i)));
+            }
+            assertEquals(20, connection[0].getOfflineBuffer().size());
+
+            connection[0].connectAsync().get(5, TimeUnit.SECONDS);
+            CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.size() < expected.size() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(expected, received);
+            assertTrue(maxInFlight.get() <= 4, "in flight " + maxInFlight.get());
+            assertFalse(replayThreads.contains("loopback-io"), "replayed on " + replayThreads);
+            connection[0].close();
+        } finally {
+            writer.shutdownNow();
+            io.shutdownNow();
+        }
+    }
+
+    @Test
+    void openBufferBeforeConnectCompletes() throws Exception {
+        var options = ConnectionOptions.builder().dispatchThreads(1).build();
+        List<String> received = new CopyOnWriteArrayList<>();
+        try (var runtime = new ClientRuntime(options, new LoopbackTransport(uri -> new Server(received)))) {
+            var connection = new Connection("ws://loopback/deepstream", options, runtime);
+            connection.connectAsync().get(5, TimeUnit.SECONDS);
+
+            // 没有要重放的消息时不经过缓冲直接发送
+            connection.sendMessage(General.TOPIC.EVENT, emit("event/0"));
+            assertEquals(0, connection.getOfflineBuffer().getBufferedCount());
+            connection.close();
+        }
+    }
+
+    @Test
+    void reconnectWhenNothingIsReceived() throws Exception {
+        var options = ConnectionOptions.builder()
+                .dispatchThreads(1)
+                .heartbeatInterval(Duration.ofMillis(100))
+                .build();
+        try (var runtime = new ClientRuntime(options, new LoopbackTransport(uri -> new Server(new ArrayList<>())))) {
+            var connection = new Connection("ws://loopback/deepstream", options, runtime);
+            var reconnect = new CompletableFuture<Integer>();
+            connection.addListener(new ConnectionListener() {
+                @Override
+                public void onReconnectAttempt(int attempt, Duration delay) {
+                    reconnect.complete(attempt);
+                }
+            });
+            connection.connectAsync().get(5, TimeUnit.SECONDS);
+
+            // 服务端不回应ping
+            assertEquals(1, reconnect.get(5, TimeUnit.SECONDS));
+            connection.close();
+        }
+    }
+
+    @Test
+    void ignoreCallbacksOfSupersededSession() throws Exception {
+        var options = ConnectionOptions.builder()
+                .dispatchThreads(1)
+                .reconnectInitialDelay(Duration.ofMillis(10))
+                .build();
+        var loopback = new LoopbackTransport(uri -> new Server(new ArrayList<>()));
+        List<TransportListener> listeners = new CopyOnWriteArrayList<>();
+        List<TransportSession> sessions = new CopyOnWriteArrayList<>();
+        try (var runtime = new ClientRuntime(options, (uri, listener) -> {
+            listeners.add(listener);
+            TransportSession session = loopback.connect(uri, listener);
+            sessions.add(session);
+            return session;
+        })) {
+            var connection = new Connection("ws://loopback/deepstream", options, runtime);
+            var attempts = new AtomicInteger();
+            var reopened = new CompletableFuture<Void>();
+            connection.addListener(new ConnectionListener() {
+                @Override
+                public void onStateChanged(ConnectionState newState, ConnectionState oldState) {
+                    if (newState == ConnectionState.OPEN && attempts.get() > 0) {
+                        reopened.complete(null);
+                    }
+                }
+
+                @Override
+                public void onReconnectAttempt(int attempt, Duration delay) {
+                    attempts.incrementAndGet();
+                }
+            });
+            connection.connectAsync().get(5, TimeUnit.SECONDS);
+            sessions.get(0).close(TransportSession.GOING_AWAY, "Lost");
+            reopened.get(5, TimeUnit.SECONDS);
+
+            // 旧会话迟到的回调不能再触发重连
+            listeners.get(0).onError(new IOException("Late error"));
+            listeners.get(0).onClose(TransportSession.GOING_AWAY, "Late close");
+            Thread.sleep(100);
+
+            assertEquals(1, attempts.get());
+            assertEquals(2, sessions.size());
+            assertEquals(ConnectionState.OPEN, connection.getConnectionState());
+            connection.close();
+        }
+    }
+
+    private static Event.EventMessage emit(String name) {
+        return Event.EventMessage.newBuilder()
+                .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+                .setName(name)
+                .build();
+    }
+
+    private static General.TOPIC topicOf(ByteBuffer frame) {
+        try {
+            return MessageDecoder.decode(frame.duplicate()).getTopic();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Accepts every login and records the names of the emitted events.
+     */
+    private static class Server implements TransportListener {
+        private final List<String> received;
+        private TransportSession session;
+
+        Server(List<String> received) {
+            this.received = received;
+        }
+
+        @Override
+        public void onOpen(TransportSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public void onMessage(ByteBuffer fragment, boolean last) {
+            try {
+                while (fragment.hasRemaining()) {
+                    handle(MessageDecoder.decode(fragment));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void handle(InboundMessage message) throws IOException {
+            switch (message.getTopic()) {
+                case CONNECTION:
+                    var action = message.getMessage(ConnectionMessage.parser()).getAction();
+                    if (action == CONNECTION_ACTION.CONNECTION_CHALLENGE) {
+                        send(General.TOPIC.CONNECTION, ConnectionMessage.newBuilder()
+                                .setAction(CONNECTION_ACTION.CONNECTION_ACCEPT).build());
+                    }
+                    break;
+                case AUTH:
+                    send(General.TOPIC.AUTH, Auth.AuthMessage.newBuilder()
+                            .setAction(Auth.AUTH_ACTION.AUTH_AUTH_SUCCESSFUL).setData("{}").build());
+                    break;
+                case EVENT:
+                    received.add(message.getMessage(Event.EventMessage.parser()).getName());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void send(General.TOPIC topic, MessageLite msg) throws IOException {
+            byte[] frame = new byte[MessageEncoder.delimitedSize(topic, msg)];
+            MessageEncoder.writeDelimited(topic, msg, CodedOutputStream.newInstance(frame));
+            session.send(ByteBuffer.wrap(frame), error -> {
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onClose(int code, String reason) {
+        }
+    }
+}
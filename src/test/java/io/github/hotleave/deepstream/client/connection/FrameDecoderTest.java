@@ -0,0 +1,135 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameDecoderTest {
+    private final List<InboundMessage> messages = new ArrayList<>();
+
+    @Test
+    void decodeEveryRecordInFrame() throws Exception {
+        var decoder = new FrameDecoder(1024);
+        decoder.decode(frame(5), messages::add);
+
+        assertEquals(5, messages.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("event/" + i, messages.get(i).getMessage(Event.EventMessage.parser()).getName());
+        }
+    }
+
+    @Test
+    void carryLeftoverAcrossFragments() throws Exception {
+        byte[] frame = frame(3);
+        for (int split = 1; split < frame.length; split++) {
+            messages.clear();
+            var decoder = new FrameDecoder(1024);
+            decoder.decode(ByteBuffer.wrap(Arrays.copyOfRange(frame, 0, split)), false, messages::add);
+            decoder.decode(ByteBuffer.wrap(Arrays.copyOfRange(frame, split, frame.length)), true, messages::add);
+
+            assertEquals(3, messages.size(), "split at " + split);
+            assertEquals("event/2", messages.get(2).getMessage(Event.EventMessage.parser()).getName());
+            assertFalse(decoder.hasPending());
+        }
+    }
+
+    @Test
+    void byteByByte() throws Exception {
+        byte[] frame = frame(4);
+        var decoder = new FrameDecoder(1024);
+        for (int i = 0; i < frame.length; i++) {
+            decoder.decode(ByteBuffer.wrap(frame, i, 1), i == frame.length - 1, messages::add);
+        }
+
+        assertEquals(4, messages.size());
+    }
+
+    @Test
+    void discardTruncatedTail() throws Exception {
+        byte[] frame = frame(2);
+        var decoder = new FrameDecoder(1024);
+        decoder.decode(ByteBuffer.wrap(frame, 0, frame.length - 3), true, messages::add);
+
+        assertEquals(1, messages.size());
+        assertFalse(decoder.hasPending());
+    }
+
+    @Test
+    void rejectOversizedMessage() {
+        var decoder = new FrameDecoder(16);
+
+        assertThrows(MessageTooLargeException.class,
+                () -> decoder.decode(ByteBuffer.wrap(frame(1), 0, 2), false, messages::add));
+    }
+
+    @Test
+    void resetDropsBytesOfLostSession() throws Exception {
+        byte[] frame = frame(2);
+        var decoder = new FrameDecoder(1024);
+        decoder.decode(ByteBuffer.wrap(frame, 0, frame.length - 3), false, messages::add);
+        assertTrue(decoder.hasPending());
+
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(frame), true, messages::add);
+
+        assertEquals(3, messages.size());
+        assertEquals("event/0", messages.get(1).getMessage(Event.EventMessage.parser()).getName());
+        assertEquals("event/1", messages.get(2).getMessage(Event.EventMessage.parser()).getName());
+    }
+
+    @Test
+    void largeRecordInManyFragments() throws Exception {
+        String data = "x".repeat(1024 * 1024);
+        var output = new ByteArrayOutputStream();
+        output.write(frame(1));
+        General.Message.newBuilder()
+                .setTopic(General.TOPIC.EVENT)
+                .setMessage(Event.EventMessage.newBuilder().setName("large").setData(data).build().toByteString())
+                .build()
+                .writeDelimitedTo(output);
+        output.write(frame(1));
+        byte[] frame = output.toByteArray();
+
+        var decoder = new FrameDecoder(2 * 1024 * 1024);
+        int fragmentSize = 1000;
+        for (int offset = 0; offset < frame.length; offset += fragmentSize) {
+            int length = Math.min(fragmentSize, frame.length - offset);
+            decoder.decode(ByteBuffer.wrap(frame, offset, length), offset + length == frame.length, messages::add);
+        }
+
+        assertEquals(3, messages.size());
+        var large = messages.get(1).getMessage(Event.EventMessage.parser());
+        assertEquals("large", large.getName());
+        assertEquals(data, large.getData());
+        // 已交付消息的字节不会被之后的片段覆盖
+        assertEquals("event/0", Event.EventMessage.parseFrom(messages.get(0).getPayload()).getName());
+        assertEquals("event/0", messages.get(2).getMessage(Event.EventMessage.parser()).getName());
+        assertFalse(decoder.hasPending());
+    }
+
+    private static byte[] frame(int count) throws Exception {
+        var output = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            General.Message.newBuilder()
+                    .setTopic(General.TOPIC.EVENT)
+                    .setMessage(Event.EventMessage.newBuilder()
+                            .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+                            .setName("event/" + i)
+                            .setData("\"data\"")
+                            .build()
+                            .toByteString())
+                    .build()
+                    .writeDelimitedTo(output);
+        }
+
+        return output.toByteArray();
+    }
+}
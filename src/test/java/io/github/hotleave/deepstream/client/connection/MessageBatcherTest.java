@@ -0,0 +1,150 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.utils.BufferPool;
+import io.github.hotleave.deepstream.client.utils.HashedWheelTimer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageBatcherTest {
+    private final HashedWheelTimer scheduler = new HashedWheelTimer("test", Duration.ofMillis(10), 8, () -> 0, false);
+    private final BufferPool bufferPool = new BufferPool(64 * 1024, 4, false);
+    private final List<ByteBuffer> frames = new ArrayList<>();
+    private final MessageBatcher.FrameSink collect = (frame, messages, completions) -> {
+        frames.add(frame);
+        MessageBatcher.complete(completions, null);
+    };
+
+    @Test
+    void flushImmediatelyWhenWindowDisabled() throws Exception {
+        var batcher = new MessageBatcher(Duration.ZERO, 1024, bufferPool, scheduler, collect);
+        batcher.add(General.TOPIC.EVENT, emit("a"));
+        batcher.add(General.TOPIC.EVENT, emit("b"));
+
+        assertEquals(2, frames.size());
+        assertEquals(1.0, batcher.getAverageBatchSize());
+    }
+
+    @Test
+    void coalesceWithinWindow() throws Exception {
+        var batcher = new MessageBatcher(Duration.ofHours(1), 64 * 1024, bufferPool, scheduler, collect);
+        for (int i = 0; i < 10; i++) {
+            batcher.add(General.TOPIC.EVENT, emit("event/" + i));
+        }
+        assertEquals(0, frames.size());
+
+        batcher.flush();
+        assertEquals(1, frames.size());
+        assertEquals(10.0, batcher.getAverageBatchSize());
+
+        var frame = frames.get(0);
+        var input = new ByteArrayInputStream(frame.array(), frame.position(), frame.remaining());
+        for (int i = 0; i < 10; i++) {
+            var message = General.Message.parseDelimitedFrom(input);
+            assertEquals("event/" + i, Event.EventMessage.parseFrom(message.getMessage()).getName());
+        }
+        assertNull(General.Message.parseDelimitedFrom(input));
+    }
+
+    @Test
+    void flushWhenByteBudgetReached() throws Exception {
+        var batcher = new MessageBatcher(Duration.ofHours(1), 64, bufferPool, scheduler, collect);
+        for (int i = 0; i < 10; i++) {
+            batcher.add(General.TOPIC.EVENT, emit("event/" + i));
+        }
+
+        assertEquals(3, frames.size());
+        assertEquals(9, batcher.getMessageCount());
+    }
+
+    @Test
+    void reusePooledBuffers() throws Exception {
+        var batcher = new MessageBatcher(Duration.ZERO, 1024, bufferPool, scheduler,
+                (frame, messages, completions) -> bufferPool.release(frame));
+        for (int i = 0; i < 100; i++) {
+            batcher.add(General.TOPIC.EVENT, emit("event/" + i));
+        }
+
+        assertEquals(1, bufferPool.getAllocationCount());
+    }
+
+    @Test
+    void sizeFramesToTheirContent() throws Exception {
+        // 模拟异步发送，帧在释放前一直处于发送中
+        List<ByteBuffer> inFlight = new ArrayList<>();
+        var pool = new BufferPool(64 * 1024, 1000, false);
+        var batcher = new MessageBatcher(Duration.ZERO, 64 * 1024, pool, scheduler,
+                (frame, messages, completions) -> inFlight.add(frame));
+        for (int i = 0; i < 1000; i++) {
+            batcher.add(General.TOPIC.EVENT, emit("event/" + i));
+        }
+
+        assertEquals(1000, inFlight.size());
+        assertTrue(inFlight.stream().allMatch(frame -> frame.capacity() == BufferPool.MIN_BUFFER_SIZE));
+        inFlight.forEach(pool::release);
+        inFlight.clear();
+
+        for (int i = 0; i < 1000; i++) {
+            batcher.add(General.TOPIC.EVENT, emit("event/" + i));
+        }
+        assertEquals(1000, pool.getAllocationCount());
+    }
+
+    @Test
+    void growBatchIntoLargerBuffer() throws Exception {
+        var batcher = new MessageBatcher(Duration.ofHours(1), 64 * 1024, bufferPool, scheduler, collect);
+        for (int i = 0; i < 100; i++) {
+            batcher.add(General.TOPIC.EVENT, emit("event/" + i));
+        }
+        batcher.flush();
+
+        var frame = frames.get(0);
+        assertTrue(frame.capacity() < 2 * frame.remaining(), "capacity " + frame.capacity());
+        var input = new ByteArrayInputStream(frame.array(), frame.position(), frame.remaining());
+        for (int i = 0; i < 100; i++) {
+            var message = General.Message.parseDelimitedFrom(input);
+            assertEquals("event/" + i, Event.EventMessage.parseFrom(message.getMessage()).getName());
+        }
+        assertNull(General.Message.parseDelimitedFrom(input));
+    }
+
+    @Test
+    void releaseFrameWhenSinkFails() throws Exception {
+        var batcher = new MessageBatcher(Duration.ZERO, 1024, bufferPool, scheduler, (frame, messages, completions) -> {
+            throw new IllegalStateException("closed");
+        });
+        var sent = new CompletableFuture<Void>();
+        batcher.add(General.TOPIC.EVENT, emit("a"), sent);
+
+        assertTrue(sent.isCompletedExceptionally());
+        assertEquals(1, bufferPool.getPooledCount());
+    }
+
+    @Test
+    void completeOnceFrameIsSent() throws Exception {
+        var batcher = new MessageBatcher(Duration.ofHours(1), 64 * 1024, bufferPool, scheduler, collect);
+        var sent = new CompletableFuture<Void>();
+        batcher.add(General.TOPIC.EVENT, emit("a"), sent);
+        assertFalse(sent.isDone());
+
+        batcher.flush();
+        assertTrue(sent.isDone());
+    }
+
+    private static Event.EventMessage emit(String name) {
+        return Event.EventMessage.newBuilder()
+                .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+                .setName(name)
+                .setData("\"data\"")
+                .build();
+    }
+}
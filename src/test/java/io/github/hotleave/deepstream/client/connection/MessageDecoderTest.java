@@ -0,0 +1,56 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.deepstream.protobuf.util.HexConverter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageDecoderTest {
+    private static final String EMIT = "1b10041a1708021206227465737422320b646174612f6368616e6765";
+
+    @Test
+    void decodeTopicWithoutParsingPayload() throws Exception {
+        var frame = ByteBuffer.wrap(HexConverter.convertFromHex(EMIT));
+        var message = MessageDecoder.decode(frame);
+
+        assertEquals(General.TOPIC.EVENT, message.getTopic());
+        assertEquals(0x17, message.getSize());
+        assertFalse(frame.hasRemaining());
+
+        var eventMessage = message.getMessage(Event.EventMessage.parser());
+        assertEquals("data/change", eventMessage.getName());
+        assertEquals("\"test\"", eventMessage.getData());
+        assertSame(eventMessage, message.getMessage(Event.EventMessage.parser()));
+    }
+
+    @Test
+    void decodeFromDirectBuffer() throws Exception {
+        byte[] bytes = HexConverter.convertFromHex(EMIT);
+        var frame = ByteBuffer.allocateDirect(bytes.length);
+        frame.put(bytes).flip();
+
+        var message = MessageDecoder.decode(frame);
+        assertEquals(General.TOPIC.EVENT, message.getTopic());
+        assertEquals("data/change", message.getMessage(Event.EventMessage.parser()).getName());
+    }
+
+    @Test
+    void emptyPayload() throws Exception {
+        var message = MessageDecoder.decode(ByteBuffer.wrap(HexConverter.convertFromHex("021002")));
+
+        assertEquals(General.TOPIC.CONNECTION, message.getTopic());
+        assertEquals(0, message.getSize());
+    }
+
+    @Test
+    void truncatedRecord() {
+        var frame = ByteBuffer.wrap(HexConverter.convertFromHex(EMIT.substring(0, 20)));
+
+        assertThrows(InvalidProtocolBufferException.class, () -> MessageDecoder.decode(frame));
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import com.google.protobuf.CodedOutputStream;
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.deepstream.protobuf.util.HexConverter;
+import io.github.hotleave.deepstream.client.utils.BufferPool;
+import io.github.hotleave.deepstream.client.utils.HashedWheelTimer;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageEncoderTest {
+    private static final Event.EventMessage EMIT = Event.EventMessage.newBuilder()
+            .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+            .setData("\"test\"")
+            .setName("data/change")
+            .build();
+
+    @Test
+    void sameBytesAsDelimitedEnvelope() throws Exception {
+        for (boolean direct : new boolean[]{false, true}) {
+            var buffer = direct ? ByteBuffer.allocateDirect(64) : ByteBuffer.allocate(64);
+            var output = CodedOutputStream.newInstance(buffer);
+            MessageEncoder.writeDelimited(General.TOPIC.EVENT, EMIT, output);
+            output.flush();
+            buffer.flip();
+
+            assertEquals(MessageEncoder.delimitedSize(General.TOPIC.EVENT, EMIT), buffer.remaining());
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            assertEquals("1b10041a1708021206227465737422320b646174612f6368616e6765", HexConverter.convertToHexString(bytes));
+        }
+    }
+
+    @Test
+    void emptyInnerMessage() throws Exception {
+        var ping = io.deepstream.protobuf.Connection.ConnectionMessage.getDefaultInstance();
+        var buffer = ByteBuffer.allocate(16);
+        var output = CodedOutputStream.newInstance(buffer);
+        MessageEncoder.writeDelimited(General.TOPIC.CONNECTION, ping, output);
+        output.flush();
+
+        assertEquals("021002", HexConverter.convertToHexString(Arrays.copyOf(buffer.array(), buffer.position())));
+    }
+
+    @Test
+    void steadyStateSendIsAllocationFree() throws Exception {
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var bufferPool = new BufferPool(64 * 1024, 4, true);
+        var scheduler = new HashedWheelTimer("test", Duration.ofMillis(10), 8, () -> 0, false);
+        var options = ConnectionOptions.defaults();
+        // The default window sends every message in its own frame
+        var batcher = new MessageBatcher(options.getBatchWindow(), options.getMaxBatchBytes(), bufferPool, scheduler,
+                (frame, messages, completions) -> bufferPool.release(frame));
+
+        int iterations = 200_000;
+        long threadId = Thread.currentThread().getId();
+        long perMessage = Long.MAX_VALUE;
+        long warmedUp = 0;
+        // The first rounds warm up the JIT and fill the pool, the best round shows the steady state
+        for (int round = 0; round < 5; round++) {
+            if (round == 1) {
+                warmedUp = bufferPool.getAllocationCount();
+            }
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < iterations; i++) {
+                batcher.add(General.TOPIC.EVENT, EMIT);
+            }
+            batcher.flush();
+            perMessage = Math.min(perMessage, (threadBean.getThreadAllocatedBytes(threadId) - before) / iterations);
+        }
+
+        assertTrue(perMessage < 4, "Allocated " + perMessage + " bytes per message");
+        assertEquals(warmedUp, bufferPool.getAllocationCount());
+    }
+}
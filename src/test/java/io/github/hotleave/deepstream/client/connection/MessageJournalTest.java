@@ -0,0 +1,210 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageJournalTest {
+    @TempDir
+    Path directory;
+
+    private final List<String> sent = new ArrayList<>();
+    private final List<CompletableFuture<Void>> completions = new ArrayList<>();
+
+    @Test
+    void replayAppendedWhileOffline() throws Exception {
+        try (var journal = new MessageJournal(directory, 4096)) {
+            var first = journal.append(General.TOPIC.EVENT, emit("a"), this::collect);
+            journal.append(General.TOPIC.EVENT, emit("b"), this::collect);
+            assertTrue(sent.isEmpty());
+            assertTrue(journal.getPendingBytes() > 0);
+
+            journal.replay(this::collect);
+            assertEquals(List.of("a", "b"), sent);
+            assertSame(first, completions.get(0));
+
+            // 在线时直接发送
+            journal.append(General.TOPIC.EVENT, emit("c"), this::collect);
+            assertEquals(List.of("a", "b", "c"), sent);
+
+            completions.forEach(future -> future.complete(null));
+            assertEquals(0, journal.getPendingBytes());
+        }
+    }
+
+    @Test
+    void replayFromCursorAfterRestart() throws Exception {
+        try (var journal = new MessageJournal(directory, 4096)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(General.TOPIC.EVENT, emit("event/" + i), this::collect);
+            }
+            journal.replay(this::collect);
+            completions.get(0).complete(null);
+            completions.get(1).complete(null);
+        }
+
+        sent.clear();
+        try (var journal = new MessageJournal(directory, 4096)) {
+            journal.replay(this::collect);
+            assertEquals(List.of("event/2", "event/3", "event/4"), sent);
+
+            journal.append(General.TOPIC.EVENT, emit("event/5"), this::collect);
+            assertEquals("event/5", sent.get(3));
+        }
+    }
+
+    @Test
+    void keepCursorAtFailedRecord() throws Exception {
+        try (var journal = new MessageJournal(directory, 4096)) {
+            journal.replay(this::collect);
+            for (String name : List.of("a", "b", "c")) {
+                journal.append(General.TOPIC.EVENT, emit(name), this::collect);
+            }
+
+            // 后面的记录写完也不能让游标越过发送失败的记录
+            completions.get(1).complete(null);
+            completions.get(0).completeExceptionally(new IOException("Session closed"));
+            completions.get(2).complete(null);
+            assertTrue(journal.getPendingBytes() > 0);
+        }
+
+        sent.clear();
+        try (var journal = new MessageJournal(directory, 4096)) {
+            journal.replay(this::collect);
+            assertEquals(List.of("a", "b", "c"), sent);
+        }
+    }
+
+    @Test
+    void rolloverAndDeleteSentSegments() throws Exception {
+        try (var journal = new MessageJournal(directory, 256)) {
+            journal.replay(this::collect);
+            for (int i = 0; i < 40; i++) {
+                journal.append(General.TOPIC.EVENT, emit("event/" + i), this::collect);
+            }
+            assertEquals(40, sent.size());
+            assertTrue(journal.getSegmentCount() > 1);
+
+            completions.forEach(future -> future.complete(null));
+            journal.append(General.TOPIC.EVENT, emit("x".repeat(200)), this::collect);
+            assertEquals(1, journal.getSegmentCount());
+        }
+
+        sent.clear();
+        try (var journal = new MessageJournal(directory, 256)) {
+            journal.replay(this::collect);
+            assertEquals(List.of("x".repeat(200)), sent);
+        }
+    }
+
+    @Test
+    void stopRecoveryAtTornRecord() throws Exception {
+        try (var journal = new MessageJournal(directory, 4096)) {
+            journal.append(General.TOPIC.EVENT, emit("a"), this::collect);
+            journal.append(General.TOPIC.EVENT, emit("torn"), this::collect);
+        }
+
+        // 模拟崩溃时第二条记录只写了一半
+        Path segment = segmentFile();
+        byte[] bytes = Files.readAllBytes(segment);
+        int torn = indexOf(bytes, "torn".getBytes(StandardCharsets.UTF_8));
+        bytes[torn + 2] = 0;
+        Files.write(segment, bytes);
+
+        try (var journal = new MessageJournal(directory, 4096)) {
+            journal.replay(this::collect);
+            assertEquals(List.of("a"), sent);
+
+            journal.append(General.TOPIC.EVENT, emit("b"), this::collect);
+            assertEquals(List.of("a", "b"), sent);
+        }
+
+        sent.clear();
+        try (var journal = new MessageJournal(directory, 4096)) {
+            journal.replay(this::collect);
+            assertEquals(List.of("a", "b"), sent);
+        }
+    }
+
+    @Test
+    void resetCursorPastWrittenRecords() throws Exception {
+        try (var journal = new MessageJournal(directory, 256)) {
+            journal.append(General.TOPIC.EVENT, emit("a"), this::collect);
+        }
+        try (var channel = FileChannel.open(directory.resolve("cursor"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, 10_000));
+        }
+
+        try (var journal = new MessageJournal(directory, 256)) {
+            journal.replay(this::collect);
+            assertEquals(List.of(), sent);
+
+            journal.append(General.TOPIC.EVENT, emit("b"), this::collect);
+            assertEquals(List.of("b"), sent);
+        }
+    }
+
+    @Test
+    void rejectRecordLargerThanSegment() throws Exception {
+        try (var journal = new MessageJournal(directory, 64)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> journal.append(General.TOPIC.EVENT, emit("x".repeat(100)), this::collect));
+        }
+    }
+
+    private Path segmentFile() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".segment")).findFirst().orElseThrow();
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + part.length, part, 0, part.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void collect(ByteBuffer record, CompletableFuture<Void> completion) throws IOException {
+        var message = General.Message.parseDelimitedFrom(new ByteBufferInput(record.duplicate()));
+        sent.add(Event.EventMessage.parseFrom(message.getMessage()).getName());
+        completions.add(completion);
+    }
+
+    private static Event.EventMessage emit(String name) {
+        return Event.EventMessage.newBuilder()
+                .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+                .setName(name)
+                .build();
+    }
+
+    private static class ByteBufferInput extends java.io.InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+    }
+}
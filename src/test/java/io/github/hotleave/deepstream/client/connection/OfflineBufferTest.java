@@ -0,0 +1,163 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OfflineBufferTest {
+    private final List<String> replayed = new ArrayList<>();
+
+    @Test
+    void replayInOrderThenOpen() throws Exception {
+        var buffer = new OfflineBuffer(10, 1024, OfflineBuffer.OverflowPolicy.REJECT);
+        var sent = new CompletableFuture<Void>();
+        assertTrue(buffer.offer(General.TOPIC.EVENT, emit("a"), sent));
+        assertTrue(buffer.offer(General.TOPIC.EVENT, emit("b"), null));
+        assertEquals(2, buffer.size());
+
+        buffer.drain(this::collect);
+        assertEquals(List.of("a", "b"), replayed);
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getBytes());
+        assertEquals(2, buffer.getReplayedCount());
+        assertFalse(sent.isDone());
+
+        // 已打开时不再缓存
+        assertFalse(buffer.offer(General.TOPIC.EVENT, emit("c"), null));
+
+        buffer.close();
+        assertTrue(buffer.offer(General.TOPIC.EVENT, emit("d"), null));
+        assertEquals(3, buffer.getBufferedCount());
+    }
+
+    @Test
+    void dropOldest() throws Exception {
+        var buffer = new OfflineBuffer(2, 1024, OfflineBuffer.OverflowPolicy.DROP_OLDEST);
+        var first = new CompletableFuture<Void>();
+        buffer.offer(General.TOPIC.EVENT, emit("a"), first);
+        buffer.offer(General.TOPIC.EVENT, emit("b"), null);
+        buffer.offer(General.TOPIC.EVENT, emit("c"), null);
+
+        assertTrue(first.isCompletedExceptionally());
+        assertEquals(1, buffer.getDroppedCount());
+
+        buffer.drain(this::collect);
+        assertEquals(List.of("b", "c"), replayed);
+    }
+
+    @Test
+    void dropNewest() throws Exception {
+        var buffer = new OfflineBuffer(2, 1024, OfflineBuffer.OverflowPolicy.DROP_NEWEST);
+        var last = new CompletableFuture<Void>();
+        buffer.offer(General.TOPIC.EVENT, emit("a"), null);
+        buffer.offer(General.TOPIC.EVENT, emit("b"), null);
+        buffer.offer(General.TOPIC.EVENT, emit("c"), last);
+
+        assertTrue(last.isCompletedExceptionally());
+        buffer.drain(this::collect);
+        assertEquals(List.of("a", "b"), replayed);
+    }
+
+    @Test
+    void rejectWhenByteLimitReached() throws Exception {
+        var buffer = new OfflineBuffer(100, 64, OfflineBuffer.OverflowPolicy.REJECT);
+        buffer.offer(General.TOPIC.EVENT, emit("a", 40), null);
+
+        assertThrows(OfflineBuffer.BufferFullException.class,
+                () -> buffer.offer(General.TOPIC.EVENT, emit("b", 40), null));
+        assertEquals(1, buffer.size());
+        assertEquals(1, buffer.getDroppedCount());
+    }
+
+    @Test
+    void clearFailsPendingMessages() throws Exception {
+        var buffer = new OfflineBuffer(10, 1024, OfflineBuffer.OverflowPolicy.REJECT);
+        var sent = new CompletableFuture<Void>();
+        buffer.offer(General.TOPIC.EVENT, emit("a"), sent);
+
+        buffer.clear(new IllegalStateException("closed"));
+        assertTrue(sent.isCompletedExceptionally());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void keepMessageWhenReplayStops() throws Exception {
+        var buffer = new OfflineBuffer(10, 1024, OfflineBuffer.OverflowPolicy.REJECT);
+        buffer.offer(General.TOPIC.EVENT, emit("a"), null);
+        buffer.offer(General.TOPIC.EVENT, emit("b"), null);
+        long bytes = buffer.getBytes();
+
+        assertThrows(IOException.class, () -> buffer.drain((record, completion) -> {
+            throw new IOException("Connection lost during replay");
+        }));
+        assertEquals(2, buffer.size());
+        assertEquals(bytes, buffer.getBytes());
+
+        buffer.drain(this::collect);
+        assertEquals(List.of("a", "b"), replayed);
+    }
+
+    @Test
+    void forwardAcceptedMessagesUntilOpen() throws Exception {
+        var buffer = new OfflineBuffer(10, 1024, OfflineBuffer.OverflowPolicy.REJECT);
+        buffer.offer(General.TOPIC.EVENT, emit("a"), null);
+        buffer.offer(General.TOPIC.EVENT, emit("keep"), null);
+        buffer.offer(General.TOPIC.EVENT, emit("b"), null);
+
+        List<String> forwarded = new ArrayList<>();
+        buffer.forward((message, completion) -> {
+            String name = parse(message);
+            if (name.equals("keep")) {
+                return false;
+            }
+            forwarded.add(name);
+            return true;
+        });
+        assertEquals(List.of("a", "b"), forwarded);
+        assertEquals(1, buffer.size());
+
+        // 转发期间新缓存的消息直接转出
+        buffer.offer(General.TOPIC.EVENT, emit("c"), null);
+        assertEquals(List.of("a", "b", "c"), forwarded);
+
+        buffer.drain(this::collect);
+        buffer.close();
+        buffer.offer(General.TOPIC.EVENT, emit("d"), null);
+        assertEquals(List.of("keep"), replayed);
+        assertEquals(List.of("a", "b", "c"), forwarded);
+        assertEquals(1, buffer.size());
+    }
+
+    private static String parse(General.Message message) {
+        try {
+            return Event.EventMessage.parseFrom(message.getMessage()).getName();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void collect(byte[] record, CompletableFuture<Void> completion) throws IOException {
+        var message = General.Message.parseDelimitedFrom(new ByteArrayInputStream(record));
+        replayed.add(Event.EventMessage.parseFrom(message.getMessage()).getName());
+    }
+
+    private static Event.EventMessage emit(String name) {
+        return emit(name, 0);
+    }
+
+    private static Event.EventMessage emit(String name, int dataSize) {
+        return Event.EventMessage.newBuilder()
+                .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+                .setName(name)
+                .setData("x".repeat(dataSize))
+                .build();
+    }
+}
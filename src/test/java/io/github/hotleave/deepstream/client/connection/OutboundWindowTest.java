@@ -0,0 +1,72 @@
+package io.github.hotleave.deepstream.client.connection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundWindowTest {
+    private final List<Boolean> changes = new ArrayList<>();
+    private final OutboundWindow window = new OutboundWindow(100, 40, 10, 5, changes::add);
+
+    @Test
+    void hysteresisBetweenWatermarks() {
+        window.acquire(60, 1);
+        assertTrue(window.isWritable());
+
+        window.acquire(40, 1);
+        assertFalse(window.isWritable());
+
+        // 低于高水位但高于低水位，仍不可写
+        window.release(40, 1);
+        assertFalse(window.isWritable());
+
+        window.release(20, 0);
+        assertTrue(window.isWritable());
+        assertEquals(List.of(false, true), changes);
+    }
+
+    @Test
+    void messageWatermark() {
+        for (int i = 0; i < 10; i++) {
+            window.acquire(1, 1);
+        }
+        assertFalse(window.isWritable());
+
+        window.release(5, 5);
+        assertTrue(window.isWritable());
+    }
+
+    @Test
+    void awaitWritable() throws Exception {
+        assertTrue(window.awaitWritable(0));
+
+        window.acquire(100, 1);
+        assertFalse(window.awaitWritable(TimeUnit.MILLISECONDS.toNanos(10)));
+
+        var writable = CompletableFuture.supplyAsync(() -> {
+            try {
+                return window.awaitWritable(TimeUnit.SECONDS.toNanos(10));
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        window.release(100, 1);
+        assertTrue(writable.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void resetDropsInFlightFrames() {
+        window.acquire(100, 1);
+        window.reset();
+        assertTrue(window.isWritable());
+
+        window.release(100, 1);
+        assertEquals(0, window.getBytes());
+        assertEquals(0, window.getMessages());
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.hotleave.deepstream.client.event;
+
+import com.google.protobuf.ByteString;
+import io.deepstream.protobuf.Event;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventChannelTest {
+    @Test
+    void encodeLikeGeneratedMessage() throws Exception {
+        var channel = new EventChannel("orders/øre", () -> null);
+        var builder = Event.EventMessage.newBuilder()
+                .setAction(Event.EVENT_ACTION.EVENT_EMIT)
+                .setName("orders/øre");
+
+        assertEncoded(builder.setData("{\"id\":1}").build(), channel, "{\"id\":1}");
+        assertEncoded(builder.setData("x".repeat(300)).build(), channel, ByteString.copyFromUtf8("x".repeat(300)));
+        assertEncoded(builder.clearData().build(), channel, "");
+    }
+
+    @Test
+    void lookupNamesByBytes() {
+        var table = new NameTable();
+        String name = new String("prices/eur");
+        table.add(name);
+
+        var bytes = ByteBuffer.wrap("xxprices/eurxx".getBytes(StandardCharsets.UTF_8)).position(2).limit(12);
+        assertSame(name, table.lookup(bytes));
+        assertEquals(2, bytes.position());
+        assertNull(table.lookup(ByteBuffer.wrap("prices/usd".getBytes(StandardCharsets.UTF_8))));
+
+        table.remove("prices/eur");
+        assertNull(table.lookup(bytes));
+        assertEquals(0, table.size());
+    }
+
+    private static void assertEncoded(Event.EventMessage expected, EventChannel channel, Object data) throws Exception {
+        var encoded = channel.message(data);
+
+        assertEquals(expected.getSerializedSize(), encoded.getSerializedSize());
+        assertEquals(expected.toByteString(), encoded.toByteString());
+        assertEquals(expected, Event.EventMessage.parseFrom(encoded.toByteArray()));
+    }
+}
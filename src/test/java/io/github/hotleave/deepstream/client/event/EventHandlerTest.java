@@ -0,0 +1,145 @@
+package io.github.hotleave.deepstream.client.event;
+
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.Client;
+import io.github.hotleave.deepstream.client.codec.Payload;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.connection.InboundMessage;
+import io.github.hotleave.deepstream.client.server.StandInServer;
+import io.github.hotleave.deepstream.client.transport.JdkTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventHandlerTest {
+    private final ConnectionOptions options = ConnectionOptions.builder().dispatchThreads(1).build();
+    private final List<Client> clients = new ArrayList<>();
+    private ClientRuntime runtime;
+    private StandInServer server;
+
+    @BeforeEach
+    void setUp() {
+        runtime = new ClientRuntime(options, new JdkTransport());
+        server = StandInServer.start(StandInServer.Options.builder().build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        clients.forEach(Client::close);
+        server.close();
+        runtime.close();
+    }
+
+    @Test
+    void typedEmitAndSubscribe() throws Exception {
+        var subscriber = connect();
+        var publisher = connect();
+        BlockingQueue<Map<?, ?>> typed = new LinkedBlockingQueue<>();
+        BlockingQueue<String> raw = new LinkedBlockingQueue<>();
+        subscriber.event.subscribe("order", Map.class, typed::add).get(5, TimeUnit.SECONDS);
+        subscriber.event.subscribe("order", raw::add).get(5, TimeUnit.SECONDS);
+
+        publisher.event.emit("order", Map.of("id", 42L)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(Map.of("id", 42L), typed.poll(5, TimeUnit.SECONDS));
+        assertEquals("{\"id\":42}", raw.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void subscribersShareOneDecodedValue() throws Exception {
+        var subscriber = connect();
+        var publisher = connect();
+        BlockingQueue<Object> values = new LinkedBlockingQueue<>();
+        Consumer<List> callback = values::add;
+        subscriber.event.subscribe("prices", List.class, callback).get(5, TimeUnit.SECONDS);
+        subscriber.event.subscribe("prices", List.class, values::add).get(5, TimeUnit.SECONDS);
+
+        publisher.event.emit("prices", "[1,2,3]").get(5, TimeUnit.SECONDS);
+
+        var first = values.poll(5, TimeUnit.SECONDS);
+        assertEquals(List.of(1L, 2L, 3L), first);
+        assertSame(first, values.poll(5, TimeUnit.SECONDS));
+
+        subscriber.event.unsubscribe("prices", List.class, callback).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("prices"), List.copyOf(subscriber.event.getSubscriptions()));
+    }
+
+    @Test
+    void forwardPayloadWithoutEncoding() throws Exception {
+        var source = connect();
+        var sink = connect();
+        BlockingQueue<String> forwarded = new LinkedBlockingQueue<>();
+        sink.event.subscribe("out", forwarded::add).get(5, TimeUnit.SECONDS);
+        source.event.subscribe("in", Payload.class, payload -> source.event.emit("out", payload))
+                .get(5, TimeUnit.SECONDS);
+
+        sink.event.emit("in", "{\"text\":\"héllo\"}").get(5, TimeUnit.SECONDS);
+
+        assertEquals("{\"text\":\"héllo\"}", forwarded.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void emitThroughChannel() throws Exception {
+        var subscriber = connect();
+        var publisher = connect();
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        subscriber.event.subscribe("ticks", received::add).get(5, TimeUnit.SECONDS);
+
+        var channel = publisher.event.channel("ticks");
+        channel.emit("1").get(5, TimeUnit.SECONDS);
+        channel.emit(Map.of("tick", 2L)).get(5, TimeUnit.SECONDS);
+        assertTrue(channel.tryEmit(""));
+
+        assertEquals("1", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("{\"tick\":2}", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("", received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void answerListenByPattern() throws Exception {
+        var connection = new Connection(server.getUrl(), options, runtime);
+        var handler = new EventHandler(connection);
+        BlockingQueue<String> found = new LinkedBlockingQueue<>();
+        handler.listen("^orders/[0-9]+$", (pattern, name) -> found.add(pattern + " " + name));
+
+        // 没有订阅名时名称即模式，模式的正则匹配不了自身
+        handler.handle(listenMessage("^orders/[0-9]+$", ""));
+        handler.handle(listenMessage("^orders/[0-9]+$", "orders/42"));
+        handler.handle(listenMessage("^unknown/.*", "unknown/1"));
+
+        assertEquals("^orders/[0-9]+$ ^orders/[0-9]+$", found.poll(5, TimeUnit.SECONDS));
+        assertEquals("^orders/[0-9]+$ orders/42", found.poll(5, TimeUnit.SECONDS));
+        assertNull(found.poll(100, TimeUnit.MILLISECONDS));
+        connection.close();
+    }
+
+    private static InboundMessage listenMessage(String pattern, String subscription) {
+        var msg = Event.EventMessage.newBuilder()
+                .setAction(Event.EVENT_ACTION.EVENT_SUBSCRIPTION_FOR_PATTERN_FOUND)
+                .setName(pattern)
+                .setSubscription(subscription)
+                .build();
+        return new InboundMessage(General.TOPIC.EVENT, ByteBuffer.wrap(msg.toByteArray()));
+    }
+
+    private Client connect() throws Exception {
+        var client = new Client(server.getUrl(), options, runtime);
+        clients.add(client);
+        client.login();
+        return client;
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.hotleave.deepstream.client.event;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import io.deepstream.protobuf.Auth;
+import io.deepstream.protobuf.Connection.CONNECTION_ACTION;
+import io.deepstream.protobuf.Connection.ConnectionMessage;
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionListener;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.connection.ConnectionState;
+import io.github.hotleave.deepstream.client.connection.InboundMessage;
+import io.github.hotleave.deepstream.client.connection.MessageDecoder;
+import io.github.hotleave.deepstream.client.connection.MessageEncoder;
+import io.github.hotleave.deepstream.client.transport.LoopbackTransport;
+import io.github.hotleave.deepstream.client.transport.TransportListener;
+import io.github.hotleave.deepstream.client.transport.TransportSession;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedEventHandlerTest {
+    private static final String NAME = "orders/created";
+
+    private final Map<String, TransportSession> sessions = new ConcurrentHashMap<>();
+    private final Set<String> refused = ConcurrentHashMap.newKeySet();
+    // 服务端按到达顺序记录的事件：分片路径 + 数据
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    @Test
+    void keepEmitOrderOnFailover() throws Exception {
+        var options = ConnectionOptions.builder().dispatchThreads(1).build();
+        var transport = new LoopbackTransport(uri -> refused.contains(uri.getPath()) ? null : new Server(uri.getPath()));
+        try (var runtime = new ClientRuntime(options, transport)) {
+            List<Connection> connections = new ArrayList<>();
+            List<EventHandler> handlers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                var connection = new Connection("ws://loopback/" + i, options, runtime);
+                var handler = new EventHandler(connection);
+                connection.registerHandler(General.TOPIC.EVENT, handler::handle);
+                connections.add(connection);
+                handlers.add(handler);
+            }
+
+            // 先于分片处理器收到断开通知，这时发出的事件还路由到断开的分片并进入其离线缓冲
+            var owner = new AtomicInteger(-1);
+            var sharded = new ShardedEventHandler[1];
+            List<CompletableFuture<Void>> buffered = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < connections.size(); i++) {
+                int shard = i;
+                connections.get(i).addListener(new ConnectionListener() {
+                    @Override
+                    public void onStateChanged(ConnectionState newState, ConnectionState oldState) {
+                        if (oldState == ConnectionState.OPEN && shard == owner.get()) {
+                            for (String data : List.of("1", "2", "3")) {
+                                buffered.add(sharded[0].emit(NAME, data));
+                            }
+                        }
+                    }
+                });
+            }
+            sharded[0] = new ShardedEventHandler(connections, handlers);
+            for (Connection connection : connections) {
+                connection.connectAsync().get(5, TimeUnit.SECONDS);
+            }
+
+            int lost = sharded[0].shardOf(NAME);
+            owner.set(lost);
+            refused.add("/" + lost);
+            sessions.get("/" + lost).close(TransportSession.NORMAL_CLOSURE, "failover");
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sharded[0].shardOf(NAME) == lost && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            int live = sharded[0].shardOf(NAME);
+            assertNotEquals(lost, live);
+
+            sharded[0].emit(NAME, "4").get(5, TimeUnit.SECONDS);
+            sharded[0].emit(NAME, "5").get(5, TimeUnit.SECONDS);
+            CompletableFuture.allOf(buffered.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+            assertEquals(3, buffered.size());
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.size() < 5 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            String path = "/" + live + " ";
+            assertEquals(List.of(path + "1", path + "2", path + "3", path + "4", path + "5"), received);
+
+            connections.forEach(Connection::close);
+        }
+    }
+
+    /**
+     * Accepts every login and records the emitted events.
+     */
+    private class Server implements TransportListener {
+        private final String path;
+        private TransportSession session;
+
+        Server(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public void onOpen(TransportSession session) {
+            this.session = session;
+            sessions.put(path, session);
+        }
+
+        @Override
+        public void onMessage(ByteBuffer fragment, boolean last) {
+            try {
+                while (fragment.hasRemaining()) {
+                    handle(MessageDecoder.decode(fragment));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void handle(InboundMessage message) throws IOException {
+            switch (message.getTopic()) {
+                case CONNECTION:
+                    var action = message.getMessage(ConnectionMessage.parser()).getAction();
+                    if (action == CONNECTION_ACTION.CONNECTION_CHALLENGE) {
+                        send(General.TOPIC.CONNECTION, ConnectionMessage.newBuilder()
+                                .setAction(CONNECTION_ACTION.CONNECTION_ACCEPT).build());
+                    }
+                    break;
+                case AUTH:
+                    send(General.TOPIC.AUTH, Auth.AuthMessage.newBuilder()
+                            .setAction(Auth.AUTH_ACTION.AUTH_AUTH_SUCCESSFUL).setData("{}").build());
+                    break;
+                case EVENT:
+                    var event = message.getMessage(Event.EventMessage.parser());
+                    if (event.getAction() == Event.EVENT_ACTION.EVENT_EMIT) {
+                        received.add(path + " " + event.getData());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void send(General.TOPIC topic, MessageLite msg) throws IOException {
+            byte[] frame = new byte[MessageEncoder.delimitedSize(topic, msg)];
+            MessageEncoder.writeDelimited(topic, msg, CodedOutputStream.newInstance(frame));
+            session.send(ByteBuffer.wrap(frame), error -> {
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onClose(int code, String reason) {
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.hotleave.deepstream.client.metrics;
+
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.connection.ConnectionState;
+import io.github.hotleave.deepstream.client.event.EventHandler;
+import io.github.hotleave.deepstream.client.server.StandInServer;
+import io.github.hotleave.deepstream.client.transport.JdkTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionMetricsTest {
+    private final LongAdder dispatched = new LongAdder();
+    private final ConnectionOptions options = ConnectionOptions.builder()
+            .dispatchThreads(1)
+            .heartbeatInterval(Duration.ofMillis(50))
+            .jmxEnabled(true)
+            .metricsListener(new MetricsListener() {
+                @Override
+                public void onDispatched(long waitNanos, long runNanos) {
+                    dispatched.increment();
+                }
+            })
+            .build();
+    private StandInServer server;
+    private ClientRuntime runtime;
+
+    @BeforeEach
+    void setUp() {
+        server = StandInServer.start(StandInServer.Options.builder().build());
+        runtime = new ClientRuntime(options, new JdkTransport());
+    }
+
+    @AfterEach
+    void tearDown() {
+        runtime.close();
+        server.close();
+    }
+
+    @Test
+    void countMessagesAndLatencies() throws Exception {
+        var publisher = new Connection(server.getUrl(), options, runtime);
+        var subscriber = new Connection(server.getUrl(), options, runtime);
+        var event = new EventHandler(subscriber);
+        subscriber.registerHandler(General.TOPIC.EVENT, event::handle);
+        publisher.connect();
+        subscriber.connect();
+
+        var received = new CompletableFuture<String>();
+        event.subscribe("data/change", received::complete).get(5, TimeUnit.SECONDS);
+        new EventHandler(publisher).emit("data/change", "\"hotleave\"").get(5, TimeUnit.SECONDS);
+        received.get(5, TimeUnit.SECONDS);
+
+        var metrics = subscriber.getMetrics();
+        // 回调可能先于 I/O 线程记录完成
+        await(() -> metrics.getInboundMessages(General.TOPIC.EVENT) == 2);
+        assertEquals(1, metrics.getOutboundMessages(General.TOPIC.EVENT));
+        assertEquals(1, metrics.getInboundMessages(General.TOPIC.AUTH));
+        assertEquals(1, publisher.getMetrics().getOutboundMessages(General.TOPIC.EVENT));
+        assertTrue(metrics.getStateTime(ConnectionState.OPEN, TimeUnit.NANOSECONDS) > 0);
+        assertTrue(metrics.getStateTimeMillis().containsKey("OPEN"));
+
+        var runtimeMetrics = runtime.getMetrics();
+        assertTrue(runtimeMetrics.getEncodeLatency().getCount() >= 6);
+        assertTrue(runtimeMetrics.getDecodeLatency().getCount() >= 6);
+        assertEquals(1, runtimeMetrics.getHandlerLatency().getCount());
+        assertEquals(1, dispatched.sum());
+
+        publisher.close();
+        subscriber.close();
+    }
+
+    @Test
+    void measurePingRoundTrip() throws Exception {
+        var connection = new Connection(server.getUrl(), options, runtime);
+        connection.connect();
+
+        await(() -> connection.getMetrics().getLastPingRoundTripMicros() >= 0);
+        assertTrue(runtime.getMetrics().getPingRoundTrip().getCount() > 0);
+        connection.close();
+    }
+
+    @Test
+    void exposeThroughJmx() throws Exception {
+        var connection = new Connection(server.getUrl(), options, runtime);
+        connection.connect();
+
+        var mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        var names = mbeanServer.queryNames(new ObjectName(MBeans.DOMAIN + ":type=Connection,*"), null);
+        ObjectName name = names.stream()
+                .filter(n -> server.getUrl().equals(getAttribute(n, "Url")))
+                .findFirst()
+                .orElseThrow();
+
+        assertEquals("OPEN", mbeanServer.getAttribute(name, "State"));
+        var inbound = (TabularData) mbeanServer.getAttribute(name, "InboundMessages");
+        assertEquals(1L, inbound.get(new Object[]{"AUTH"}).get("value"));
+
+        var runtimeName = mbeanServer.queryNames(new ObjectName(MBeans.DOMAIN + ":type=Runtime,*"), null).stream()
+                .filter(n -> (int) getAttribute(n, "ConnectionCount") == 1)
+                .findFirst()
+                .orElseThrow();
+        var decode = (CompositeData) mbeanServer.getAttribute(runtimeName, "DecodeLatency");
+        assertTrue((long) decode.get("count") >= 2);
+
+        connection.close();
+        assertFalse(mbeanServer.isRegistered(name));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static Object getAttribute(ObjectName name, String attribute) {
+        try {
+            return ManagementFactory.getPlatformMBeanServer().getAttribute(name, attribute);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
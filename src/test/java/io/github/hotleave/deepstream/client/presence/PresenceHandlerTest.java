@@ -0,0 +1,147 @@
+package io.github.hotleave.deepstream.client.presence;
+
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.Client;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.server.StandInServer;
+import io.github.hotleave.deepstream.client.transport.JdkTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PresenceHandlerTest {
+    private final ConnectionOptions options = ConnectionOptions.builder()
+            .dispatchThreads(1)
+            .reconnectInitialDelay(Duration.ofMillis(50))
+            .presenceBatchWindow(Duration.ofMillis(300))
+            // 重连测试里偶尔有连接收不到关闭通知，靠心跳发现
+            .heartbeatInterval(Duration.ofMillis(500))
+            .build();
+    private final List<Client> clients = new ArrayList<>();
+    private ClientRuntime runtime;
+    private StandInServer server;
+
+    @BeforeEach
+    void setUp() {
+        runtime = new ClientRuntime(options, new JdkTransport());
+        server = StandInServer.start(StandInServer.Options.builder().build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        clients.forEach(Client::close);
+        server.close();
+        runtime.close();
+    }
+
+    @Test
+    void loadOnceThenApplyDiffs() throws Exception {
+        connect();
+        connect();
+        var observer = connect();
+        BlockingQueue<PresenceDiff> diffs = new LinkedBlockingQueue<>();
+
+        var initial = observer.presence.subscribe(diffs::add).get(5, TimeUnit.SECONDS);
+        assertEquals(Set.of("user-1", "user-2"), Set.copyOf(initial));
+
+        var third = connect();
+        connect();
+        var diff = diffs.poll(5, TimeUnit.SECONDS);
+        assertNotNull(diff);
+        assertEquals(Set.of("user-4", "user-5"), diff.getJoined());
+        assertTrue(diff.getLeft().isEmpty());
+        assertEquals(4, observer.presence.getOnlineCount());
+
+        third.close();
+        diff = diffs.poll(5, TimeUnit.SECONDS);
+        assertNotNull(diff);
+        assertEquals(Set.of("user-4"), diff.getLeft());
+        assertFalse(observer.presence.isOnline("user-4"));
+        assertEquals(Set.of("user-1", "user-2", "user-5"), Set.copyOf(observer.presence.getOnline()));
+    }
+
+    @Test
+    void joinAndLeaveWithinWindowCancelOut() throws Exception {
+        var observer = connect();
+        BlockingQueue<PresenceDiff> diffs = new LinkedBlockingQueue<>();
+        observer.presence.subscribe(diffs::add).get(5, TimeUnit.SECONDS);
+
+        connect().close();
+
+        assertNull(diffs.poll(600, TimeUnit.MILLISECONDS));
+        assertEquals(0, observer.presence.getOnlineCount());
+    }
+
+    @Test
+    void reloadAfterReconnect() throws Exception {
+        connect();
+        connect();
+        var observer = connect();
+        BlockingQueue<PresenceDiff> diffs = new LinkedBlockingQueue<>();
+        var before = Set.copyOf(observer.presence.subscribe(diffs::add).get(5, TimeUnit.SECONDS));
+
+        server.dropAll();
+
+        // 重连后用户名都会变化
+        await(() -> {
+            Set<String> online = new HashSet<>(observer.presence.getOnline());
+            return online.size() == 2 && online.stream().noneMatch(before::contains);
+        });
+        assertNotNull(diffs.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void queryAgainAfterFailedLoad() throws Exception {
+        var silent = StandInServer.start(StandInServer.Options.builder()
+                .ignoredTopics(Set.of(General.TOPIC.PRESENCE))
+                .build());
+        var client = new Client(silent.getUrl(), options.toBuilder().requestTimeout(Duration.ofMillis(200)).build(),
+                runtime);
+        try {
+            client.login();
+            var first = client.presence.subscribe(diff -> {
+            });
+            var error = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, error.getCause());
+
+            // 失败的加载不会一直返回给后来的订阅者
+            var second = client.presence.subscribe(diff -> {
+            });
+            assertNotSame(first, second);
+            assertFalse(second.isDone());
+        } finally {
+            client.close();
+            silent.close();
+        }
+    }
+
+    private Client connect() throws Exception {
+        var client = new Client(server.getUrl(), options, runtime);
+        clients.add(client);
+        client.login();
+        return client;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 10 seconds");
+            Thread.sleep(20);
+        }
+    }
+}
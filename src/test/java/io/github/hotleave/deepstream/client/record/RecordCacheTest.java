@@ -0,0 +1,82 @@
+package io.github.hotleave.deepstream.client.record;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordCacheTest {
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void hitsAndMisses() {
+        var cache = new RecordCache(1024, name -> false, clock::get);
+        cache.update("a", current -> RecordSnapshot.parse("a", 1, "{}"));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.peek("a"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate());
+    }
+
+    @Test
+    void tracksSizeOfPatches() {
+        var cache = new RecordCache(1024, name -> false, clock::get);
+        cache.update("a", current -> RecordSnapshot.parse("a", 1, "{\"name\":\"x\"}"));
+        long before = cache.getBytes();
+
+        var patched = cache.update("a", current -> current.patch(2, "name", "xxxxx"));
+
+        assertEquals(2, patched.getVersion());
+        assertEquals("{\"name\":\"xxxxx\"}", patched.toJson());
+        assertEquals(before + 4, cache.getBytes());
+
+        cache.update("a", current -> current.erase(3, "name"));
+        assertTrue(cache.getBytes() < before);
+        cache.remove("a");
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    void evictsWithinLimit() {
+        var cache = new RecordCache(1000, name -> false, clock::get);
+        for (int i = 0; i < 100; i++) {
+            String name = "record/" + i;
+            clock.incrementAndGet();
+            cache.update(name, current -> RecordSnapshot.parse(name, 1, "{\"value\":\"" + "x".repeat(80) + "\"}"));
+        }
+
+        assertTrue(cache.getBytes() <= 1000);
+        assertTrue(cache.getEvictionCount() >= 90);
+        assertNotNull(cache.peek("record/99"));
+    }
+
+    @Test
+    void prefersLargeIdleRecords() {
+        var cache = new RecordCache(1000, name -> false, clock::get);
+        cache.update("large", current -> RecordSnapshot.parse("large", 1, "\"" + "x".repeat(500) + "\""));
+        cache.update("small", current -> RecordSnapshot.parse("small", 1, "\"x\""));
+        clock.set(100);
+        cache.update("new", current -> RecordSnapshot.parse("new", 1, "\"" + "x".repeat(600) + "\""));
+
+        assertNull(cache.peek("large"));
+        assertNotNull(cache.peek("small"));
+        assertNotNull(cache.peek("new"));
+    }
+
+    @Test
+    void neverEvictsPinned() {
+        var cache = new RecordCache(100, Set.of("pinned")::contains, clock::get);
+        cache.update("pinned", current -> RecordSnapshot.parse("pinned", 1, "\"" + "x".repeat(200) + "\""));
+        cache.update("other", current -> RecordSnapshot.parse("other", 1, "\"x\""));
+
+        assertNotNull(cache.peek("pinned"));
+        assertNull(cache.peek("other"));
+        assertTrue(cache.getBytes() > 100);
+    }
+}
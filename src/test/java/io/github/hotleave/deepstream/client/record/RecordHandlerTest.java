@@ -0,0 +1,165 @@
+package io.github.hotleave.deepstream.client.record;
+
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.Client;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.server.StandInServer;
+import io.github.hotleave.deepstream.client.transport.JdkTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordHandlerTest {
+    private final ConnectionOptions options = ConnectionOptions.builder()
+            .dispatchThreads(1)
+            .reconnectInitialDelay(Duration.ofMillis(50))
+            .build();
+    private final List<Client> clients = new ArrayList<>();
+    private ClientRuntime runtime;
+    private StandInServer server;
+
+    @BeforeEach
+    void setUp() {
+        runtime = new ClientRuntime(options, new JdkTransport());
+        server = StandInServer.start(StandInServer.Options.builder().build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        clients.forEach(Client::close);
+        server.close();
+        runtime.close();
+    }
+
+    @Test
+    void patchesReachOtherSubscribers() throws Exception {
+        var writer = connect();
+        var reader = connect();
+
+        BlockingQueue<RecordSnapshot> changes = new LinkedBlockingQueue<>();
+        var initial = reader.record.subscribe("user/1", changes::add).get(5, TimeUnit.SECONDS);
+        assertEquals(0, initial.getVersion());
+        assertEquals("{}", initial.toJson());
+
+        writer.record.set("user/1", Map.of("name", "hotleave", "age", 18)).get(5, TimeUnit.SECONDS);
+        writer.record.set("user/1", "address.city", "Beijing").get(5, TimeUnit.SECONDS);
+        writer.record.erase("user/1", "age").get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, poll(changes).getVersion());
+        var patched = poll(changes);
+        assertEquals(2, patched.getVersion());
+        assertEquals("Beijing", patched.get("address.city"));
+        assertEquals(18L, patched.get("age"));
+        var erased = poll(changes);
+        assertEquals(3, erased.getVersion());
+        assertNull(erased.get("age"));
+
+        assertSame(erased, reader.record.snapshot("user/1"));
+        assertEquals(erased.toJson(), writer.record.snapshot("user/1").toJson());
+    }
+
+    @Test
+    void servesSubscribedRecordsFromCache() throws Exception {
+        var client = connect();
+
+        var first = client.record.get("user/2").get(5, TimeUnit.SECONDS);
+        var second = client.record.get("user/2");
+
+        assertTrue(second.isDone());
+        assertSame(first, second.get());
+        assertEquals(0.5, client.record.getCache().getHitRate());
+    }
+
+    @Test
+    void discardedRecordsStayCached() throws Exception {
+        var client = connect();
+        client.record.get("user/3").get(5, TimeUnit.SECONDS);
+
+        client.record.discard("user/3").get(5, TimeUnit.SECONDS);
+
+        assertTrue(client.record.getSubscriptions().isEmpty());
+        assertNotNull(client.record.snapshot("user/3"));
+    }
+
+    @Test
+    void catchUpAfterReconnect() throws Exception {
+        var reader = connect();
+        BlockingQueue<RecordSnapshot> changes = new LinkedBlockingQueue<>();
+        reader.record.subscribe("user/4", changes::add).get(5, TimeUnit.SECONDS);
+
+        server.dropAll();
+        var writer = connect();
+        writer.record.set("user/4", "name", "offline").get(5, TimeUnit.SECONDS);
+
+        var snapshot = poll(changes);
+        assertEquals(1, snapshot.getVersion());
+        assertEquals("offline", snapshot.get("name"));
+    }
+
+    @Test
+    void delete() throws Exception {
+        var writer = connect();
+        var reader = connect();
+        writer.record.set("user/5", "name", "x").get(5, TimeUnit.SECONDS);
+        reader.record.get("user/5").get(5, TimeUnit.SECONDS);
+
+        writer.record.delete("user/5").get(5, TimeUnit.SECONDS);
+
+        assertNull(writer.record.snapshot("user/5"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (reader.record.getCache().peek("user/5") != null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(reader.record.getCache().peek("user/5"));
+        assertTrue(reader.record.getSubscriptions().isEmpty());
+    }
+
+    @Test
+    void unansweredReadTimesOut() throws Exception {
+        try (var silent = StandInServer.start(StandInServer.Options.builder()
+                .ignoredTopics(Set.of(General.TOPIC.RECORD))
+                .build())) {
+            var client = new Client(silent.getUrl(), options.toBuilder()
+                    .requestTimeout(Duration.ofMillis(300))
+                    .build(), runtime);
+            clients.add(client);
+            client.login();
+
+            var first = client.record.get("silent");
+            var error = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, error.getCause());
+
+            // 超时的读取不会留下，再次读取会重新等待
+            var second = client.record.get("silent");
+            assertNotSame(first, second);
+            assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private Client connect() throws Exception {
+        var client = new Client(server.getUrl(), options, runtime);
+        clients.add(client);
+        client.login();
+        return client;
+    }
+
+    private static RecordSnapshot poll(BlockingQueue<RecordSnapshot> changes) throws InterruptedException {
+        var snapshot = changes.poll(5, TimeUnit.SECONDS);
+        assertNotNull(snapshot, "no change within 5 seconds");
+        return snapshot;
+    }
+}
@@ -0,0 +1,184 @@
+package io.github.hotleave.deepstream.client.rpc;
+
+import io.github.hotleave.deepstream.client.Client;
+import io.github.hotleave.deepstream.client.DeepstreamException;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.server.StandInServer;
+import io.github.hotleave.deepstream.client.transport.JdkTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RpcHandlerTest {
+    private final ConnectionOptions options = ConnectionOptions.builder()
+            .dispatchThreads(1)
+            .rpcWorkerThreads(4)
+            .build();
+    private final List<Client> clients = new ArrayList<>();
+    private ClientRuntime runtime;
+    private StandInServer server;
+
+    @BeforeEach
+    void setUp() {
+        runtime = new ClientRuntime(options, new JdkTransport());
+        server = StandInServer.start(StandInServer.Options.builder().build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        clients.forEach(Client::close);
+        server.close();
+        runtime.close();
+    }
+
+    @Test
+    void pipelinedRequests() throws Exception {
+        var provider = connect(options);
+        var caller = connect(options);
+        provider.rpc.provide("echo", (data, response) -> response.send(data + "!")).get(5, TimeUnit.SECONDS);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            results.add(caller.rpc.make("echo", Integer.toString(i)));
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i + "!", results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, caller.rpc.getPendingCount());
+        assertEquals(0, provider.rpc.getActiveProviderRequests());
+    }
+
+    @Test
+    void providerError() throws Exception {
+        var provider = connect(options);
+        var caller = connect(options);
+        provider.rpc.provide("fail", (data, response) -> {
+            throw new IllegalArgumentException("bad input");
+        }).get(5, TimeUnit.SECONDS);
+
+        var error = assertThrows(ExecutionException.class, () -> caller.rpc.make("fail", "x").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DeepstreamException.class, error.getCause());
+        assertTrue(error.getCause().getMessage().contains("bad input"));
+    }
+
+    @Test
+    void noProvider() throws Exception {
+        var caller = connect(options);
+
+        var error = assertThrows(ExecutionException.class, () -> caller.rpc.make("none", "x").get(5, TimeUnit.SECONDS));
+        assertEquals("RPC_NO_RPC_PROVIDER", ((DeepstreamException) error.getCause()).getAction());
+    }
+
+    @Test
+    void rejectWhenSaturated() throws Exception {
+        var provider = connect(options.toBuilder().rpcMaxPendingRequests(1).build());
+        var caller = connect(options);
+        var release = new CountDownLatch(1);
+        provider.rpc.provide("slow", (data, response) -> {
+            release.await();
+            response.send(data);
+        }).get(5, TimeUnit.SECONDS);
+
+        var first = caller.rpc.make("slow", "1");
+        var second = caller.rpc.make("slow", "2");
+
+        var error = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertEquals("RPC_NO_RPC_PROVIDER", ((DeepstreamException) error.getCause()).getAction());
+        assertEquals(1, provider.rpc.getActiveProviderRequests());
+
+        release.countDown();
+        assertEquals("1", first.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void responseTimeout() throws Exception {
+        var provider = connect(options);
+        var caller = connect(options.toBuilder().rpcResponseTimeout(Duration.ofMillis(200)).build());
+        provider.rpc.provide("silent", (data, response) -> {
+        }).get(5, TimeUnit.SECONDS);
+
+        var error = assertThrows(ExecutionException.class, () -> caller.rpc.make("silent", "x").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, error.getCause());
+    }
+
+    @Test
+    void providerTimeoutReleasesPermit() throws Exception {
+        var provider = connect(options.toBuilder()
+                .rpcMaxPendingRequests(1)
+                .rpcProviderTimeout(Duration.ofMillis(200))
+                .build());
+        var caller = connect(options);
+        provider.rpc.provide("silent", (data, response) -> {
+        }).get(5, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 2; i++) {
+            var error = assertThrows(ExecutionException.class, () -> caller.rpc.make("silent", "x").get(5, TimeUnit.SECONDS));
+            assertEquals("RPC_REQUEST_ERROR", ((DeepstreamException) error.getCause()).getAction());
+        }
+        assertEquals(0, provider.rpc.getActiveProviderRequests());
+    }
+
+    @Test
+    void ackTimeout() throws Exception {
+        // 未连接时请求留在离线缓冲中，不会被接受
+        var connection = new Connection("ws://localhost:1", options.toBuilder()
+                .rpcAckTimeout(Duration.ofMillis(200))
+                .build(), runtime);
+        var rpc = new RpcHandler(connection);
+        try {
+            var error = assertThrows(ExecutionException.class, () -> rpc.make("any", "x").get(5, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, error.getCause());
+            assertEquals(0, rpc.getPendingCount());
+        } finally {
+            rpc.close();
+            connection.close();
+        }
+    }
+
+    @Test
+    void providersShareRuntimePool() throws Exception {
+        var caller = connect(options);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 10; i++) {
+            connect(options).rpc.provide("thread/" + i, (data, response) -> {
+                threads.add(Thread.currentThread().getName());
+                response.send(data);
+            }).get(5, TimeUnit.SECONDS);
+        }
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            results.add(caller.rpc.make("thread/" + i % 10, "x"));
+        }
+        for (var result : results) {
+            assertEquals("x", result.get(5, TimeUnit.SECONDS));
+        }
+
+        // 10个连接的提供者共用运行时的4个线程
+        assertTrue(threads.size() <= 4, "threads " + threads);
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("deepstream-rpc-")), "threads " + threads);
+    }
+
+    private Client connect(ConnectionOptions options) throws Exception {
+        var client = new Client(server.getUrl(), options, runtime);
+        clients.add(client);
+        client.login();
+        return client;
+    }
+}
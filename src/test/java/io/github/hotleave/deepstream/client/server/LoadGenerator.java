@@ -0,0 +1,189 @@
+package io.github.hotleave.deepstream.client.server;
+
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionListener;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.event.EventHandler;
+import io.github.hotleave.deepstream.client.transport.JdkTransport;
+import io.github.hotleave.deepstream.client.utils.Histogram;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Soak test driver: N clients on one {@link ClientRuntime} subscribe to a few topics and emit at a target rate, every
+ * second it prints the emit to delivery latency, reconnects and memory. Without {@code --url} an embedded
+ * {@link StandInServer} is started, {@code --drop-every} then drops all connections periodically to provoke reconnect
+ * storms.
+ * <p>
+ * Options: {@code --clients --rate --topics --duration --drop-every --batch-window}, for the embedded server also
+ * {@code --latency --drop-rate}. Durations are in seconds except the latency and batch window in milliseconds.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=io.github.hotleave.deepstream.client.server.LoadGenerator \
+ *     -Dexec.args="--clients 1000 --rate 20000 --duration 300 --drop-every 60"
+ * </pre>
+ */
+public class LoadGenerator {
+    private final Histogram interval = new Histogram();
+    private final Histogram total = new Histogram();
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<EventHandler> handlers = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = parse(args);
+        int clients = Integer.parseInt(arguments.getOrDefault("clients", "100"));
+        int rate = Integer.parseInt(arguments.getOrDefault("rate", "1000"));
+        int topics = Integer.parseInt(arguments.getOrDefault("topics", "10"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(arguments.getOrDefault("duration", "60")));
+        Duration dropEvery = Duration.ofSeconds(Long.parseLong(arguments.getOrDefault("drop-every", "0")));
+
+        StandInServer server = null;
+        String url = arguments.get("url");
+        if (url == null) {
+            server = StandInServer.start(StandInServer.Options.builder()
+                    .latency(Duration.ofMillis(Long.parseLong(arguments.getOrDefault("latency", "0"))))
+                    .dropRate(Double.parseDouble(arguments.getOrDefault("drop-rate", "0")))
+                    .build());
+            url = server.getUrl();
+        }
+
+        var options = ConnectionOptions.builder()
+                .batchWindow(Duration.ofMillis(Long.parseLong(arguments.getOrDefault("batch-window", "0"))))
+                .maxReconnectAttempts(ConnectionOptions.UNLIMITED_RECONNECT_ATTEMPTS)
+                .reconnectInitialDelay(Duration.ofMillis(100))
+                .reconnectMaxDelay(Duration.ofSeconds(5))
+                .build();
+        try (var runtime = new ClientRuntime(options, new JdkTransport())) {
+            var generator = new LoadGenerator();
+            generator.connect(url, clients, topics, options, runtime);
+            generator.run(rate, topics, duration, dropEvery, server);
+            generator.connections.forEach(Connection::close);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    private void connect(String url, int clients, int topics, ConnectionOptions options, ClientRuntime runtime)
+            throws Exception {
+        List<CompletableFuture<Void>> logins = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            var connection = new Connection(url, options, runtime);
+            var event = new EventHandler(connection);
+            connection.registerHandler(General.TOPIC.EVENT, event::handle);
+            connection.addListener(new ConnectionListener() {
+                @Override
+                public void onReconnectAttempt(int attempt, Duration delay) {
+                    reconnects.increment();
+                }
+            });
+            connections.add(connection);
+            handlers.add(event);
+            logins.add(connection.connectAsync());
+        }
+        CompletableFuture.allOf(logins.toArray(CompletableFuture[]::new)).get(5, TimeUnit.MINUTES);
+
+        List<CompletableFuture<Void>> subscriptions = new ArrayList<>();
+        for (int i = 0; i < handlers.size(); i++) {
+            subscriptions.add(handlers.get(i).subscribe(topic(i % topics), this::received));
+        }
+        CompletableFuture.allOf(subscriptions.toArray(CompletableFuture[]::new)).get(5, TimeUnit.MINUTES);
+        System.out.printf("%d clients connected and subscribed to %d topics%n", clients, topics);
+    }
+
+    private void run(int rate, int topics, Duration duration, Duration dropEvery, StandInServer server) {
+        long period = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+        long nextDrop = dropEvery.isZero() || server == null ? Long.MAX_VALUE : start + dropEvery.toNanos();
+        long next = start;
+        long sequence = 0;
+
+        System.out.println("  time     emits  rejected  reconnects  connected      p50      p90      p99     p999"
+                + "      max  heap(MB)  threads");
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+
+            var handler = handlers.get((int) (sequence % handlers.size()));
+            if (handler.tryEmit(topic((int) (sequence % topics)), Long.toString(System.nanoTime()))) {
+                emitted.increment();
+            } else {
+                rejected.increment();
+            }
+            sequence++;
+            next += period;
+
+            if (now >= nextDrop) {
+                server.dropAll();
+                nextDrop += dropEvery.toNanos();
+            }
+            if (now >= nextReport) {
+                report(TimeUnit.NANOSECONDS.toSeconds(now - start));
+                nextReport += TimeUnit.SECONDS.toNanos(1);
+            }
+        }
+
+        System.out.println("total");
+        print(total, TimeUnit.NANOSECONDS.toSeconds(end - start));
+    }
+
+    private void received(String data) {
+        long latency = System.nanoTime() - Long.parseLong(data);
+        interval.record(latency);
+        total.record(latency);
+    }
+
+    private void report(long seconds) {
+        print(interval, seconds);
+        interval.reset();
+    }
+
+    private void print(Histogram histogram, long seconds) {
+        long connected = connections.stream().filter(Connection::isConnected).count();
+        long[] latencies = histogram.getPercentiles(50, 90, 99, 99.9);
+        var memory = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        System.out.printf("%6d %9d %9d %11d %10d %8s %8s %8s %8s %8s %9d %8d%n", seconds, emitted.sum(),
+                rejected.sum(), reconnects.sum(), connected, micros(latencies[0]), micros(latencies[1]),
+                micros(latencies[2]), micros(latencies[3]), micros(histogram.getMax()), memory.getUsed() >> 20,
+                ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+
+    private static String topic(int index) {
+        return "load/" + index;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> arguments = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            arguments.put(args[i].substring(2), args[i + 1]);
+        }
+        return arguments;
+    }
+}
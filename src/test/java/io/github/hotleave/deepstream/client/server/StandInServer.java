@@ -0,0 +1,550 @@
+package io.github.hotleave.deepstream.client.server;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import io.deepstream.protobuf.Auth;
+import io.deepstream.protobuf.Connection.CONNECTION_ACTION;
+import io.deepstream.protobuf.Connection.ConnectionMessage;
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.deepstream.protobuf.Presence;
+import io.deepstream.protobuf.Record;
+import io.deepstream.protobuf.Rpc;
+import io.github.hotleave.deepstream.client.connection.InboundMessage;
+import io.github.hotleave.deepstream.client.connection.MessageDecoder;
+import io.github.hotleave.deepstream.client.connection.MessageEncoder;
+import io.github.hotleave.deepstream.client.utils.Json;
+import io.undertow.Handlers;
+import io.undertow.Undertow;
+import io.undertow.websockets.core.AbstractReceiveListener;
+import io.undertow.websockets.core.BufferedBinaryMessage;
+import io.undertow.websockets.core.WebSocketCallback;
+import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSockets;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.xnio.IoUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded stand-in for a deepstream server, speaks just enough of the protocol for load and soak tests: challenge,
+ * authentication, ping, event subscriptions with acknowledgements and emit fan-out to every other subscriber, and
+ * versioned records kept in memory whose changes are forwarded to the other subscribers, and RPCs routed to the
+ * providers in turn until one accepts. Every authenticated connection is a user named {@code user-N} for presence.
+ * <p>
+ * Faults are injected through the {@link Options}: a delay before every outbound frame, randomly dropped connections
+ * and redirects of new connections to another url.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StandInServer implements AutoCloseable {
+    // 连接被丢弃后的发送失败是预期的，不打印
+    private static final WebSocketCallback<Void> IGNORE_ERRORS = new WebSocketCallback<>() {
+        @Override
+        public void complete(WebSocketChannel channel, Void context) {
+        }
+
+        @Override
+        public void onError(WebSocketChannel channel, Void context, Throwable throwable) {
+        }
+    };
+
+    @Getter
+    @Builder
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    public static class Options {
+        @Builder.Default
+        String host = "127.0.0.1";
+
+        /**
+         * 0 picks a free port.
+         */
+        @Builder.Default
+        int port = 0;
+
+        @Builder.Default
+        Duration latency = Duration.ZERO;
+
+        @Builder.Default
+        Duration latencyJitter = Duration.ZERO;
+
+        /**
+         * Chance that an inbound message makes the server drop the connection without a close frame.
+         */
+        @Builder.Default
+        double dropRate = 0;
+
+        /**
+         * Where challenged connections are redirected to, null accepts all of them.
+         */
+        String redirectUrl;
+
+        @Builder.Default
+        double redirectRate = 1;
+
+        /**
+         * Topics whose messages are swallowed without any response, to provoke client timeouts.
+         */
+        @Builder.Default
+        Set<General.TOPIC> ignoredTopics = Set.of();
+    }
+
+    Options options;
+    Undertow undertow;
+    ScheduledExecutorService delayer;
+    Set<WebSocketChannel> channels = ConcurrentHashMap.newKeySet();
+    Map<String, Set<WebSocketChannel>> subscriptions = new ConcurrentHashMap<>();
+    Map<String, Set<WebSocketChannel>> recordSubscriptions = new ConcurrentHashMap<>();
+    Map<String, StoredRecord> records = new ConcurrentHashMap<>();
+    Map<String, List<WebSocketChannel>> providers = new ConcurrentHashMap<>();
+    Map<String, RoutedRequest> routedRequests = new ConcurrentHashMap<>();
+    AtomicLong requestCounter = new AtomicLong();
+    Map<WebSocketChannel, String> users = new ConcurrentHashMap<>();
+    Set<WebSocketChannel> presenceSubscribers = ConcurrentHashMap.newKeySet();
+    AtomicLong userCounter = new AtomicLong();
+    LongAdder connectionCount = new LongAdder();
+    LongAdder inboundCount = new LongAdder();
+    LongAdder outboundCount = new LongAdder();
+    LongAdder droppedCount = new LongAdder();
+    LongAdder redirectedCount = new LongAdder();
+
+    public StandInServer(Options options) {
+        this.options = options;
+        this.delayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stand-in-latency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.undertow = Undertow.builder()
+                .addHttpListener(options.getPort(), options.getHost())
+                .setHandler(Handlers.websocket((exchange, channel) -> {
+                    channels.add(channel);
+                    connectionCount.increment();
+                    channel.getReceiveSetter().set(new Receiver());
+                    channel.addCloseTask(this::onClose);
+                    channel.resumeReceives();
+                }))
+                .build();
+    }
+
+    public static StandInServer start(Options options) {
+        var server = new StandInServer(options);
+        server.undertow.start();
+        log.info("Stand-in server listening on {}", server.getUrl());
+        return server;
+    }
+
+    public String getUrl() {
+        var address = (InetSocketAddress) undertow.getListenerInfo().get(0).getAddress();
+        return "ws://" + address.getHostString() + ":" + address.getPort() + "/deepstream";
+    }
+
+    public int getOpenConnections() {
+        return channels.size();
+    }
+
+    public long getConnectionCount() {
+        return connectionCount.sum();
+    }
+
+    public long getInboundCount() {
+        return inboundCount.sum();
+    }
+
+    public long getOutboundCount() {
+        return outboundCount.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    public long getRedirectedCount() {
+        return redirectedCount.sum();
+    }
+
+    /**
+     * Drops every connection at once without a close frame, the clients all reconnect together.
+     */
+    public void dropAll() {
+        channels.forEach(this::drop);
+    }
+
+    @Override
+    public void close() {
+        channels.forEach(IoUtils::safeClose);
+        undertow.stop();
+        delayer.shutdownNow();
+    }
+
+    private void onClose(WebSocketChannel channel) {
+        channels.remove(channel);
+        subscriptions.values().forEach(subscribers -> subscribers.remove(channel));
+        recordSubscriptions.values().forEach(subscribers -> subscribers.remove(channel));
+        providers.values().forEach(channels -> channels.remove(channel));
+        presenceSubscribers.remove(channel);
+        String user = users.remove(channel);
+        if (user != null) {
+            notifyPresence(channel, Presence.PRESENCE_ACTION.PRESENCE_PRESENCE_LEAVE_ALL, user);
+        }
+    }
+
+    private void drop(WebSocketChannel channel) {
+        droppedCount.increment();
+        IoUtils.safeClose(channel);
+    }
+
+    private void handle(WebSocketChannel channel, InboundMessage message) throws IOException {
+        inboundCount.increment();
+        if (options.getDropRate() > 0 && ThreadLocalRandom.current().nextDouble() < options.getDropRate()) {
+            drop(channel);
+            return;
+        }
+        if (options.getIgnoredTopics().contains(message.getTopic())) {
+            return;
+        }
+
+        switch (message.getTopic()) {
+            case CONNECTION:
+                handleConnection(channel, message.getMessage(ConnectionMessage.parser()));
+                break;
+            case AUTH:
+                String user = "user-" + userCounter.incrementAndGet();
+                send(channel, General.TOPIC.AUTH, Auth.AuthMessage.newBuilder()
+                        .setAction(Auth.AUTH_ACTION.AUTH_AUTH_SUCCESSFUL)
+                        .setData("{}")
+                        .build());
+                users.put(channel, user);
+                notifyPresence(channel, Presence.PRESENCE_ACTION.PRESENCE_PRESENCE_JOIN_ALL, user);
+                break;
+            case EVENT:
+                handleEvent(channel, message.getMessage(Event.EventMessage.parser()));
+                break;
+            case RECORD:
+                handleRecord(channel, message.getMessage(Record.RecordMessage.parser()));
+                break;
+            case RPC:
+                handleRpc(channel, message.getMessage(Rpc.RpcMessage.parser()));
+                break;
+            case PRESENCE:
+                handlePresence(channel, message.getMessage(Presence.PresenceMessage.parser()));
+                break;
+            default:
+                log.warn("Unsupported topic: {}", message.getTopic());
+                break;
+        }
+    }
+
+    private void handleConnection(WebSocketChannel channel, ConnectionMessage message) {
+        switch (message.getAction()) {
+            case CONNECTION_CHALLENGE:
+                if (options.getRedirectUrl() != null
+                        && ThreadLocalRandom.current().nextDouble() < options.getRedirectRate()) {
+                    redirectedCount.increment();
+                    send(channel, General.TOPIC.CONNECTION, ConnectionMessage.newBuilder()
+                            .setAction(CONNECTION_ACTION.CONNECTION_REDIRECT)
+                            .setUrl(options.getRedirectUrl())
+                            .build());
+                } else {
+                    send(channel, General.TOPIC.CONNECTION, ConnectionMessage.newBuilder()
+                            .setAction(CONNECTION_ACTION.CONNECTION_ACCEPT)
+                            .build());
+                }
+                break;
+            case CONNECTION_PING:
+                send(channel, General.TOPIC.CONNECTION, ConnectionMessage.newBuilder()
+                        .setAction(CONNECTION_ACTION.CONNECTION_PONG)
+                        .build());
+                break;
+            case CONNECTION_CLOSING:
+                send(channel, General.TOPIC.CONNECTION, ConnectionMessage.newBuilder()
+                        .setAction(CONNECTION_ACTION.CONNECTION_CLOSED)
+                        .build());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handleEvent(WebSocketChannel channel, Event.EventMessage message) {
+        switch (message.getAction()) {
+            case EVENT_SUBSCRIBE:
+                message.getNamesList().forEach(name ->
+                        subscriptions.computeIfAbsent(name, key -> ConcurrentHashMap.newKeySet()).add(channel));
+                send(channel, General.TOPIC.EVENT, message.toBuilder().setIsAck(true).build());
+                break;
+            case EVENT_UNSUBSCRIBE:
+                message.getNamesList().forEach(name -> {
+                    var subscribers = subscriptions.get(name);
+                    if (subscribers != null) {
+                        subscribers.remove(channel);
+                    }
+                });
+                send(channel, General.TOPIC.EVENT, message.toBuilder().setIsAck(true).build());
+                break;
+            case EVENT_EMIT:
+                var subscribers = subscriptions.get(message.getName());
+                if (subscribers != null) {
+                    var event = message.toBuilder().clearCorrelationId().build();
+                    for (WebSocketChannel subscriber : subscribers) {
+                        if (subscriber != channel) {
+                            send(subscriber, General.TOPIC.EVENT, event);
+                        }
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handleRecord(WebSocketChannel channel, Record.RecordMessage message) {
+        String name = message.getName();
+        switch (message.getAction()) {
+            case RECORD_SUBSCRIBECREATEANDREAD:
+                for (String recordName : message.getNamesList()) {
+                    recordSubscriptions.computeIfAbsent(recordName, key -> ConcurrentHashMap.newKeySet()).add(channel);
+                    sendRecord(channel, Record.RECORD_ACTION.RECORD_READ_RESPONSE, recordName);
+                }
+                break;
+            case RECORD_READ:
+                sendRecord(channel, Record.RECORD_ACTION.RECORD_READ_RESPONSE, name);
+                break;
+            case RECORD_UNSUBSCRIBE:
+                message.getNamesList().forEach(recordName -> {
+                    var subscribers = recordSubscriptions.get(recordName);
+                    if (subscribers != null) {
+                        subscribers.remove(channel);
+                    }
+                });
+                send(channel, General.TOPIC.RECORD, message.toBuilder().setIsAck(true).build());
+                break;
+            case RECORD_UPDATE:
+            case RECORD_PATCH:
+            case RECORD_ERASE:
+                StoredRecord record = records.computeIfAbsent(name, key -> new StoredRecord());
+                synchronized (record) {
+                    if (message.getVersion() != record.version + 1) {
+                        sendRecord(channel, Record.RECORD_ACTION.RECORD_VERSION_EXISTS, name);
+                        return;
+                    }
+                    record.version = message.getVersion();
+                    if (message.getAction() == Record.RECORD_ACTION.RECORD_UPDATE) {
+                        record.data = Json.parse(message.getData());
+                    } else if (message.getAction() == Record.RECORD_ACTION.RECORD_PATCH) {
+                        record.data = Json.set(record.data, message.getPath(), Json.parse(message.getData()));
+                    } else {
+                        record.data = Json.erase(record.data, message.getPath());
+                    }
+                    forward(channel, recordSubscriptions.get(name), General.TOPIC.RECORD,
+                            message.toBuilder().clearCorrelationId().build());
+                }
+                break;
+            case RECORD_DELETE:
+                records.remove(name);
+                var subscribers = recordSubscriptions.remove(name);
+                forward(channel, subscribers, General.TOPIC.RECORD, Record.RecordMessage.newBuilder()
+                        .setAction(Record.RECORD_ACTION.RECORD_DELETED)
+                        .setName(name)
+                        .build());
+                send(channel, General.TOPIC.RECORD, message.toBuilder()
+                        .setAction(Record.RECORD_ACTION.RECORD_DELETE_SUCCESS)
+                        .build());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handleRpc(WebSocketChannel channel, Rpc.RpcMessage message) {
+        switch (message.getAction()) {
+            case RPC_PROVIDE:
+                message.getNamesList().forEach(name ->
+                        providers.computeIfAbsent(name, key -> new CopyOnWriteArrayList<>()).add(channel));
+                send(channel, General.TOPIC.RPC, message.toBuilder().setIsAck(true).build());
+                break;
+            case RPC_UNPROVIDE:
+                message.getNamesList().forEach(name -> {
+                    var channels = providers.get(name);
+                    if (channels != null) {
+                        channels.remove(channel);
+                    }
+                });
+                send(channel, General.TOPIC.RPC, message.toBuilder().setIsAck(true).build());
+                break;
+            case RPC_REQUEST:
+                // 各连接的correlationId会重复，转发时换成服务端的ID
+                var request = new RoutedRequest(channel, message);
+                String id = Long.toString(requestCounter.incrementAndGet());
+                routedRequests.put(id, request);
+                route(id, request);
+                break;
+            case RPC_ACCEPT:
+            case RPC_RESPONSE:
+            case RPC_REQUEST_ERROR:
+                var routed = message.getAction() == Rpc.RPC_ACTION.RPC_ACCEPT
+                        ? routedRequests.get(message.getCorrelationId())
+                        : routedRequests.remove(message.getCorrelationId());
+                if (routed != null) {
+                    send(routed.requester, General.TOPIC.RPC, message.toBuilder()
+                            .setCorrelationId(routed.request.getCorrelationId())
+                            .build());
+                }
+                break;
+            case RPC_REJECT:
+                var rejected = routedRequests.get(message.getCorrelationId());
+                if (rejected != null) {
+                    route(message.getCorrelationId(), rejected);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handlePresence(WebSocketChannel channel, Presence.PresenceMessage message) {
+        switch (message.getAction()) {
+            case PRESENCE_SUBSCRIBE_ALL:
+                presenceSubscribers.add(channel);
+                send(channel, General.TOPIC.PRESENCE, message.toBuilder().setIsAck(true).build());
+                break;
+            case PRESENCE_UNSUBSCRIBE_ALL:
+                presenceSubscribers.remove(channel);
+                send(channel, General.TOPIC.PRESENCE, message.toBuilder().setIsAck(true).build());
+                break;
+            case PRESENCE_QUERY_ALL:
+                var response = Presence.PresenceMessage.newBuilder()
+                        .setAction(Presence.PRESENCE_ACTION.PRESENCE_QUERY_ALL_RESPONSE)
+                        .setCorrelationId(message.getCorrelationId());
+                users.forEach((userChannel, user) -> {
+                    if (userChannel != channel) {
+                        response.addNames(user);
+                    }
+                });
+                send(channel, General.TOPIC.PRESENCE, response.build());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void notifyPresence(WebSocketChannel channel, Presence.PRESENCE_ACTION action, String user) {
+        forward(channel, presenceSubscribers, General.TOPIC.PRESENCE, Presence.PresenceMessage.newBuilder()
+                .setAction(action)
+                .setName(user)
+                .build());
+    }
+
+    private void route(String id, RoutedRequest request) {
+        var channels = providers.getOrDefault(request.request.getName(), List.of());
+        for (WebSocketChannel provider : channels) {
+            if (request.tried.add(provider)) {
+                send(provider, General.TOPIC.RPC, request.request.toBuilder().setCorrelationId(id).build());
+                return;
+            }
+        }
+
+        routedRequests.remove(id);
+        send(request.requester, General.TOPIC.RPC, Rpc.RpcMessage.newBuilder()
+                .setAction(Rpc.RPC_ACTION.RPC_NO_RPC_PROVIDER)
+                .setName(request.request.getName())
+                .setCorrelationId(request.request.getCorrelationId())
+                .build());
+    }
+
+    private void sendRecord(WebSocketChannel channel, Record.RECORD_ACTION action, String name) {
+        StoredRecord record = records.computeIfAbsent(name, key -> new StoredRecord());
+        synchronized (record) {
+            send(channel, General.TOPIC.RECORD, Record.RecordMessage.newBuilder()
+                    .setAction(action)
+                    .setName(name)
+                    .setVersion(record.version)
+                    .setData(Json.stringify(record.data))
+                    .build());
+        }
+    }
+
+    private void forward(WebSocketChannel sender, Set<WebSocketChannel> subscribers, General.TOPIC topic,
+                         MessageLite msg) {
+        if (subscribers == null) {
+            return;
+        }
+        for (WebSocketChannel subscriber : subscribers) {
+            if (subscriber != sender) {
+                send(subscriber, topic, msg);
+            }
+        }
+    }
+
+    private void send(WebSocketChannel channel, General.TOPIC topic, MessageLite msg) {
+        byte[] frame = new byte[MessageEncoder.delimitedSize(topic, msg)];
+        try {
+            MessageEncoder.writeDelimited(topic, msg, CodedOutputStream.newInstance(frame));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long delay = options.getLatency().toNanos();
+        long jitter = options.getLatencyJitter().toNanos();
+        if (jitter > 0) {
+            delay += ThreadLocalRandom.current().nextLong(jitter);
+        }
+        outboundCount.increment();
+        if (delay <= 0) {
+            WebSockets.sendBinary(ByteBuffer.wrap(frame), channel, IGNORE_ERRORS);
+        } else {
+            delayer.schedule(() -> WebSockets.sendBinary(ByteBuffer.wrap(frame), channel, IGNORE_ERRORS), delay,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static class RoutedRequest {
+        final WebSocketChannel requester;
+        final Rpc.RpcMessage request;
+        final Set<WebSocketChannel> tried = ConcurrentHashMap.newKeySet();
+
+        RoutedRequest(WebSocketChannel requester, Rpc.RpcMessage request) {
+            this.requester = requester;
+            this.request = request;
+        }
+    }
+
+    private static class StoredRecord {
+        int version;
+        Object data = Map.of();
+    }
+
+    private class Receiver extends AbstractReceiveListener {
+        @Override
+        protected void onFullBinaryMessage(WebSocketChannel channel, BufferedBinaryMessage message) throws IOException {
+            var data = message.getData();
+            try {
+                ByteBuffer frame = WebSockets.mergeBuffers(data.getResource());
+                while (frame.hasRemaining()) {
+                    handle(channel, MessageDecoder.decode(frame));
+                }
+            } finally {
+                data.free();
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.hotleave.deepstream.client.server;
+
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.Connection;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.event.EventHandler;
+import io.github.hotleave.deepstream.client.transport.JdkTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StandInServerTest {
+    private final ConnectionOptions options = ConnectionOptions.builder()
+            .dispatchThreads(1)
+            .reconnectInitialDelay(Duration.ofMillis(50))
+            .build();
+    private final List<Connection> connections = new ArrayList<>();
+    private ClientRuntime runtime;
+
+    @BeforeEach
+    void setUp() {
+        runtime = new ClientRuntime(options, new JdkTransport());
+    }
+
+    @AfterEach
+    void tearDown() {
+        connections.forEach(Connection::close);
+        runtime.close();
+    }
+
+    @Test
+    void fanOutToOtherSubscribers() throws Exception {
+        try (var server = StandInServer.start(StandInServer.Options.builder().build())) {
+            var publisher = connect(server.getUrl());
+            var subscriber = connect(server.getUrl());
+
+            var received = new CompletableFuture<String>();
+            subscriber.subscribe("data/change", received::complete).get(5, TimeUnit.SECONDS);
+            publisher.emit("data/change", "\"hotleave\"").get(5, TimeUnit.SECONDS);
+
+            assertEquals("\"hotleave\"", received.get(5, TimeUnit.SECONDS));
+            assertEquals(2, server.getOpenConnections());
+        }
+    }
+
+    @Test
+    void followRedirect() throws Exception {
+        try (var target = StandInServer.start(StandInServer.Options.builder().build());
+             var server = StandInServer.start(StandInServer.Options.builder().redirectUrl(target.getUrl()).build())) {
+            var connection = new Connection(server.getUrl(), options, runtime);
+            connections.add(connection);
+            connection.connect();
+
+            assertTrue(connection.isConnected());
+            assertEquals(1, server.getRedirectedCount());
+            assertEquals(1, target.getOpenConnections());
+        }
+    }
+
+    @Test
+    void resubscribeAfterDrop() throws Exception {
+        try (var server = StandInServer.start(StandInServer.Options.builder().latency(Duration.ofMillis(5)).build())) {
+            var publisher = connect(server.getUrl());
+            var subscriber = connect(server.getUrl());
+
+            var received = new LinkedBlockingQueue<String>();
+            subscriber.subscribe("data/change", received::add).get(5, TimeUnit.SECONDS);
+
+            server.dropAll();
+            assertEquals(2, server.getDroppedCount());
+
+            // 重连后订阅恢复，事件重新可达
+            String data = null;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (data == null && System.nanoTime() < deadline) {
+                publisher.tryEmit("data/change", "\"again\"");
+                data = received.poll(100, TimeUnit.MILLISECONDS);
+            }
+            assertEquals("\"again\"", data);
+            assertTrue(server.getConnectionCount() >= 4);
+        }
+    }
+
+    private EventHandler connect(String url) throws Exception {
+        var connection = new Connection(url, options, runtime);
+        connections.add(connection);
+        var event = new EventHandler(connection);
+        connection.registerHandler(General.TOPIC.EVENT, event::handle);
+        connection.connect();
+        return event;
+    }
+}
@@ -0,0 +1,153 @@
+package io.github.hotleave.deepstream.client.transport;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import io.deepstream.protobuf.Auth;
+import io.deepstream.protobuf.Connection.CONNECTION_ACTION;
+import io.deepstream.protobuf.Connection.ConnectionMessage;
+import io.deepstream.protobuf.Event;
+import io.deepstream.protobuf.General;
+import io.github.hotleave.deepstream.client.Client;
+import io.github.hotleave.deepstream.client.connection.ClientRuntime;
+import io.github.hotleave.deepstream.client.connection.ConnectionOptions;
+import io.github.hotleave.deepstream.client.connection.InboundMessage;
+import io.github.hotleave.deepstream.client.connection.MessageDecoder;
+import io.github.hotleave.deepstream.client.connection.MessageEncoder;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoopbackTransportTest {
+    private static final String URL = "ws://loopback/deepstream";
+
+    @Test
+    void runFullClientWithoutSocket() throws Exception {
+        var options = ConnectionOptions.builder().dispatchThreads(1).build();
+        try (var runtime = new ClientRuntime(options, new LoopbackTransport(uri -> new EchoServer()))) {
+            var client = new Client(URL, options, runtime);
+            client.login();
+
+            var received = new CompletableFuture<String>();
+            client.event.subscribe("data/change", received::complete).get(5, TimeUnit.SECONDS);
+            client.event.emit("data/change", "\"hotleave\"").get(5, TimeUnit.SECONDS);
+
+            assertEquals("\"hotleave\"", received.get(5, TimeUnit.SECONDS));
+            client.close();
+        }
+    }
+
+    @Test
+    void refusedConnection() {
+        var transport = new LoopbackTransport(uri -> null);
+        assertThrows(IOException.class, () -> transport.connect(URI.create(URL), new NoopListener()));
+    }
+
+    @Test
+    void closeNotifiesBothSides() throws Exception {
+        var serverClosed = new CompletableFuture<Integer>();
+        var clientClosed = new CompletableFuture<Integer>();
+        var transport = new LoopbackTransport(uri -> new NoopListener() {
+            @Override
+            public void onClose(int code, String reason) {
+                serverClosed.complete(code);
+            }
+        });
+
+        var session = transport.connect(URI.create(URL), new NoopListener() {
+            @Override
+            public void onClose(int code, String reason) {
+                clientClosed.complete(code);
+            }
+        });
+        session.close(TransportSession.NORMAL_CLOSURE, "bye");
+
+        assertFalse(session.isOpen());
+        assertEquals(TransportSession.NORMAL_CLOSURE, serverClosed.get(5, TimeUnit.SECONDS));
+        assertEquals(TransportSession.NORMAL_CLOSURE, clientClosed.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Accepts every login, acknowledges subscriptions and sends emitted events back to their subscribers.
+     */
+    static class EchoServer extends NoopListener {
+        private final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+        private TransportSession session;
+
+        @Override
+        public void onOpen(TransportSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public void onMessage(ByteBuffer fragment, boolean last) {
+            try {
+                while (fragment.hasRemaining()) {
+                    handle(MessageDecoder.decode(fragment));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void handle(InboundMessage message) throws IOException {
+            switch (message.getTopic()) {
+                case CONNECTION:
+                    var action = message.getMessage(ConnectionMessage.parser()).getAction();
+                    if (action == CONNECTION_ACTION.CONNECTION_CHALLENGE) {
+                        send(General.TOPIC.CONNECTION, ConnectionMessage.newBuilder()
+                                .setAction(CONNECTION_ACTION.CONNECTION_ACCEPT).build());
+                    }
+                    break;
+                case AUTH:
+                    send(General.TOPIC.AUTH, Auth.AuthMessage.newBuilder()
+                            .setAction(Auth.AUTH_ACTION.AUTH_AUTH_SUCCESSFUL).setData("{}").build());
+                    break;
+                case EVENT:
+                    var event = message.getMessage(Event.EventMessage.parser());
+                    if (event.getAction() == Event.EVENT_ACTION.EVENT_SUBSCRIBE) {
+                        subscriptions.addAll(event.getNamesList());
+                        send(General.TOPIC.EVENT, event.toBuilder().setIsAck(true).build());
+                    } else if (event.getAction() == Event.EVENT_ACTION.EVENT_EMIT
+                            && subscriptions.contains(event.getName())) {
+                        send(General.TOPIC.EVENT, event);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void send(General.TOPIC topic, MessageLite msg) throws IOException {
+            byte[] frame = new byte[MessageEncoder.delimitedSize(topic, msg)];
+            MessageEncoder.writeDelimited(topic, msg, CodedOutputStream.newInstance(frame));
+            session.send(ByteBuffer.wrap(frame), error -> {
+            });
+        }
+    }
+
+    static class NoopListener implements TransportListener {
+        @Override
+        public void onOpen(TransportSession session) {
+        }
+
+        @Override
+        public void onMessage(ByteBuffer fragment, boolean last) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onClose(int code, String reason) {
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackoffTest {
+    @Test
+    void exponentialCeilingCappedAtMaximum() {
+        var backoff = new Backoff(Duration.ofMillis(100), Duration.ofSeconds(1), 2);
+
+        assertEquals(100, backoff.ceilingMillis(0));
+        assertEquals(200, backoff.ceilingMillis(1));
+        assertEquals(800, backoff.ceilingMillis(3));
+        assertEquals(1000, backoff.ceilingMillis(4));
+        assertEquals(1000, backoff.ceilingMillis(1000));
+    }
+
+    @Test
+    void fullJitter() {
+        assertEquals(0, new Backoff(Duration.ofMillis(100), Duration.ofSeconds(1), 2, () -> 0).delayMillis(3));
+        assertEquals(800, new Backoff(Duration.ofMillis(100), Duration.ofSeconds(1), 2, () -> 0.9999).delayMillis(3));
+
+        var backoff = new Backoff(Duration.ofMillis(100), Duration.ofSeconds(1), 2);
+        for (int i = 0; i < 1000; i++) {
+            long delay = backoff.delayMillis(2);
+            assertTrue(delay >= 0 && delay <= 400, "delay " + delay);
+        }
+    }
+}
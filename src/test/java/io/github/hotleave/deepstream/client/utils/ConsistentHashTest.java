@@ -0,0 +1,46 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashTest {
+    private static final int KEYS = 10_000;
+
+    @Test
+    void spreadKeysEvenly() {
+        var ring = new ConsistentHash<>(List.of(0, 1, 2, 3), 160);
+        int[] counts = new int[4];
+        for (int i = 0; i < KEYS; i++) {
+            counts[ring.get("event/" + i)]++;
+        }
+
+        for (int count : counts) {
+            assertTrue(count > KEYS / 4 * 0.8 && count < KEYS / 4 * 1.2, "unbalanced: " + count);
+        }
+    }
+
+    @Test
+    void onlyKeysOfRemovedNodeMove() {
+        var ring = new ConsistentHash<>(List.of(0, 1, 2, 3), 160);
+        var without = new ConsistentHash<>(List.of(0, 1, 3), 160);
+        for (int i = 0; i < KEYS; i++) {
+            String key = "event/" + i;
+            int before = ring.get(key);
+            if (before != 2) {
+                assertEquals(before, without.get(key), key);
+            } else {
+                assertNotEquals(2, without.get(key));
+            }
+        }
+    }
+
+    @Test
+    void stableAcrossInstances() {
+        var a = new ConsistentHash<>(List.of("a", "b"), 16);
+        var b = new ConsistentHash<>(List.of("a", "b"), 16);
+        assertEquals(a.get("data/change"), b.get("data/change"));
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedWheelTimerTest {
+    private long now;
+    private final HashedWheelTimer timer = new HashedWheelTimer("test", Duration.ofMillis(10), 8, () -> now, false);
+
+    @Test
+    void expireOnDeadline() {
+        var fired = new ArrayList<String>();
+        timer.schedule(() -> fired.add("a"), 25, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> fired.add("b"), 5, TimeUnit.MILLISECONDS);
+
+        advance(9);
+        assertEquals(List.of(), fired);
+        advance(1);
+        assertEquals(List.of("b"), fired);
+        advance(20);
+        assertEquals(List.of("b", "a"), fired);
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    void delayLongerThanOneRound() {
+        var fired = new ArrayList<Long>();
+        timer.schedule(() -> fired.add(now), 1000, TimeUnit.MILLISECONDS);
+
+        advance(990);
+        assertEquals(List.of(), fired);
+        advance(20);
+        // Timeouts fire on the first tick boundary after their deadline
+        assertEquals(List.of(TimeUnit.MILLISECONDS.toNanos(1010)), fired);
+    }
+
+    @Test
+    void cancel() {
+        var fired = new ArrayList<String>();
+        var timeout = timer.schedule(() -> fired.add("a"), 20, TimeUnit.MILLISECONDS);
+        advance(10);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        advance(100);
+        assertEquals(List.of(), fired);
+        assertTrue(timeout.isCancelled());
+    }
+
+    @Test
+    void fixedRate() {
+        var fired = new ArrayList<Long>();
+        var periodic = timer.scheduleAtFixedRate(() -> fired.add(now / 1_000_000), 50, 100, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 35; i++) {
+            advance(10);
+        }
+        assertEquals(List.of(60L, 160L, 260L), fired);
+
+        periodic.cancel();
+        advance(200);
+        assertEquals(3, fired.size());
+    }
+
+    @Test
+    void fixedRateSurvivesFailure() {
+        var fired = new ArrayList<Long>();
+        timer.scheduleAtFixedRate(() -> {
+            fired.add(now / 1_000_000);
+            throw new IllegalStateException("boom");
+        }, 0, 100, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 25; i++) {
+            advance(10);
+        }
+        assertEquals(List.of(10L, 110L, 210L), fired);
+    }
+
+    @Test
+    void manyTimeouts() {
+        int[] fired = new int[1];
+        for (int i = 0; i < 100_000; i++) {
+            timer.schedule(() -> fired[0]++, i % 5000, TimeUnit.MILLISECONDS);
+        }
+
+        advance(5000);
+        assertEquals(100_000, fired[0]);
+    }
+
+    @Test
+    void workerThread() throws Exception {
+        var realTimer = new HashedWheelTimer("test", Duration.ofMillis(1), 64);
+        var latch = new CountDownLatch(1);
+        realTimer.schedule(latch::countDown, 5, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        realTimer.stop();
+        assertTrue(realTimer.isStopped());
+        assertThrows(IllegalStateException.class, () -> realTimer.schedule(() -> {
+        }, 1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void replaceStoppedDefault() {
+        var stopped = HashedWheelTimer.getDefault();
+        stopped.stop();
+
+        var current = HashedWheelTimer.getDefault();
+        assertNotSame(stopped, current);
+        assertFalse(current.isStopped());
+        assertSame(current, HashedWheelTimer.getDefault());
+    }
+
+    @Test
+    void idleWorkerParks() throws Exception {
+        var realTimer = new HashedWheelTimer("idle-timer", Duration.ofMillis(1), 64);
+        var first = new CountDownLatch(1);
+        realTimer.schedule(first::countDown, 5, TimeUnit.MILLISECONDS);
+        assertTrue(first.await(1, TimeUnit.SECONDS));
+
+        // 没有待执行的超时时不再按刻度唤醒
+        Thread worker = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("idle-timer"))
+                .findFirst()
+                .orElseThrow();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (worker.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.WAITING, worker.getState());
+
+        var second = new CountDownLatch(1);
+        realTimer.schedule(second::countDown, 5, TimeUnit.MILLISECONDS);
+        assertTrue(second.await(1, TimeUnit.SECONDS));
+        realTimer.stop();
+    }
+
+    private void advance(long millis) {
+        now += TimeUnit.MILLISECONDS.toNanos(millis);
+        timer.advance();
+    }
+}
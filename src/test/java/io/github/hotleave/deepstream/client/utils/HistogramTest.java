@@ -0,0 +1,48 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+    @Test
+    void percentiles() {
+        var histogram = new Histogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_500, histogram.getMean(), 0.1);
+
+        long[] values = histogram.getPercentiles(50, 99, 99.9, 100);
+        assertWithin(5_000_000, values[0]);
+        assertWithin(9_900_000, values[1]);
+        assertWithin(9_990_000, values[2]);
+        assertEquals(10_000_000, values[3]);
+    }
+
+    @Test
+    void bucketBounds() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 123_456_789, Long.MAX_VALUE}) {
+            long upper = Histogram.upperBound(Histogram.index(value));
+            assertTrue(upper >= value, "upper bound of " + value);
+            assertTrue(upper - value <= value / 32, "precision of " + value);
+        }
+    }
+
+    @Test
+    void reset() {
+        var histogram = new Histogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 32, expected + " vs " + actual);
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonTest {
+    @Test
+    void roundTrip() {
+        String json = "{\"name\":\"hot\\\"leave\\n\",\"age\":18,\"score\":1.5,\"tags\":[\"a\",null,true],\"nested\":{}}";
+        Object value = Json.parse(json);
+
+        assertEquals(json, Json.stringify(value));
+        assertEquals(18L, Json.get(value, "age"));
+        assertEquals(1.5, Json.get(value, "score"));
+        assertEquals("hot\"leave\n", Json.get(value, "name"));
+        assertEquals(true, Json.get(value, "tags[2]"));
+        assertEquals("a", Json.get(value, "tags.0"));
+        assertNull(Json.get(value, "missing.path"));
+    }
+
+    @Test
+    void parseWhitespaceAndEscapes() {
+        assertEquals(Map.of("a", List.of(1L, 2L)), Json.parse(" { \"a\" : [ 1 , 2 ] } "));
+        assertEquals("\u00e9", Json.parse("\"\\u00e9\""));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("{\"a\":1"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("[1] x"));
+    }
+
+    @Test
+    void setSharesUntouchedBranches() {
+        Object root = Json.parse("{\"a\":{\"b\":1},\"c\":{\"d\":2}}");
+        Object patched = Json.set(root, "a.b", 3L);
+
+        assertEquals("{\"a\":{\"b\":3},\"c\":{\"d\":2}}", Json.stringify(patched));
+        assertEquals("{\"a\":{\"b\":1},\"c\":{\"d\":2}}", Json.stringify(root));
+        assertSame(Json.get(root, "c"), Json.get(patched, "c"));
+    }
+
+    @Test
+    void setCreatesMissingContainers() {
+        Object patched = Json.set(Map.of(), "items[1].name", "x");
+
+        assertEquals("{\"items\":[null,{\"name\":\"x\"}]}", Json.stringify(patched));
+        assertEquals("\"y\"", Json.stringify(Json.set(patched, "", "y")));
+    }
+
+    @Test
+    void erase() {
+        Object root = Json.parse("{\"a\":{\"b\":1,\"c\":2},\"list\":[1,2,3]}");
+
+        assertEquals("{\"a\":{\"c\":2},\"list\":[1,2,3]}", Json.stringify(Json.erase(root, "a.b")));
+        assertEquals("{\"a\":{\"b\":1,\"c\":2},\"list\":[1,3]}", Json.stringify(Json.erase(root, "list[1]")));
+        assertSame(root, Json.erase(root, "x.y"));
+    }
+
+    @Test
+    void estimateSize() {
+        String json = "{\"name\":\"hotleave\",\"tags\":[\"a\",\"b\"]}";
+        assertEquals(json.length(), Json.estimateSize(Json.parse(json)));
+    }
+}
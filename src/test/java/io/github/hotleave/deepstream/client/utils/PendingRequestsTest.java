@@ -0,0 +1,50 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PendingRequestsTest {
+    private long now;
+    private final PendingRequests requests = new PendingRequests(Duration.ofSeconds(10), () -> now);
+
+    @Test
+    void completeByCorrelationId() throws Exception {
+        String id = requests.nextId();
+        CompletableFuture<String> future = requests.register(id);
+
+        assertTrue(requests.complete(id, "result"));
+        assertEquals("result", future.get());
+        assertFalse(requests.complete(id, "again"));
+        assertEquals(0, requests.size());
+    }
+
+    @Test
+    void expireInRegistrationOrder() {
+        CompletableFuture<Void> first = requests.register(requests.nextId());
+        now += Duration.ofSeconds(5).toNanos();
+        String secondId = requests.nextId();
+        CompletableFuture<Void> second = requests.register(secondId);
+
+        now += Duration.ofSeconds(5).toNanos();
+        assertEquals(1, requests.expire());
+        var error = assertThrows(ExecutionException.class, first::get);
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        assertFalse(second.isDone());
+
+        requests.complete(secondId, null);
+        now += Duration.ofSeconds(10).toNanos();
+        assertEquals(0, requests.expire());
+        assertTrue(second.isDone() && !second.isCompletedExceptionally());
+    }
+
+    @Test
+    void uniqueIds() {
+        assertNotEquals(requests.nextId(), requests.nextId());
+    }
+}
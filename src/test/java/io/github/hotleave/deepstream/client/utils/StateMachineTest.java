@@ -0,0 +1,109 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateMachineTest {
+    enum Light {OFF, ON, BROKEN}
+
+    enum Switch {TURN_ON, TURN_OFF, BREAK}
+
+    private final List<String> changes = new ArrayList<>();
+    private final StateMachine<Light, Switch> stateMachine = new StateMachine<>(Light.class, Switch.class, Light.OFF,
+            List.of(
+                    new StateMachine.Transition<>(Switch.TURN_ON, Light.OFF, Light.ON),
+                    new StateMachine.Transition<>(Switch.TURN_OFF, Light.ON, Light.OFF),
+                    new StateMachine.Transition<>(Switch.BREAK, Light.BROKEN, Light.BROKEN, () -> changes.add("again")),
+                    new StateMachine.Transition<>(Switch.BREAK, null, Light.BROKEN)
+            ),
+            (newState, oldState) -> changes.add(oldState + "->" + newState));
+
+    @Test
+    void transitions() {
+        assertTrue(stateMachine.transition(Switch.TURN_ON));
+        assertEquals(Light.ON, stateMachine.getState());
+
+        assertFalse(stateMachine.transition(Switch.TURN_ON));
+        assertEquals(Light.ON, stateMachine.getState());
+
+        assertTrue(stateMachine.transition(Switch.BREAK));
+        assertTrue(stateMachine.transition(Switch.BREAK));
+        assertEquals(List.of("OFF->ON", "ON->BROKEN", "BROKEN->BROKEN", "again"), changes);
+    }
+
+    @Test
+    void stateListener() {
+        List<Light> entered = new ArrayList<>();
+        stateMachine.addListener(Light.ON, (newState, oldState) -> entered.add(oldState));
+
+        stateMachine.transition(Switch.TURN_ON);
+        stateMachine.transition(Switch.TURN_OFF);
+        stateMachine.transition(Switch.TURN_ON);
+        stateMachine.transition(Switch.BREAK);
+
+        assertEquals(List.of(Light.OFF, Light.OFF), entered);
+    }
+
+    @Test
+    void boundedHistory() {
+        for (int i = 0; i < 100; i++) {
+            stateMachine.transition(Switch.TURN_ON);
+            stateMachine.transition(Switch.TURN_OFF);
+        }
+        stateMachine.transition(Switch.BREAK);
+
+        var history = stateMachine.getHistory();
+        assertEquals(StateMachine.HISTORY_SIZE, history.size());
+        var last = history.get(history.size() - 1);
+        assertEquals(Switch.BREAK, last.getTransition());
+        assertEquals(Light.OFF, last.getFrom());
+        assertEquals(Light.BROKEN, last.getTo());
+        assertTrue(last.getTimestamp() <= System.currentTimeMillis());
+        assertEquals("ON -TURN_OFF-> OFF", history.get(history.size() - 2).toString());
+    }
+
+    @Test
+    void concurrentTransitions() throws Exception {
+        var machine = new StateMachine<Light, Switch>(Light.class, Switch.class, Light.OFF, List.of(
+                new StateMachine.Transition<>(Switch.TURN_ON, Light.OFF, Light.ON),
+                new StateMachine.Transition<>(Switch.TURN_OFF, Light.ON, Light.OFF)
+        ), null);
+        var turnedOn = new AtomicInteger();
+        var turnedOff = new AtomicInteger();
+        var start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Switch type = i % 2 == 0 ? Switch.TURN_ON : Switch.TURN_OFF;
+            var counter = type == Switch.TURN_ON ? turnedOn : turnedOff;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 10_000; j++) {
+                    if (machine.getState() == (type == Switch.TURN_ON ? Light.OFF : Light.ON)
+                            && machine.transition(type)) {
+                        counter.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // 每次开灯都对应一次关灯，计数差就是当前状态
+        int difference = turnedOn.get() - turnedOff.get();
+        assertEquals(machine.getState() == Light.ON ? 1 : 0, difference);
+    }
+}
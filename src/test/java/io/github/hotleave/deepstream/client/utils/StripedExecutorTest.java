@@ -0,0 +1,105 @@
+package io.github.hotleave.deepstream.client.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedExecutorTest {
+    @Test
+    void keepOrderPerKey() throws Exception {
+        var executor = new StripedExecutor("test", 4, 16, StripedExecutor.OverflowPolicy.BLOCK);
+        var received = new ConcurrentHashMap<String, List<Integer>>();
+        var done = new CountDownLatch(8 * 1000);
+
+        for (int i = 0; i < 1000; i++) {
+            for (int k = 0; k < 8; k++) {
+                String key = "event/" + k;
+                int value = i;
+                executor.execute(key, () -> {
+                    received.computeIfAbsent(key, n -> new ArrayList<>()).add(value);
+                    done.countDown();
+                });
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        received.values().forEach(values -> {
+            for (int i = 0; i < values.size(); i++) {
+                assertEquals(i, values.get(i));
+            }
+        });
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void dropOldestWhenLaneIsFull() throws Exception {
+        var executor = new StripedExecutor("test", 1, 2, StripedExecutor.OverflowPolicy.DROP_OLDEST);
+        var blocker = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        var received = new ArrayList<Integer>();
+        executor.execute("a", () -> {
+            started.countDown();
+            await(blocker);
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        var done = new CountDownLatch(2);
+        for (int i = 0; i < 5; i++) {
+            int value = i;
+            executor.execute("a", () -> {
+                received.add(value);
+                done.countDown();
+            });
+        }
+        blocker.countDown();
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(List.of(3, 4), received);
+        assertEquals(3, executor.getDroppedCount());
+        executor.shutdown();
+    }
+
+    @Test
+    void failWhenLaneIsFull() throws Exception {
+        var executor = new StripedExecutor("test", 1, 1, StripedExecutor.OverflowPolicy.FAIL);
+        var blocker = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        executor.execute("a", () -> {
+            started.countDown();
+            await(blocker);
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        executor.execute("a", () -> {
+        });
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute("a", () -> {
+        }));
+        blocker.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void runInlineWithoutLanes() {
+        var executor = new StripedExecutor("test", 0, 1, StripedExecutor.OverflowPolicy.FAIL);
+        var thread = new Thread[1];
+        executor.execute("a", () -> thread[0] = Thread.currentThread());
+
+        assertSame(Thread.currentThread(), thread[0]);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}